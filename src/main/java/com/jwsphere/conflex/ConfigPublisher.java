@@ -0,0 +1,216 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the configuration of a group of classes as a sequence of
+ * immutable {@link ConfigSnapshot}s, so that the objects of the group move
+ * from one version of the configuration to the next together.
+ *
+ * Publishing follows the read-copy-update pattern: a fresh instance of each
+ * bound class is injected from a copy of the consumed values, and the new
+ * snapshot is then made current with a single volatile write.  Readers call
+ * {@link #current()} without locking and keep using the snapshot they read,
+ * while publishers are serialized with each other.
+ *
+ * <pre>
+ * ConfigPublisher publisher = new ConfigPublisher();
+ * Binding&lt;Pool&gt; pool = publisher.bind(Pool.class, "pool.");
+ * Binding&lt;Client&gt; client = publisher.bind(Client.class, "client.");
+ * publisher.publish(ConfigSources.of(properties));
+ *
+ * ConfigSnapshot snapshot = publisher.current();
+ * snapshot.get(pool) ... snapshot.get(client)
+ * </pre>
+ *
+ * @author jonathan.wonders
+ */
+public final class ConfigPublisher {
+
+    private final List<Binding<?>> bindings = new ArrayList<Binding<?>>();
+    private volatile ConfigSnapshot current;
+    private ConfigSource source;
+
+    private final AtomicLong publishes = new AtomicLong();
+    private volatile long lastPublishNanos;
+    private volatile long maxPublishNanos;
+
+    /**
+     * Binds a class to this publisher, injecting it with the default
+     * injectors.  The class must have a constructor without parameters.
+     * If a snapshot has already been published, the source it was published
+     * from is published again in a new epoch that includes the class.
+     *
+     * @param type The class to instantiate for each snapshot.
+     * @param prefix The prefix prepended to each property key.
+     * @return The binding used to obtain the instance from a snapshot.
+     */
+    public <T> Binding<T> bind(Class<T> type, String prefix) throws InjectionException {
+        return bind(type, Conflex.create(type), prefix);
+    }
+
+    /**
+     * Binds a class to this publisher, injecting it with the conflex instance,
+     * e.g. one with custom injectors registered.
+     *
+     * @see #bind(Class, String)
+     */
+    public synchronized <T> Binding<T> bind(Class<T> type, Conflex conflex, String prefix)
+            throws InjectionException {
+        Constructor<T> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new InjectionException("Unable to find a constructor without parameters for " + type.getName(), e);
+        }
+        Binding<T> binding = new Binding<T>(this, type, constructor, conflex, prefix, bindings.size());
+        bindings.add(binding);
+        if (source != null) {
+            try {
+                publish(source);
+            } catch (InjectionException e) {
+                bindings.remove(bindings.size() - 1);
+                throw e;
+            }
+        }
+        return binding;
+    }
+
+    /**
+     * Publishes a new snapshot of the values in the source.  If any bound
+     * class cannot be injected, nothing is published and the current
+     * snapshot remains in effect.
+     *
+     * @param source The source of the new values.
+     * @return The published snapshot.
+     * @throws InjectionException if a bound class cannot be injected.
+     */
+    public synchronized ConfigSnapshot publish(ConfigSource source) throws InjectionException {
+        long start = System.nanoTime();
+        Map<String, String> values = new HashMap<String, String>();
+        for (Binding<?> binding : bindings) {
+            for (String key : binding.conflex.resolve().getKeys(binding.prefix)) {
+                String value = source.get(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            }
+        }
+        ConfigSource copy = ConfigSources.of(values);
+        Object[] targets = new Object[bindings.size()];
+        for (int i = 0; i < targets.length; ++i) {
+            targets[i] = bindings.get(i).create(copy);
+        }
+        ConfigSnapshot previous = current;
+        ConfigSnapshot snapshot = new ConfigSnapshot(this, previous == null ? 1 : previous.getEpoch() + 1, values,
+                targets);
+        current = snapshot;
+        this.source = source;
+
+        long elapsed = System.nanoTime() - start;
+        lastPublishNanos = elapsed;
+        if (elapsed > maxPublishNanos) {
+            maxPublishNanos = elapsed;
+        }
+        publishes.incrementAndGet();
+        return snapshot;
+    }
+
+    /**
+     * Returns the current snapshot without locking.
+     *
+     * @return The snapshot, or null if nothing has been published.
+     */
+    public ConfigSnapshot current() {
+        return current;
+    }
+
+    /**
+     * @return The epoch of the current snapshot, or 0 if nothing has been published.
+     */
+    public long getEpoch() {
+        ConfigSnapshot snapshot = current;
+        return snapshot == null ? 0 : snapshot.getEpoch();
+    }
+
+    /**
+     * @return The number of snapshots published.
+     */
+    public long getPublishCount() {
+        return publishes.get();
+    }
+
+    /**
+     * @return The time taken by the most recent publish.
+     */
+    public long getLastPublishLatency(TimeUnit unit) {
+        return unit.convert(lastPublishNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return The longest time taken by a publish.
+     */
+    public long getMaxPublishLatency(TimeUnit unit) {
+        return unit.convert(maxPublishNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Identifies a bound class within the snapshots of a publisher.
+     *
+     * @param <T> The bound class.
+     */
+    public static final class Binding<T> {
+        final ConfigPublisher publisher;
+        final Class<T> type;
+        final int index;
+        private final Constructor<T> constructor;
+        private final Conflex conflex;
+        private final String prefix;
+
+        Binding(ConfigPublisher publisher, Class<T> type, Constructor<T> constructor, Conflex conflex, String prefix,
+                int index) {
+            this.publisher = publisher;
+            this.type = type;
+            this.constructor = constructor;
+            this.conflex = conflex;
+            this.prefix = prefix;
+            this.index = index;
+        }
+
+        T create(ConfigSource source) throws InjectionException {
+            T target;
+            try {
+                target = constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new InjectionException("Unable to instantiate " + type.getName(), e);
+            }
+            conflex.inject(target, source, prefix);
+            return target;
+        }
+
+        @Override
+        public String toString() {
+            return type.getName() + " with prefix \"" + prefix + "\"";
+        }
+    }
+}
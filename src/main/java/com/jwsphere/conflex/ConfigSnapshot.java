@@ -0,0 +1,90 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An immutable version of the configuration published by a
+ * {@link ConfigPublisher}: the values of every key consumed by the bound
+ * classes, and one instance of each bound class injected with them.  All
+ * objects obtained from a snapshot belong to the same epoch, so a reader
+ * that holds on to the snapshot for the duration of a request never sees a
+ * mix of old and new values across objects.
+ *
+ * @author jonathan.wonders
+ */
+public final class ConfigSnapshot implements ConfigSource {
+
+    private final ConfigPublisher publisher;
+    private final long epoch;
+    private final Map<String, String> values;
+    private final Object[] targets;
+
+    ConfigSnapshot(ConfigPublisher publisher, long epoch, Map<String, String> values, Object[] targets) {
+        this.publisher = publisher;
+        this.epoch = epoch;
+        this.values = Collections.unmodifiableMap(values);
+        this.targets = targets;
+    }
+
+    /**
+     * @return The epoch of the snapshot, which increases by one with each publish.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the instance of the bound class injected for this epoch.  The
+     * instance must be treated as read only since it is shared by every
+     * reader of the snapshot.
+     *
+     * @param binding A binding of the publisher that published this snapshot.
+     * @return The injected instance.
+     * @throws IllegalArgumentException if the binding belongs to another
+     * publisher or was bound after this snapshot was published.
+     */
+    public <T> T get(ConfigPublisher.Binding<T> binding) {
+        if (binding.publisher != publisher) {
+            throw new IllegalArgumentException("The binding " + binding + " belongs to another publisher.");
+        }
+        if (binding.index >= targets.length) {
+            throw new IllegalArgumentException("The binding " + binding + " was bound after epoch " + epoch + ".");
+        }
+        return binding.type.cast(targets[binding.index]);
+    }
+
+    /**
+     * Returns the value of a key consumed by the bound classes, or null if
+     * it was absent or is not consumed by any bound class.
+     */
+    @Override
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * @return The values of the consumed keys that were present.
+     */
+    public Map<String, String> getValues() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "{ epoch : " + epoch + " } { values : " + values + " }";
+    }
+}
@@ -0,0 +1,37 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+/**
+ * A source of configuration values that conflex queries one key at a time,
+ * so that a store does not have to be copied into a {@link java.util.Map}
+ * before it can be injected.  Adapters for the common sources are provided
+ * by {@link ConfigSources}.
+ *
+ * Sources used for concurrent injection must be safe to query from multiple
+ * threads.
+ *
+ * @author jonathan.wonders
+ */
+public interface ConfigSource {
+
+    /**
+     * Returns the value of a key.  Values that are not strings should be
+     * converted the way {@link Object#toString()} would.
+     *
+     * @param key The complete key, including any prefix.
+     * @return The value, or null if the key is absent.
+     */
+    String get(String key);
+}
@@ -0,0 +1,157 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Adapters from the common configuration stores to {@link ConfigSource}.
+ *
+ * @author jonathan.wonders
+ */
+public final class ConfigSources {
+
+    private static final ConfigSource SYSTEM_PROPERTIES = new ConfigSource() {
+        @Override
+        public String get(String key) {
+            return System.getProperty(key);
+        }
+
+        @Override
+        public String toString() {
+            return "system properties";
+        }
+    };
+
+    private static final ConfigSource ENVIRONMENT = new ConfigSource() {
+        @Override
+        public String get(String key) {
+            return System.getenv(key);
+        }
+
+        @Override
+        public String toString() {
+            return "environment";
+        }
+    };
+
+    /**
+     * Returns a source backed by the map.  Values that are not strings, like
+     * Integer or Float, are converted with {@link Object#toString()}.  A
+     * {@link Properties} instance is adapted with {@link #of(Properties)} so
+     * that its defaults are honored.
+     *
+     * @param map The map, which is read on each lookup rather than copied.
+     * @return The source.
+     */
+    public static ConfigSource of(Map<?, ?> map) {
+        if (map instanceof Properties) {
+            return of((Properties) map);
+        }
+        return new MapSource(map);
+    }
+
+    /**
+     * Returns a source backed by the properties, which falls back to the
+     * chain of default properties for absent keys the way
+     * {@link Properties#getProperty(String)} does.
+     *
+     * @param properties The properties, which are read on each lookup rather than copied.
+     * @return The source.
+     */
+    public static ConfigSource of(Properties properties) {
+        return new PropertiesSource(properties);
+    }
+
+    /**
+     * Returns a source that reads the current system properties on each lookup.
+     */
+    public static ConfigSource systemProperties() {
+        return SYSTEM_PROPERTIES;
+    }
+
+    /**
+     * Returns a source that reads the environment of the process.  Keys are
+     * looked up verbatim, so properties keyed like {@code db.host} should be
+     * read with a prefix or from variables that are named the same way.
+     */
+    public static ConfigSource environment() {
+        return ENVIRONMENT;
+    }
+
+    /**
+     * Returns a source that returns the value of the first source that
+     * contains the key, e.g. to let system properties override a file.
+     *
+     * @param sources The sources in order of precedence.
+     * @return The source.
+     */
+    public static ConfigSource firstOf(ConfigSource... sources) {
+        return new CompositeSource(sources.clone());
+    }
+
+    private static final class MapSource implements ConfigSource {
+        private final Map<?, ?> map;
+
+        MapSource(Map<?, ?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public String get(String key) {
+            return Conflex.toValue(map.get(key));
+        }
+    }
+
+    private static final class PropertiesSource implements ConfigSource {
+        private final Properties properties;
+
+        PropertiesSource(Properties properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public String get(String key) {
+            String value = properties.getProperty(key);
+            if (value == null) {
+                // getProperty ignores values that are not strings
+                return Conflex.toValue(properties.get(key));
+            }
+            return value;
+        }
+    }
+
+    private static final class CompositeSource implements ConfigSource {
+        private final ConfigSource[] sources;
+
+        CompositeSource(ConfigSource[] sources) {
+            this.sources = sources;
+        }
+
+        @Override
+        public String get(String key) {
+            for (ConfigSource source : sources) {
+                String value = source.get(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+    }
+
+    private ConfigSources() {
+    }
+}
@@ -23,12 +23,16 @@ import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 
+import com.jwsphere.conflex.ConflexPlan.ResolvedProperty;
 import com.jwsphere.conflex.StandardInjectors.BigDecimalInjector;
 import com.jwsphere.conflex.StandardInjectors.BigIntegerInjector;
 import com.jwsphere.conflex.StandardInjectors.BoxedBoolean;
@@ -56,51 +60,62 @@ import com.jwsphere.conflex.StandardInjectors.URLInjector;
  * Conflex performs analysis of fields annotated with the {@link ConflexProperty} 
  * annotation in order to build a mapping of the configuration object to the 
  * class' fields and methods.
+ *
+ * Instances are safe to share between threads.  Injection runs against an
+ * immutable plan without locking, so a single static instance per class is
+ * sufficient even when many threads construct configuration objects.
  * 
  * @author jonathan.wonders
  */
 public class Conflex {
 
-    private static final ThreadLocal<Map<Class<?>, ConflexInjector>> DEFAULT_FIELD_INJECTOR_MAP;
+    /**
+     * The standard injectors are stateless, so a single registry is shared by
+     * every instance.  Sharing the injector instances also lets instances
+     * without custom injectors share the same cached {@link ConflexPlan}.
+     */
+    private static final Map<Class<?>, ConflexInjector> DEFAULT_FIELD_INJECTOR_MAP;
 
     static {
-        DEFAULT_FIELD_INJECTOR_MAP = new ThreadLocal<Map<Class<?>, ConflexInjector>>() {
-            @Override
-            protected Map<Class<?>, ConflexInjector> initialValue() {
-                Map<Class<?>, ConflexInjector> map = new HashMap<Class<?>, ConflexInjector>();
-                map.put(String.class, new StringInjector());
-                map.put(boolean.class, new PrimitiveBoolean());
-                map.put(int.class, new PrimitiveInteger());
-                map.put(long.class, new PrimitiveLong());
-                map.put(float.class, new PrimitiveFloat());
-                map.put(double.class, new PrimitiveDouble());
-                map.put(Boolean.class, new BoxedBoolean());
-                map.put(Integer.class, new BoxedInteger());
-                map.put(Long.class, new BoxedLong());
-                map.put(Float.class, new BoxedFloat());
-                map.put(Double.class, new BoxedDouble());
-                map.put(BigInteger.class, new BigIntegerInjector());
-                map.put(BigDecimal.class, new BigDecimalInjector());
-                map.put(Enum.class, new EnumInjector());
-                map.put(URL.class, new URLInjector());
-                map.put(URI.class, new URIInjector());
-                map.put(File.class, new FileInjector());
-                map.put(InetAddress.class, new InetAddressInjector());
-                return map;
-            }
-        };
+        Map<Class<?>, ConflexInjector> map = new HashMap<Class<?>, ConflexInjector>();
+        map.put(String.class, new StringInjector());
+        map.put(boolean.class, new PrimitiveBoolean());
+        map.put(int.class, new PrimitiveInteger());
+        map.put(long.class, new PrimitiveLong());
+        map.put(float.class, new PrimitiveFloat());
+        map.put(double.class, new PrimitiveDouble());
+        map.put(Boolean.class, new BoxedBoolean());
+        map.put(Integer.class, new BoxedInteger());
+        map.put(Long.class, new BoxedLong());
+        map.put(Float.class, new BoxedFloat());
+        map.put(Double.class, new BoxedDouble());
+        map.put(BigInteger.class, new BigIntegerInjector());
+        map.put(BigDecimal.class, new BigDecimalInjector());
+        map.put(Enum.class, new EnumInjector());
+        map.put(URL.class, new URLInjector());
+        map.put(URI.class, new URIInjector());
+        map.put(File.class, new FileInjector());
+        map.put(InetAddress.class, new InetAddressInjector());
+        DEFAULT_FIELD_INJECTOR_MAP = Collections.unmodifiableMap(map);
     }
 
-    private final List<ResolvedProperty> resolvedProperties;
-    private final Map<Class<?>, ConflexInjector> injectors;
+    private final AtomicReference<State> state;
     private volatile String prefix;
 
     private final Class<?> clazz;
-    private volatile boolean dirty;
 
+    /**
+     * Creates a conflex instance for the class.  The class' properties are
+     * resolved on first use, after any custom injectors have been
+     * registered, so that default values are parsed by the injectors that
+     * will inject them.  A default value that cannot be parsed is reported
+     * by the first injection.
+     * 
+     * @param clazz The class to inject configuration into.
+     * @return The conflex instance.
+     */
     public static Conflex create(final Class<?> clazz) {
-        Conflex conflex = new Conflex(clazz);
-        return conflex;
+        return new Conflex(clazz);
     }
 
     /**
@@ -111,57 +126,26 @@ public class Conflex {
      * @param clazz
      */
     private Conflex(Class<?> clazz) {
-        this.resolvedProperties = new ArrayList<ResolvedProperty>();
-        this.injectors = new HashMap<Class<?>, ConflexInjector>();
+        this.state = new AtomicReference<State>(new State(DEFAULT_FIELD_INJECTOR_MAP, null));
         this.clazz = clazz;
         this.prefix = "";
-        this.dirty = true;
-        injectors.putAll(DEFAULT_FIELD_INJECTOR_MAP.get());
-    }
-
-    private void resolve() {
-        for (Field field : clazz.getDeclaredFields()) {
-            if (field.isAnnotationPresent(ConflexProperty.class)) {
-                ConflexInjector injector = findInjector(field.getType());
-                if (injector != null) {
-                    ConflexProperty property = field.getAnnotation(ConflexProperty.class);
-                    resolvedProperties.add(new ResolvedProperty(property, field, null, injector));
-                } 
-            }
-        }
-        for (Method method : clazz.getDeclaredMethods()) {
-            if (method.isAnnotationPresent(ConflexProperty.class) && method.getParameterTypes().length == 1) {
-                ConflexInjector injector = findInjector(method.getParameterTypes()[0]);
-                if (injector != null) {
-                    ConflexProperty property = method.getAnnotation(ConflexProperty.class);
-                    resolvedProperties.add(new ResolvedProperty(property, null, method, injector));
-                } 
-            }
-        }
-        this.dirty = false;
     }
 
     /**
-     * Attempts to find an injector that will produce a value that is assignable to
-     * the field.
-     * 
-     * 1. Look for an injector registered for the concrete type.
-     * 2. Check if the type is an enum.
-     * 3. Check if there is an injector registered for a superclass.
-     * 4. Check if there is an injector registered for an interface.
-     * 
-     * @param clazz The class to find an injector for.
-     * @return An injector if found, null otherwise.
+     * Returns the plan for this instance's class and injectors.  Resolution
+     * is shared with every other instance through the plan cache, so only
+     * the first instance for a given class and registry pays for scanning
+     * the declared fields and methods.
      */
-    private ConflexInjector findInjector(Class<?> clazz) {
-        if (clazz == null) {
-            return null;
+    ConflexPlan resolve() {
+        State current = state.get();
+        if (current.plan != null) {
+            return current.plan;
         }
-        ConflexInjector injector = injectors.get(clazz);
-        if (injector == null && clazz.isEnum()) {
-            injector = injectors.get(Enum.class);
-        }
-        return injector;
+        ConflexPlan resolved = ConflexPlan.get(clazz, current.injectors);
+        // a concurrent registration wins, the next call resolves its registry
+        state.compareAndSet(current, new State(current.injectors, resolved));
+        return resolved;
     }
 
     /**
@@ -170,15 +154,15 @@ public class Conflex {
      * for this conflex instance is set to "prefix.", the inject method will search
      * for the value associated with key "prefix.key".
      * 
-     * To support a multi-threaded environment, the configuration class using conflex
-     * is responsible for ensuring correct synchronization between the prefix and inject
-     * method.  This can be achieved through external synchronization, by using thread-
-     * local instances of conflex, or constructing a new instance each time it is used.
+     * The prefix is shared by every thread using this instance.  Classes that
+     * inject with different prefixes from multiple threads should instead pass
+     * the prefix to {@link #inject(Object, Map, String)}, which does not depend
+     * on any mutable state of this instance.
      * 
      * @param prefix - The prefix to use for associating key-values pairs with fields
      * annotated with {@link ConflexProperty}
      */
-    public synchronized Conflex prefix(String prefix) {
+    public Conflex prefix(String prefix) {
         this.prefix = prefix;
         return this;
     }
@@ -189,19 +173,35 @@ public class Conflex {
      * instances of this class.  There is currently no support for specifying
      * custom injectors on a field-by-field basis.
      * 
-     * This method must be called before {{@link #inject(...)}
+     * This method should be called before {@link #inject(Object, Map)}.  The
+     * registry is copied on write, so injections running concurrently with a
+     * registration use either the previous or the updated set of injectors.
      * 
      * @param clazz The type for which this injector should be used.
      * @param injector The injector to use for the specified type.
      */
-    public synchronized Conflex register(Class<?> clazz, ConflexInjector injector) {
+    public Conflex register(Class<?> clazz, ConflexInjector injector) {
         if (clazz != null && injector != null) {
-            this.dirty = true;
-            injectors.put(clazz, injector);
+            State current;
+            State updated;
+            do {
+                current = state.get();
+                Map<Class<?>, ConflexInjector> injectors =
+                        new HashMap<Class<?>, ConflexInjector>(current.injectors);
+                injectors.put(clazz, injector);
+                updated = new State(injectors, null);
+            } while (!state.compareAndSet(current, updated));
         }
         return this;
     }
 
+    /**
+     * @return The key prefix of this instance.
+     */
+    String getPrefix() {
+        return prefix;
+    }
+
     /**
      * For each property field, the corresponding value is extracted from
      * the provided map and given to the injector registered for the
@@ -213,28 +213,171 @@ public class Conflex {
      * @param target The object into which the configuration should be injected.
      * @param properties The properties to inject.
      */
-    public synchronized <U, V> void inject(Object target, Map<U, V> conf) throws InjectionException {
-        if (dirty) {
-            resolve();
+    public <U, V> void inject(Object target, Map<U, V> conf) throws InjectionException {
+        inject(target, ConfigSources.of(conf), prefix);
+    }
+
+    /**
+     * Injects the configuration using the given key prefix rather than the
+     * prefix of this instance.
+     * 
+     * @param target The object into which the configuration should be injected.
+     * @param conf The properties to inject.
+     * @param prefix The prefix prepended to each property key.
+     * @see #inject(Object, ConfigSource, String)
+     */
+    public <U, V> void inject(Object target, Map<U, V> conf, String prefix) throws InjectionException {
+        inject(target, ConfigSources.of(conf), prefix);
+    }
+
+    /**
+     * Injects the configuration values looked up from the source.
+     * 
+     * @param target The object into which the configuration should be injected.
+     * @param source The source of the values to inject.
+     */
+    public void inject(Object target, ConfigSource source) throws InjectionException {
+        inject(target, source, prefix);
+    }
+
+    /**
+     * Injects the configuration values looked up from the source using the
+     * given key prefix rather than the prefix of this instance.  The resolved
+     * plan is immutable, so this method may be called concurrently from any
+     * number of threads without locking.  The prefixed keys are cached by the
+     * plan, so repeated injections with the same prefix do not build any key
+     * strings.
+     * 
+     * @param target The object into which the configuration should be injected.
+     * @param source The source of the values to inject.
+     * @param prefix The prefix prepended to each property key.
+     */
+    public void inject(Object target, ConfigSource source, String prefix) throws InjectionException {
+        ConflexPlan plan = resolve();
+        String[] keys = plan.getKeys(prefix);
+        String[] values = new String[keys.length];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = source.get(keys[i]);
         }
-        for (ResolvedProperty rp : resolvedProperties) {
-            Object object = conf.get(prefix + rp.p.key());
-            String value = rp.p.defaultValue();
-            if (object instanceof String) {
-                value = (String) object;
-            } else if (object != null) {
-                // support additional object types like Integer, Float, etc.
-                // TODO support java list types?
-                value = object.toString();
-            }
-            if (rp.field != null) {
-                rp.injector.inject(target, rp.field, value);
-            } else if (rp.method != null) {
-                rp.injector.inject(target, rp.method, value);
+        plan.inject(target, values);
+    }
+    
+    /**
+     * Injects a typed configuration using the prefix of this instance.
+     *
+     * @see #inject(Object, TypedConfig, String)
+     */
+    public void inject(Object target, TypedConfig config) throws InjectionException {
+        inject(target, config, prefix);
+    }
+
+    /**
+     * Injects a typed configuration using the given key prefix.  Values that
+     * are already of a type the property accepts, such as a Long for a long
+     * property, are assigned without being formatted and parsed again.
+     *
+     * @param target The object into which the configuration should be injected.
+     * @param config The values to inject.
+     * @param prefix The prefix prepended to each property key.
+     */
+    public void inject(Object target, TypedConfig config, String prefix) throws InjectionException {
+        resolve().inject(target, config, prefix);
+    }
+
+    /**
+     * Injects the configuration into every target using the prefix of this
+     * instance.
+     *
+     * @see #injectAll(Collection, ConfigSource, ConflexPrefixFunction, ForkJoinPool)
+     */
+    public <U, V> void injectAll(Collection<?> targets, Map<U, V> conf) throws InjectionException {
+        injectAll(targets, ConfigSources.of(conf), null, null);
+    }
+
+    /**
+     * Injects the configuration into every target.
+     *
+     * @see #injectAll(Collection, ConfigSource, ConflexPrefixFunction, ForkJoinPool)
+     */
+    public <T, U, V> void injectAll(Collection<? extends T> targets, Map<U, V> conf,
+            ConflexPrefixFunction<? super T> prefixes) throws InjectionException {
+        injectAll(targets, ConfigSources.of(conf), prefixes, null);
+    }
+
+    /**
+     * Injects the configuration into every target.
+     *
+     * @see #injectAll(Collection, ConfigSource, ConflexPrefixFunction, ForkJoinPool)
+     */
+    public <T, U, V> void injectAll(Collection<? extends T> targets, Map<U, V> conf,
+            ConflexPrefixFunction<? super T> prefixes, ForkJoinPool pool) throws InjectionException {
+        injectAll(targets, ConfigSources.of(conf), prefixes, pool);
+    }
+
+    /**
+     * Injects the configuration values looked up from the source into every
+     * target using the prefix of this instance.
+     *
+     * @see #injectAll(Collection, ConfigSource, ConflexPrefixFunction, ForkJoinPool)
+     */
+    public void injectAll(Collection<?> targets, ConfigSource source) throws InjectionException {
+        injectAll(targets, source, null, null);
+    }
+
+    /**
+     * Injects the configuration values looked up from the source into every
+     * target, which is considerably cheaper than injecting each target
+     * individually when the targets share most of their configuration.  The
+     * plan is resolved once, and each value handled by a standard injector is
+     * parsed once and the result assigned to every target that shares it.
+     *
+     * Large batches are split into ranges that are injected in parallel by
+     * the pool, if one is given.  The source and the prefix function must
+     * then be safe to call from multiple threads.  If an injection fails,
+     * some of the other targets may already have been injected.
+     *
+     * @param targets The objects into which the configuration should be injected.
+     * @param source The source of the values to inject.
+     * @param prefixes Chooses the key prefix of each target, or null to use
+     * the prefix of this instance for every target.
+     * @param pool The pool used for large batches, or null to inject on the
+     * calling thread.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void injectAll(Collection<? extends T> targets, ConfigSource source,
+            ConflexPrefixFunction<? super T> prefixes, ForkJoinPool pool) throws InjectionException {
+        ConflexBatch batch = new ConflexBatch(resolve(), source, targets.toArray(),
+                (ConflexPrefixFunction<Object>) prefixes, prefix);
+        if (pool == null || targets.size() <= ConflexBatch.THRESHOLD) {
+            batch.inject();
+            return;
+        }
+        try {
+            pool.invoke(batch);
+        } catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof InjectionException) {
+                    throw (InjectionException) cause;
+                }
             }
+            throw e;
         }
     }
-    
+
+    /**
+     * Converts a configuration value to the string handed to the injectors,
+     * supporting additional object types like Integer, Float, etc.
+     */
+    static String toValue(Object object) {
+        if (object instanceof String) {
+            return (String) object;
+        } else if (object != null) {
+            // TODO support java list types?
+            return object.toString();
+        }
+        return null;
+    }
+
     /**
      * Constructs a string that describes the configuration instance after properties
      * have been injected.
@@ -242,19 +385,19 @@ public class Conflex {
      * @param instance
      * @return
      */
-    public synchronized String describe(Object instance) {
+    public String describe(Object instance) {
         StringBuilder sb = new StringBuilder();
         
-        for (ResolvedProperty rp : resolvedProperties) {
-            String key = rp.p.key();
-            String defaultValue = rp.p.defaultValue();
+        for (ResolvedProperty rp : resolve().getProperties()) {
+            String key = rp.p.getKey();
+            String defaultValue = rp.p.getDefaultValue();
             String value = "[unknown - method properties not supported]";
-            if (rp.field != null) {
+            if (!rp.p.isMethod()) {
                 try {
-                    value = rp.field.get(instance).toString();
+                    value = String.valueOf(rp.getField(clazz).get(instance));
                 } catch (IllegalArgumentException e) {
                     value = "[unknown - error accessing field]";
-                } catch (IllegalAccessException e) {
+                } catch (ReflectiveOperationException e) {
                     value = "[unknown - error accessing field]";
                 }
             }
@@ -269,32 +412,28 @@ public class Conflex {
     }
 
     @Override
-    public synchronized String toString() {
+    public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (ResolvedProperty rp : resolvedProperties) {
-            sb.append("{ key : ").append(rp.p.key()).append(" } ");
-            sb.append("{ description : ").append(rp.p.description()).append(" } ");
-            sb.append("{ type : ").append(rp.field.getType().getCanonicalName()).append(" } ");
-            sb.append("{ default : ").append(rp.p.defaultValue()).append(" }\n");
+        for (ResolvedProperty rp : resolve().getProperties()) {
+            sb.append("{ key : ").append(rp.p.getKey()).append(" } ");
+            sb.append("{ description : ").append(rp.p.getDescription()).append(" } ");
+            sb.append("{ type : ").append(rp.getType().getCanonicalName()).append(" } ");
+            sb.append("{ default : ").append(rp.p.getDefaultValue()).append(" }\n");
         }
         return sb.toString();
     }
 
     /**
-     * Holds data for a single property field of the class that this
-     * object is capable of injecting configuration into.
+     * The injector registry of an instance together with the plan resolved
+     * for it, or null if the registry has changed since the last resolution.
      */
-    private static class ResolvedProperty {
-        ConflexProperty p;
-        Field field;
-        Method method;
-        ConflexInjector injector;
-
-        ResolvedProperty(ConflexProperty p, Field field, Method method, ConflexInjector injector) {
-            this.p = p;
-            this.field = field;
-            this.method = method;
-            this.injector = injector;
+    private static final class State {
+        final Map<Class<?>, ConflexInjector> injectors;
+        final ConflexPlan plan;
+
+        State(Map<Class<?>, ConflexInjector> injectors, ConflexPlan plan) {
+            this.injectors = injectors;
+            this.plan = plan;
         }
     }
 
@@ -319,7 +458,12 @@ public class Conflex {
     public static Collection<ConflexProperty> getAnnotatedProperties(final Iterable<Class<?>> classes) {
         Collection<ConflexProperty> properties = new ArrayList<ConflexProperty>();
         for (Class<?> clazz : toUnique(classes)) {
-            extractProperties(clazz, properties);
+            ConflexIndex index = ConflexIndex.forClassLoader(clazz.getClassLoader());
+            if (index.contains(clazz.getName())) {
+                extractIndexedProperties(index, clazz.getName(), properties);
+            } else {
+                extractProperties(clazz, properties);
+            }
         }
         return properties;
     }
@@ -345,29 +489,38 @@ public class Conflex {
      * @return
      */
     public static Set<ConflexProperty> getReferencedProperties(final Iterable<Class<?>> classes) {
-        Set<ConflexProperty> properties = new HashSet<ConflexProperty>();
-        Set<Class<?>> visited = new HashSet<Class<?>>();
-        for (Class<?> clazz : toUnique(classes)) {
-            extractReferencedProperties(clazz, visited, properties);
-        }
-        return properties;
+        return getReferencedProperties(classes, null);
     }
 
-    private static void extractReferencedProperties(final Class<?> clazz,
-            final Set<Class<?>> visited, final Set<ConflexProperty> properties) {
-        extractProperties(clazz, properties);
-        visited.add(clazz);
-        if (clazz.isAnnotationPresent(ConflexModule.class)) {
-            ConflexModule module = clazz.getAnnotation(ConflexModule.class);
-            for (Class<?> ref : module.refs()) {
-                if (!visited.contains(ref)) {
-                    extractReferencedProperties(ref, visited, properties);
-                }
-            }
+    /**
+     * Returns a collection of the {@link ConflexProperty} annotations referenced
+     * either directly within the supplied classes or through transitively 
+     * evaluated classes identified through {@link ConflexModule#refs()}.
+     *
+     * The properties referenced through each class are computed once and
+     * cached with the class, so repeated queries of the same modules only
+     * combine the cached results.  Classes described by the
+     * {@link ConflexIndex} are followed by name, so they are not loaded.
+     *
+     * @param classes The classes whose referenced properties are returned.
+     * @param pool The pool in which the properties referenced through many
+     * classes are computed in parallel, or null to compute them in the
+     * calling thread.
+     * @return A new set of the annotations found.
+     */
+    public static Set<ConflexProperty> getReferencedProperties(final Iterable<Class<?>> classes,
+            final ForkJoinPool pool) {
+        return ConflexModuleGraph.getReferencedProperties(toUnique(classes), pool);
+    }
+
+    private static void extractIndexedProperties(final ConflexIndex index, final String className,
+            final Collection<ConflexProperty> properties) {
+        for (PropertyDescriptor descriptor : index.getProperties(className)) {
+            properties.add(new IndexedProperty(descriptor));
         }
     }
 
-    private static void extractProperties(final Class<?> clazz, final Collection<ConflexProperty> properties) {
+    static void extractProperties(final Class<?> clazz, final Collection<ConflexProperty> properties) {
         for (Field field : clazz.getDeclaredFields()) {
             if (field.isAnnotationPresent(ConflexProperty.class)) {
                 ConflexProperty property = field.getAnnotation(ConflexProperty.class);
@@ -0,0 +1,124 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import com.jwsphere.conflex.ConflexPlan.ResolvedProperty;
+
+/**
+ * Injects one configuration into many targets of the same class.
+ *
+ * The plan is resolved once for the whole batch.  Values of properties that
+ * are injected by the standard injectors are immutable, so each one is
+ * parsed once and the result assigned to every target that shares the raw
+ * value, rather than being parsed again for each target.  The batch
+ * remembers the last value of each property, which is enough for the common
+ * case of many targets sharing most of their configuration.
+ *
+ * Large batches can be split into ranges of {@link #THRESHOLD} targets that
+ * are injected in parallel by a fork-join pool.  Each range parses its
+ * shared values independently.
+ *
+ * @author jonathan.wonders
+ */
+final class ConflexBatch extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of targets below which a range is not split further. */
+    static final int THRESHOLD = 512;
+
+    private final ConflexPlan plan;
+    private final ConfigSource source;
+    private final Object[] targets;
+    private final ConflexPrefixFunction<Object> prefixes;
+    private final String prefix;
+    private final int from;
+    private final int to;
+
+    ConflexBatch(ConflexPlan plan, ConfigSource source, Object[] targets,
+            ConflexPrefixFunction<Object> prefixes, String prefix) {
+        this(plan, source, targets, prefixes, prefix, 0, targets.length);
+    }
+
+    private ConflexBatch(ConflexPlan plan, ConfigSource source, Object[] targets,
+            ConflexPrefixFunction<Object> prefixes, String prefix, int from, int to) {
+        this.plan = plan;
+        this.source = source;
+        this.targets = targets;
+        this.prefixes = prefixes;
+        this.prefix = prefix;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= THRESHOLD) {
+            try {
+                inject();
+            } catch (InjectionException e) {
+                throw new Failure(e);
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new ConflexBatch(plan, source, targets, prefixes, prefix, from, middle),
+                new ConflexBatch(plan, source, targets, prefixes, prefix, middle, to));
+    }
+
+    /**
+     * Injects the targets of this range on the calling thread.
+     */
+    void inject() throws InjectionException {
+        List<ResolvedProperty> properties = plan.getProperties();
+        int size = properties.size();
+        String[] raw = new String[size];
+        Object[] parsed = new Object[size];
+        String[] values = new String[size];
+        for (int t = from; t < to; ++t) {
+            Object target = targets[t];
+            String[] keys = plan.getKeys(prefixes != null ? prefixes.prefixOf(target) : prefix);
+            for (int i = 0; i < size; ++i) {
+                values[i] = source.get(keys[i]);
+            }
+            for (int i = 0; i < size; ++i) {
+                ResolvedProperty rp = properties.get(i);
+                String value = values[i];
+                if (value == null || !rp.isShareable()) {
+                    rp.inject(target, value);
+                    continue;
+                }
+                if (!value.equals(raw[i])) {
+                    parsed[i] = rp.parse(value);
+                    raw[i] = value;
+                }
+                rp.assign(target, parsed[i]);
+            }
+        }
+    }
+
+    /**
+     * Carries an injection failure out of the fork-join pool.
+     */
+    static final class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Failure(InjectionException cause) {
+            super(cause);
+        }
+    }
+}
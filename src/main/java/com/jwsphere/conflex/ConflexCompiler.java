@@ -0,0 +1,94 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+import com.jwsphere.conflex.ConflexPlan.ResolvedProperty;
+
+/**
+ * Compiles the properties of a plan into a single method handle of type
+ * (Object, String[])void that injects every property in declaration order.
+ *
+ * The handle is a straight-line chain of the property handles, each reading
+ * its value from a fixed index of the array and injecting the property's
+ * default when the value is null.  The JVM spins bytecode for the
+ * chain and, once the handle is hot, customizes it with the bound setters and
+ * parsers as constants, so the whole injection can be inlined instead of
+ * dispatching through one injector call per property.
+ *
+ * Compilation can be disabled with the {@code conflex.compile} system
+ * property, in which case plans inject each property individually.
+ *
+ * @author jonathan.wonders
+ */
+final class ConflexCompiler {
+
+    private static final boolean ENABLED = isEnabled();
+
+    private static final MethodHandle NOOP;
+    private static final MethodHandle ELEMENT = MethodHandles.arrayElementGetter(String[].class);
+
+    static {
+        try {
+            MethodHandle noop = MethodHandles.lookup().findStatic(ConflexCompiler.class, "noop",
+                    MethodType.methodType(void.class));
+            NOOP = MethodHandles.dropArguments(noop, 0, Object.class, String[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Returns the compiled injector for the properties, or null if
+     * compilation is disabled or the chain could not be built.
+     *
+     * @param properties The resolved properties of a plan.
+     * @return A handle of type (Object, String[])void or null.
+     */
+    static MethodHandle compile(List<ResolvedProperty> properties) {
+        if (!ENABLED) {
+            return null;
+        }
+        try {
+            MethodHandle chain = NOOP;
+            for (int i = properties.size() - 1; i >= 0; --i) {
+                MethodHandle value = MethodHandles.insertArguments(ELEMENT, 1, i);
+                MethodHandle step = MethodHandles.filterArguments(properties.get(i).handleOrDefault, 1, value);
+                chain = MethodHandles.foldArguments(chain, step);
+            }
+            return chain;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isEnabled() {
+        try {
+            return Boolean.parseBoolean(System.getProperty("conflex.compile", "true"));
+        } catch (SecurityException e) {
+            return true;
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static void noop() {
+    }
+
+    private ConflexCompiler() {
+    }
+}
@@ -0,0 +1,76 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+/**
+ * Implemented by the injectors that the
+ * {@link com.jwsphere.conflex.processor.ConflexProcessor} generates at
+ * compile time.  A generated injector for the class {@code com.example.Foo}
+ * is named {@code com.example.FooConflexInjector}; nested classes replace
+ * the {@code $} separator with an underscore.
+ *
+ * When a generated injector is present, conflex uses its property table
+ * instead of scanning the class' declared fields and methods, and injects
+ * the properties it supports by direct assignment.
+ *
+ * @author jonathan.wonders
+ */
+public interface ConflexGeneratedInjector {
+
+    /**
+     * The suffix appended to the flattened class name of the target.
+     */
+    String SUFFIX = "ConflexInjector";
+
+    /**
+     * Returns the annotated properties of the target class, fields first,
+     * each in declaration order.
+     *
+     * @return The property table.
+     */
+    PropertyDescriptor[] getProperties();
+
+    /**
+     * Returns whether the property can be injected by
+     * {@link #inject(Object, int, String)}, which requires the member and its
+     * type to be accessible from the generated class and the type to be one
+     * handled by the standard injectors.
+     *
+     * @param index The index of the property in {@link #getProperties()}.
+     * @return True if the property is injected directly.
+     */
+    boolean canInject(int index);
+
+    /**
+     * Parses the value the way the standard injector for the property's type
+     * does and assigns it to the member.
+     *
+     * @param target The object into which the value is to be injected.
+     * @param index The index of the property in {@link #getProperties()}.
+     * @param value The value to inject.
+     * @throws UnsupportedOperationException if {@link #canInject(int)} is false.
+     */
+    void inject(Object target, int index, String value);
+
+    /**
+     * Assigns an already parsed value to the member, which is how conflex
+     * injects default values that it has parsed ahead of time.
+     *
+     * @param target The object into which the value is to be injected.
+     * @param index The index of the property in {@link #getProperties()}.
+     * @param value The value to assign, of the property's type.
+     * @throws UnsupportedOperationException if {@link #canInject(int)} is false.
+     */
+    void assign(Object target, int index, Object value);
+}
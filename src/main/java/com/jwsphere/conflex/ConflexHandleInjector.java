@@ -0,0 +1,42 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * An injector that can describe its parsing logic as a method handle.  When
+ * a property is resolved, conflex combines the parser with a setter handle
+ * bound to the field or method once, so injection neither goes through
+ * {@link java.lang.reflect.Field#set} nor boxes primitive values.
+ *
+ * Injectors that only implement {@link ConflexInjector} continue to work
+ * and are invoked through their reflective methods.
+ *
+ * @author jonathan.wonders
+ */
+public interface ConflexHandleInjector extends ConflexInjector {
+
+    /**
+     * Returns a method handle that parses a configuration value into a
+     * value of the requested type.  The handle must have the type
+     * {@code (String)type} so that primitive values are passed to the
+     * setter without boxing.  Parse failures should be reported by throwing
+     * an {@link IllegalArgumentException}.
+     *
+     * @param type The type of the field or the setter's parameter.
+     * @return The parser, or null if this injector cannot provide one.
+     */
+    MethodHandle parser(Class<?> type);
+}
@@ -0,0 +1,517 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An index of the properties and modules of a set of classes, which the
+ * {@link com.jwsphere.conflex.processor.ConflexProcessor} writes to
+ * {@value #RESOURCE} when the classes are compiled.
+ *
+ * When the index of a class loader includes a class, conflex reads the
+ * properties of the class and the references of its module from the index
+ * instead of reflecting on the class, so classes that are only referred to
+ * by modules need not be loaded at all.  Each jar or directory has its own
+ * index; the indexes visible to a class loader are merged when they are
+ * first needed.  Using the index can be disabled with the
+ * {@code conflex.index} system property.
+ *
+ * The index is a text file with one line per property, in the order the
+ * properties of each class are declared, and one line per module.  It is
+ * read in a single pass into arrays that are sorted by key and by class, so
+ * that the properties of a key or of a class are found by binary search.
+ *
+ * @author jonathan.wonders
+ */
+public final class ConflexIndex {
+
+    /** The location of the index within a jar or class directory. */
+    public static final String RESOURCE = "META-INF/conflex/index";
+
+    private static final String HEADER = "conflex-index 1";
+
+    private static final boolean ENABLED = isEnabled();
+
+    private static final ConflexIndex EMPTY = new Builder().build();
+
+    private static final Map<ClassLoader, ConflexIndex> INDEXES = new WeakHashMap<ClassLoader, ConflexIndex>();
+
+    private static final Comparator<PropertyDescriptor> BY_KEY = new Comparator<PropertyDescriptor>() {
+        @Override
+        public int compare(PropertyDescriptor a, PropertyDescriptor b) {
+            int c = a.getKey().compareTo(b.getKey());
+            return c != 0 ? c : a.getOwner().compareTo(b.getOwner());
+        }
+    };
+
+    private static final Comparator<PropertyDescriptor> BY_OWNER = new Comparator<PropertyDescriptor>() {
+        @Override
+        public int compare(PropertyDescriptor a, PropertyDescriptor b) {
+            return a.getOwner().compareTo(b.getOwner());
+        }
+    };
+
+    private final PropertyDescriptor[] byKey;
+    private final String[] keys;
+    private final PropertyDescriptor[] byOwner;
+    private final String[] owners;
+    private final String[] classes;
+    private final String[] modules;
+    private final String[] moduleDescriptions;
+    private final String[][] moduleRefs;
+
+    /** The nodes of the module graph for the indexed classes, created on demand. */
+    final ConcurrentMap<String, ConflexModuleGraph.Node> nodes =
+            new ConcurrentHashMap<String, ConflexModuleGraph.Node>();
+
+    private ConflexIndex(List<PropertyDescriptor> properties, Map<String, Module> modules) {
+        // stable sorts keep the declaration order of each class
+        this.byOwner = properties.toArray(new PropertyDescriptor[properties.size()]);
+        Arrays.sort(byOwner, BY_OWNER);
+        this.byKey = byOwner.clone();
+        Arrays.sort(byKey, BY_KEY);
+        this.keys = new String[byKey.length];
+        this.owners = new String[byOwner.length];
+        for (int i = 0; i < byKey.length; ++i) {
+            keys[i] = byKey[i].getKey();
+            owners[i] = byOwner[i].getOwner();
+        }
+
+        this.modules = modules.keySet().toArray(new String[modules.size()]);
+        Arrays.sort(this.modules);
+        this.moduleDescriptions = new String[this.modules.length];
+        this.moduleRefs = new String[this.modules.length][];
+        for (int i = 0; i < this.modules.length; ++i) {
+            Module module = modules.get(this.modules[i]);
+            moduleDescriptions[i] = module.description;
+            moduleRefs[i] = module.refs;
+        }
+
+        Set<String> names = new LinkedHashSet<String>(Arrays.asList(owners));
+        names.addAll(Arrays.asList(this.modules));
+        this.classes = names.toArray(new String[names.size()]);
+        Arrays.sort(this.classes);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the merged indexes visible to the class loader, which are read
+     * once and cached for as long as the loader is reachable.  An index that
+     * cannot be read is treated as absent, so that conflex falls back to
+     * reflection.
+     *
+     * @param loader The class loader, where null is the bootstrap loader.
+     * @return The index, which is empty if there is none or indexes are disabled.
+     */
+    public static ConflexIndex forClassLoader(ClassLoader loader) {
+        if (!ENABLED || loader == null) {
+            return EMPTY;
+        }
+        synchronized (INDEXES) {
+            ConflexIndex index = INDEXES.get(loader);
+            if (index == null) {
+                try {
+                    index = load(loader);
+                } catch (IOException e) {
+                    index = EMPTY;
+                } catch (IllegalArgumentException e) {
+                    index = EMPTY;
+                }
+                INDEXES.put(loader, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Reads and merges every index visible to the class loader.  When a
+     * class is described by more than one index, the first is used, the
+     * same way the class loader resolves the class itself.
+     *
+     * @param loader The class loader.
+     * @return The merged index.
+     * @throws IOException if an index cannot be read.
+     */
+    public static ConflexIndex load(ClassLoader loader) throws IOException {
+        Builder builder = new Builder();
+        Enumeration<URL> resources = loader.getResources(RESOURCE);
+        while (resources.hasMoreElements()) {
+            InputStream in = resources.nextElement().openStream();
+            try {
+                builder.addAll(read(in), true);
+            } finally {
+                in.close();
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads an index, whose lifecycle is managed by the caller.
+     *
+     * @param in The content of an index.
+     * @return The index.
+     * @throws IOException if the stream cannot be read.
+     * @throws IllegalArgumentException if the content is not an index.
+     */
+    public static ConflexIndex read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        String content = new String(out.toByteArray(), StandardCharsets.UTF_8);
+
+        Builder builder = new Builder();
+        int start = 0;
+        boolean header = true;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            if (end < 0) {
+                end = content.length();
+            }
+            String line = content.substring(start, end);
+            start = end + 1;
+            if (header) {
+                if (!HEADER.equals(line)) {
+                    throw new IllegalArgumentException("The content is not a conflex index.");
+                }
+                header = false;
+            } else if (!line.isEmpty()) {
+                builder.addLine(line.split("\t", -1));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes the index in the form that {@link #read(InputStream)} reads.
+     *
+     * @param writer The writer, whose lifecycle is managed by the caller.
+     */
+    public void write(Writer writer) throws IOException {
+        writer.write(HEADER);
+        writer.write('\n');
+        for (PropertyDescriptor property : byOwner) {
+            writer.write("P\t");
+            writeEscaped(writer, property.getKey());
+            writer.write('\t');
+            writeEscaped(writer, property.getDescription());
+            writer.write('\t');
+            writeEscaped(writer, property.getDefaultValue());
+            writer.write('\t');
+            writer.write(property.getOwner());
+            writer.write('\t');
+            writer.write(property.getMember());
+            writer.write('\t');
+            writer.write(property.getType());
+            writer.write(property.isMethod() ? "\t1\n" : "\t0\n");
+        }
+        for (int i = 0; i < modules.length; ++i) {
+            writer.write("M\t");
+            writer.write(modules[i]);
+            writer.write('\t');
+            writeEscaped(writer, moduleDescriptions[i]);
+            for (String ref : moduleRefs[i]) {
+                writer.write('\t');
+                writer.write(ref);
+            }
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Returns whether the index describes the class, i.e. whether the class
+     * declares properties or is a module.
+     */
+    public boolean contains(String className) {
+        return Arrays.binarySearch(classes, className) >= 0;
+    }
+
+    /**
+     * Returns the binary names of the classes that the index describes, sorted.
+     */
+    public List<String> getClasses() {
+        return Collections.unmodifiableList(Arrays.asList(classes));
+    }
+
+    public boolean isEmpty() {
+        return classes.length == 0;
+    }
+
+    /**
+     * Returns every property, sorted by key.
+     */
+    public List<PropertyDescriptor> getProperties() {
+        return Collections.unmodifiableList(Arrays.asList(byKey));
+    }
+
+    /**
+     * Returns the properties declared by the class in the order they are
+     * declared: fields first, then setters.
+     */
+    public List<PropertyDescriptor> getProperties(String className) {
+        int from = lowerBound(owners, className);
+        int to = from;
+        while (to < owners.length && owners[to].equals(className)) {
+            ++to;
+        }
+        return Collections.unmodifiableList(Arrays.asList(byOwner).subList(from, to));
+    }
+
+    /**
+     * Returns the properties with the key, i.e. the members that own it.
+     */
+    public List<PropertyDescriptor> getPropertiesByKey(String key) {
+        int from = lowerBound(keys, key);
+        int to = from;
+        while (to < keys.length && keys[to].equals(key)) {
+            ++to;
+        }
+        return Collections.unmodifiableList(Arrays.asList(byKey).subList(from, to));
+    }
+
+    /**
+     * Returns whether the class is annotated with {@link ConflexModule}.
+     */
+    public boolean isModule(String className) {
+        return Arrays.binarySearch(modules, className) >= 0;
+    }
+
+    /**
+     * Returns the description of the module, or null if the class is not a module.
+     */
+    public String getModuleDescription(String className) {
+        int i = Arrays.binarySearch(modules, className);
+        return i >= 0 ? moduleDescriptions[i] : null;
+    }
+
+    /**
+     * Returns the binary names of the classes that the module refers to,
+     * which is empty if the class is not a module.
+     */
+    public List<String> getModuleRefs(String className) {
+        int i = Arrays.binarySearch(modules, className);
+        if (i < 0) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(moduleRefs[i]));
+    }
+
+    @Override
+    public String toString() {
+        return "{ classes : " + classes.length + " } { properties : " + byKey.length
+                + " } { modules : " + modules.length + " }";
+    }
+
+    /**
+     * Returns the index of the first element that is not less than the key.
+     */
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void writeEscaped(Writer writer, String text) throws IOException {
+        for (int i = 0, n = text.length(); i < n; ++i) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '\\':
+                writer.write("\\\\");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            default:
+                writer.write(c);
+            }
+        }
+    }
+
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0, n = text.length(); i < n; ++i) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < n) {
+                c = text.charAt(++i);
+                switch (c) {
+                case 't':
+                    c = '\t';
+                    break;
+                case 'n':
+                    c = '\n';
+                    break;
+                case 'r':
+                    c = '\r';
+                    break;
+                default:
+                    break;
+                }
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static boolean isEnabled() {
+        try {
+            return Boolean.parseBoolean(System.getProperty("conflex.index", "true"));
+        } catch (SecurityException e) {
+            return true;
+        }
+    }
+
+    private static final class Module {
+        final String description;
+        final String[] refs;
+
+        Module(String description, String[] refs) {
+            this.description = description;
+            this.refs = refs;
+        }
+    }
+
+    /**
+     * Builds an index, e.g. from the classes being compiled or from the
+     * metadata of a classpath scan.
+     */
+    public static final class Builder {
+        private final Map<String, List<PropertyDescriptor>> properties =
+                new LinkedHashMap<String, List<PropertyDescriptor>>();
+        private final Map<String, Module> modules = new LinkedHashMap<String, Module>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a property.  The properties of a class are kept in the order
+         * they are added, which should be the order they are declared.
+         */
+        public Builder add(PropertyDescriptor property) {
+            List<PropertyDescriptor> owned = properties.get(property.getOwner());
+            if (owned == null) {
+                owned = new ArrayList<PropertyDescriptor>();
+                properties.put(property.getOwner(), owned);
+            }
+            owned.add(property);
+            return this;
+        }
+
+        /**
+         * Adds a module.
+         *
+         * @param className The binary name of the class annotated with {@link ConflexModule}.
+         * @param description The description of the module.
+         * @param refs The binary names of the classes the module refers to.
+         */
+        public Builder addModule(String className, String description, List<String> refs) {
+            modules.put(className, new Module(description, refs.toArray(new String[refs.size()])));
+            return this;
+        }
+
+        /**
+         * Removes the properties and module of the class, e.g. because it is
+         * being compiled again.
+         */
+        public Builder remove(String className) {
+            properties.remove(className);
+            modules.remove(className);
+            return this;
+        }
+
+        /**
+         * Adds the classes of another index.
+         *
+         * @param index The index.
+         * @param keepExisting Whether a class that was already added is kept
+         * rather than replaced.
+         */
+        public Builder addAll(ConflexIndex index, boolean keepExisting) {
+            for (String className : index.classes) {
+                if (keepExisting && (properties.containsKey(className) || modules.containsKey(className))) {
+                    continue;
+                }
+                remove(className);
+                for (PropertyDescriptor property : index.getProperties(className)) {
+                    add(property);
+                }
+                int i = Arrays.binarySearch(index.modules, className);
+                if (i >= 0) {
+                    modules.put(className, new Module(index.moduleDescriptions[i], index.moduleRefs[i]));
+                }
+            }
+            return this;
+        }
+
+        public ConflexIndex build() {
+            List<PropertyDescriptor> all = new ArrayList<PropertyDescriptor>();
+            for (List<PropertyDescriptor> owned : properties.values()) {
+                all.addAll(owned);
+            }
+            return new ConflexIndex(all, new LinkedHashMap<String, Module>(modules));
+        }
+
+        private void addLine(String[] fields) {
+            if ("P".equals(fields[0]) && fields.length == 8) {
+                add(new PropertyDescriptor(unescape(fields[1]), unescape(fields[2]), unescape(fields[3]),
+                        fields[4], fields[5], fields[6], "1".equals(fields[7])));
+            } else if ("M".equals(fields[0]) && fields.length >= 3) {
+                addModule(fields[1], unescape(fields[2]), Arrays.asList(fields).subList(3, fields.length));
+            } else {
+                throw new IllegalArgumentException("Malformed conflex index entry: " + Arrays.toString(fields));
+            }
+        }
+    }
+}
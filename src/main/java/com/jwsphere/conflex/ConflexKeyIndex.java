@@ -0,0 +1,244 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An index from each prefixed configuration key to the properties of the
+ * live targets that consume it, so that a change to a few keys touches only
+ * the properties depending on them rather than every property of every
+ * registered target.
+ *
+ * Targets are held weakly.  Once a target has been garbage collected, its
+ * entries are removed the next time the index is modified or its metrics
+ * are read.
+ *
+ * Lookups and injection do not lock; registration is serialized.
+ *
+ * @author jonathan.wonders
+ */
+public final class ConflexKeyIndex {
+
+    /*
+     * Rough per-object sizes with compressed references, used to estimate
+     * the footprint: a hash map node and its table slot, the concurrent set
+     * of a key's dependents, a dependent, and a target reference with its
+     * dependents array.
+     */
+    private static final long ENTRY_BYTES = 48;
+    private static final long SET_BYTES = 128;
+    private static final long DEPENDENT_BYTES = 24 + ENTRY_BYTES;
+    private static final long TARGET_BYTES = 48 + ENTRY_BYTES;
+
+    private final ConcurrentMap<String, Set<Dependent>> index = new ConcurrentHashMap<String, Set<Dependent>>();
+    private final Set<Target> targets = Collections.newSetFromMap(new ConcurrentHashMap<Target, Boolean>());
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private final AtomicLong dependents = new AtomicLong();
+
+    /**
+     * Adds every property of the target to the index under its prefixed key.
+     *
+     * @param conflex The conflex instance for the target's class.
+     * @param target The object consuming the keys.
+     * @param prefix The prefix prepended to each property key.
+     */
+    public void register(Conflex conflex, Object target, String prefix) {
+        register(conflex.resolve(), target, prefix);
+    }
+
+    synchronized void register(ConflexPlan plan, Object target, String prefix) {
+        expungeStaleTargets();
+        String[] keys = plan.getKeys(prefix);
+        Target ref = new Target(target, queue, plan, keys);
+        for (int i = 0; i < keys.length; ++i) {
+            Set<Dependent> set = index.get(keys[i]);
+            if (set == null) {
+                set = Collections.newSetFromMap(new ConcurrentHashMap<Dependent, Boolean>(4));
+                index.put(keys[i], set);
+            }
+            set.add(ref.dependents[i]);
+        }
+        targets.add(ref);
+        dependents.addAndGet(keys.length);
+    }
+
+    /**
+     * Removes every property of the target from the index.
+     *
+     * @return True if the target was registered.
+     */
+    public synchronized boolean unregister(Object target) {
+        expungeStaleTargets();
+        boolean removed = false;
+        for (Target ref : targets) {
+            if (ref.get() == target) {
+                remove(ref);
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Injects the changed keys into the properties that consume them.  The
+     * cost is proportional to the number of dependents of the changed keys,
+     * independent of the number of registered targets.
+     *
+     * @param changed The keys whose values changed.
+     * @param source The source of the new values, where an absent key injects
+     * the property's default value.
+     * @return The number of properties injected.
+     * @throws InjectionException if a value cannot be injected, after the
+     * remaining properties have been injected.
+     */
+    public int inject(Collection<String> changed, ConfigSource source) throws InjectionException {
+        InjectionException failure = null;
+        int injected = 0;
+        for (String key : changed) {
+            Set<Dependent> set = index.get(key);
+            if (set == null) {
+                continue;
+            }
+            String value = source.get(key);
+            for (Dependent dependent : set) {
+                Object target = dependent.target.get();
+                if (target == null) {
+                    continue;
+                }
+                try {
+                    dependent.target.plan.getProperties().get(dependent.index).inject(target, value);
+                    ++injected;
+                } catch (InjectionException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return injected;
+    }
+
+    /**
+     * Returns whether any live property consumes the key.
+     */
+    public boolean isConsumed(String key) {
+        Set<Dependent> set = index.get(key);
+        if (set != null) {
+            for (Dependent dependent : set) {
+                if (dependent.target.get() != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of distinct keys in the index.
+     */
+    public synchronized int getKeyCount() {
+        expungeStaleTargets();
+        return index.size();
+    }
+
+    /**
+     * @return The number of registered targets that are still reachable.
+     */
+    public synchronized int getTargetCount() {
+        expungeStaleTargets();
+        return targets.size();
+    }
+
+    /**
+     * @return The number of indexed properties, one per property of each target.
+     */
+    public synchronized long getDependentCount() {
+        expungeStaleTargets();
+        return dependents.get();
+    }
+
+    /**
+     * Returns an estimate of the memory held by the index itself, excluding
+     * the targets, the plans and the key strings, which are shared with the
+     * plans' key caches.
+     *
+     * @return The estimated footprint in bytes.
+     */
+    public synchronized long getEstimatedFootprint() {
+        expungeStaleTargets();
+        return index.size() * (ENTRY_BYTES + SET_BYTES) + dependents.get() * DEPENDENT_BYTES
+                + targets.size() * TARGET_BYTES;
+    }
+
+    private void expungeStaleTargets() {
+        Object stale;
+        while ((stale = queue.poll()) != null) {
+            remove((Target) stale);
+        }
+    }
+
+    private void remove(Target ref) {
+        if (!targets.remove(ref)) {
+            return;
+        }
+        for (int i = 0; i < ref.keys.length; ++i) {
+            Set<Dependent> set = index.get(ref.keys[i]);
+            if (set != null && set.remove(ref.dependents[i]) && set.isEmpty()) {
+                index.remove(ref.keys[i], set);
+            }
+        }
+        dependents.addAndGet(-ref.keys.length);
+    }
+
+    /**
+     * A weakly held target together with the keys it was registered under.
+     */
+    private static final class Target extends WeakReference<Object> {
+        final ConflexPlan plan;
+        final String[] keys;
+        final Dependent[] dependents;
+
+        Target(Object target, ReferenceQueue<Object> queue, ConflexPlan plan, String[] keys) {
+            super(target, queue);
+            this.plan = plan;
+            this.keys = keys;
+            this.dependents = new Dependent[keys.length];
+            for (int i = 0; i < keys.length; ++i) {
+                dependents[i] = new Dependent(this, i);
+            }
+        }
+    }
+
+    /**
+     * A single property of a target, compared by identity.
+     */
+    private static final class Dependent {
+        final Target target;
+        final int index;
+
+        Dependent(Target target, int index) {
+            this.target = target;
+            this.index = index;
+        }
+    }
+}
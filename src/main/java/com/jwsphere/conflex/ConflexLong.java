@@ -0,0 +1,60 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+/**
+ * A live long property.  A field of this type annotated with
+ * {@link ConflexProperty} is bound to the handle once, and each later
+ * injection, e.g. by a {@link ConflexReloader}, swaps the value held by the
+ * handle instead of replacing the field.  Reading the value is a single
+ * volatile read of a primitive, so hot code can call {@link #get()} on every
+ * use without boxing and always sees a complete, current value.
+ *
+ * If the field is null when it is first injected, conflex assigns a new
+ * handle, otherwise it updates the handle the field already holds, which
+ * allows the field to be final.
+ *
+ * @see ConflexValue
+ * @author jonathan.wonders
+ */
+public final class ConflexLong {
+
+    private volatile long value;
+
+    public ConflexLong() {
+    }
+
+    /**
+     * @param value The value held until the handle is first injected.
+     */
+    public ConflexLong(long value) {
+        this.value = value;
+    }
+
+    /**
+     * @return The current value.
+     */
+    public long get() {
+        return value;
+    }
+
+    void set(long value) {
+        this.value = value;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,437 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The graph of classes connected by {@link ConflexModule#refs()}, which
+ * remembers the properties referenced by each class and every class it
+ * transitively refers to.
+ *
+ * Nodes of loaded classes are kept in a {@link ClassValue}, like plans, so
+ * that they become unreachable together with the class.  Classes described
+ * by a {@link ConflexIndex} are nodes of that index instead, which lets the
+ * graph follow refs by name without loading the referenced classes.  The
+ * nodes of an index never hold on to a class or a class loader, so the
+ * index can be cached for as long as its class loader is reachable.
+ *
+ * The strongly connected components reachable from a node are found once,
+ * by an iterative pass of Tarjan's algorithm, so cycles of refs are handled
+ * and deep graphs cannot overflow the stack.  Each component holds the
+ * properties of its classes and the components it refers to, so the graph
+ * of components is as large as the graph of classes.  The closure of a
+ * component, i.e. every property reachable from it, is only collected when
+ * it is asked for and then kept, because keeping the closure of every
+ * component of a chain of modules would take quadratic space.  Concurrent
+ * passes may compute the same component twice but always agree on the
+ * result.  Many classes can be split into ranges of {@link #THRESHOLD}
+ * classes whose closures are computed in parallel by a fork-join pool, so
+ * that disconnected parts of the graph are traversed concurrently.
+ *
+ * @author jonathan.wonders
+ */
+final class ConflexModuleGraph {
+
+    /** The number of classes below which a range is not split further. */
+    static final int THRESHOLD = 16;
+
+    private static final ClassValue<Node> NODES = new ClassValue<Node>() {
+        @Override
+        protected Node computeValue(Class<?> type) {
+            ConflexIndex index = ConflexIndex.forClassLoader(type.getClassLoader());
+            if (index.contains(type.getName())) {
+                return node(index, type.getClassLoader(), type.getName());
+            }
+            return new ReflectedNode(type);
+        }
+    };
+
+    private ConflexModuleGraph() {
+    }
+
+    /**
+     * Returns the properties referenced by the classes, directly or through
+     * the classes their modules refer to.
+     *
+     * @param classes The classes.
+     * @param pool The pool in which to compute the closures of many classes,
+     * or null to compute them in the calling thread.
+     * @return A new set of the properties.
+     */
+    static Set<ConflexProperty> getReferencedProperties(Collection<Class<?>> classes,
+            ForkJoinPool pool) {
+        Node[] nodes = new Node[classes.size()];
+        int i = 0;
+        for (Class<?> clazz : classes) {
+            nodes[i++] = NODES.get(clazz);
+        }
+        return getReferencedProperties(nodes, pool);
+    }
+
+    /**
+     * Returns the properties referenced through the nodes.
+     */
+    static Set<ConflexProperty> getReferencedProperties(Node[] nodes, ForkJoinPool pool) {
+        if (pool != null && nodes.length > THRESHOLD) {
+            pool.invoke(new Closures(nodes, 0, nodes.length));
+        }
+        Set<ConflexProperty> properties = new HashSet<ConflexProperty>();
+        for (Node node : nodes) {
+            properties.addAll(closure(node));
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the node of an indexed class, creating it on first use.
+     */
+    private static Node node(ConflexIndex index, ClassLoader loader, String className) {
+        ConcurrentMap<String, Node> nodes = index.nodes;
+        Node node = nodes.get(className);
+        if (node == null) {
+            Node created = new IndexedNode(index, loader, className);
+            node = nodes.putIfAbsent(className, created);
+            if (node == null) {
+                node = created;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Returns the properties referenced through the node.
+     */
+    static Set<ConflexProperty> closure(Node node) {
+        Component component = component(node);
+        Set<ConflexProperty> closure = component.closure;
+        if (closure != null) {
+            return closure;
+        }
+
+        // modules that only group another module share its closure
+        List<Component> groups = new ArrayList<Component>();
+        while (component.properties.length == 0 && component.successors.length == 1) {
+            groups.add(component);
+            component = component.successors[0];
+        }
+        closure = component.closure;
+        if (closure == null) {
+            closure = Collections.unmodifiableSet(collect(component));
+            component.closure = closure;
+        }
+        for (Component group : groups) {
+            group.closure = closure;
+        }
+        return closure;
+    }
+
+    /**
+     * Collects the properties of every component reachable from the
+     * component, reusing the closures that were already collected.
+     */
+    private static Set<ConflexProperty> collect(Component root) {
+        Set<ConflexProperty> properties = new HashSet<ConflexProperty>();
+        Set<Component> visited = Collections.newSetFromMap(new IdentityHashMap<Component, Boolean>());
+        Deque<Component> pending = new ArrayDeque<Component>();
+        visited.add(root);
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Component component = pending.pop();
+            Set<ConflexProperty> closure = component.closure;
+            if (closure != null) {
+                properties.addAll(closure);
+                continue;
+            }
+            properties.addAll(Arrays.asList(component.properties));
+            for (Component successor : component.successors) {
+                if (visited.add(successor)) {
+                    pending.push(successor);
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the component of the node, finding it and the components of
+     * the nodes it reaches with Tarjan's algorithm, run with an explicit
+     * stack.
+     */
+    private static Component component(Node root) {
+        Component done = root.component;
+        if (done != null) {
+            return done;
+        }
+
+        Map<Node, int[]> order = new IdentityHashMap<Node, int[]>();
+        Deque<Node> stack = new ArrayDeque<Node>();
+        Deque<Frame> frames = new ArrayDeque<Frame>();
+        int counter = 0;
+
+        order.put(root, new int[] { counter, counter });
+        ++counter;
+        stack.push(root);
+        frames.push(new Frame(root));
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            int[] state = order.get(frame.node);
+            if (frame.next < frame.successors.length) {
+                Node successor = frame.successors[frame.next++];
+                if (successor.component != null) {
+                    continue;
+                }
+                int[] visited = order.get(successor);
+                if (visited == null) {
+                    order.put(successor, new int[] { counter, counter });
+                    ++counter;
+                    stack.push(successor);
+                    frames.push(new Frame(successor));
+                } else if (visited[1] >= 0) {
+                    // still on the stack, so part of the current component
+                    state[1] = Math.min(state[1], visited[0]);
+                }
+                continue;
+            }
+
+            frames.pop();
+            if (!frames.isEmpty()) {
+                int[] parent = order.get(frames.peek().node);
+                parent[1] = Math.min(parent[1], state[1]);
+            }
+            if (state[1] == state[0]) {
+                List<Node> members = new ArrayList<Node>();
+                Node member;
+                do {
+                    member = stack.pop();
+                    order.get(member)[1] = -1;
+                    members.add(member);
+                } while (member != frame.node);
+                complete(members);
+            }
+        }
+        return root.component;
+    }
+
+    /**
+     * Creates the component of the nodes, all of whose successors outside
+     * the component already have one, since components are completed in
+     * reverse topological order.
+     */
+    private static void complete(List<Node> members) {
+        if (members.size() == 1) {
+            Node member = members.get(0);
+            Node[] nodes = member.successors();
+            Set<Component> successors = Collections.newSetFromMap(new IdentityHashMap<Component, Boolean>());
+            for (Node successor : nodes) {
+                if (successor != member) {
+                    successors.add(successor.component);
+                }
+            }
+            member.component = new Component(member.properties,
+                    successors.toArray(new Component[successors.size()]));
+            return;
+        }
+        Set<Node> inComponent = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+        inComponent.addAll(members);
+        Set<ConflexProperty> properties = new HashSet<ConflexProperty>();
+        Set<Component> successors = Collections.newSetFromMap(new IdentityHashMap<Component, Boolean>());
+        for (Node member : members) {
+            properties.addAll(Arrays.asList(member.properties));
+            for (Node successor : member.successors()) {
+                if (!inComponent.contains(successor)) {
+                    successors.add(successor.component);
+                }
+            }
+        }
+        Component component = new Component(properties.toArray(new ConflexProperty[properties.size()]),
+                successors.toArray(new Component[successors.size()]));
+        for (Node member : members) {
+            member.component = component;
+        }
+    }
+
+    /**
+     * A strongly connected component of the graph.
+     */
+    private static final class Component {
+        final ConflexProperty[] properties;
+        final Component[] successors;
+        volatile Set<ConflexProperty> closure;
+
+        Component(ConflexProperty[] properties, Component[] successors) {
+            this.properties = properties;
+            this.successors = successors;
+        }
+    }
+
+    private static final class Frame {
+        final Node node;
+        final Node[] successors;
+        int next;
+
+        Frame(Node node) {
+            this.node = node;
+            this.successors = node.successors();
+        }
+    }
+
+    /**
+     * A class of the graph.
+     */
+    abstract static class Node {
+        final ConflexProperty[] properties;
+        volatile Node[] successors;
+        volatile Component component;
+
+        Node(ConflexProperty[] properties) {
+            this.properties = properties;
+        }
+
+        /**
+         * Returns the nodes of the classes the module refers to, which are
+         * resolved on first use so that creating a node never recurses.
+         */
+        abstract Node[] successors();
+    }
+
+    private static final class ReflectedNode extends Node {
+        private final Class<?>[] refs;
+
+        ReflectedNode(Class<?> type) {
+            super(reflect(type));
+            ConflexModule module = type.getAnnotation(ConflexModule.class);
+            // refs are visible from the class, so they cannot outlive it
+            this.refs = module == null ? new Class<?>[0] : module.refs();
+        }
+
+        private static ConflexProperty[] reflect(Class<?> type) {
+            List<ConflexProperty> properties = new ArrayList<ConflexProperty>();
+            Conflex.extractProperties(type, properties);
+            return properties.toArray(new ConflexProperty[properties.size()]);
+        }
+
+        @Override
+        Node[] successors() {
+            Node[] resolved = successors;
+            if (resolved == null) {
+                resolved = new Node[refs.length];
+                for (int i = 0; i < refs.length; ++i) {
+                    resolved[i] = NODES.get(refs[i]);
+                }
+                successors = resolved;
+            }
+            return resolved;
+        }
+    }
+
+    private static final class IndexedNode extends Node {
+        private final ConflexIndex index;
+        private final WeakReference<ClassLoader> loader;
+        private final String className;
+
+        IndexedNode(ConflexIndex index, ClassLoader loader, String className) {
+            super(indexed(index, className));
+            this.index = index;
+            this.loader = new WeakReference<ClassLoader>(loader);
+            this.className = className;
+        }
+
+        private static ConflexProperty[] indexed(ConflexIndex index, String className) {
+            List<PropertyDescriptor> descriptors = index.getProperties(className);
+            ConflexProperty[] properties = new ConflexProperty[descriptors.size()];
+            for (int i = 0; i < properties.length; ++i) {
+                properties[i] = new IndexedProperty(descriptors.get(i));
+            }
+            return properties;
+        }
+
+        /**
+         * Resolves refs to indexed classes by name and loads the others.  The
+         * nodes of loaded classes are not kept, since they hold the classes.
+         */
+        @Override
+        Node[] successors() {
+            Node[] resolved = successors;
+            if (resolved != null) {
+                return resolved;
+            }
+            List<String> refs = index.getModuleRefs(className);
+            resolved = new Node[refs.size()];
+            boolean indexed = true;
+            for (int i = 0; i < resolved.length; ++i) {
+                String ref = refs.get(i);
+                ClassLoader classLoader = loader.get();
+                if (index.contains(ref)) {
+                    resolved[i] = node(index, classLoader, ref);
+                    continue;
+                }
+                try {
+                    resolved[i] = NODES.get(Class.forName(ref, false, classLoader));
+                    indexed = false;
+                } catch (ClassNotFoundException e) {
+                    throw new TypeNotPresentException(ref, e);
+                }
+            }
+            if (indexed) {
+                successors = resolved;
+            }
+            return resolved;
+        }
+    }
+
+    /**
+     * Computes the closures of a range of nodes.
+     */
+    private static final class Closures extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Node[] nodes;
+        private final int from;
+        private final int to;
+
+        Closures(Node[] nodes, int from, int to) {
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Closures(nodes, from, middle), new Closures(nodes, middle, to));
+                return;
+            }
+            for (int i = from; i < to; ++i) {
+                closure(nodes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses numbers directly from a {@link CharSequence}, or from a range of
+ * ASCII bytes in an array or {@link ByteBuffer}, so that values read from a
+ * memory-mapped or streamed file can be injected without first creating a
+ * String for each of them.
+ *
+ * The integer parsers follow {@link Long#decode(String)}: an optional sign,
+ * followed by a {@code 0x}, {@code 0X} or {@code #} prefix for hexadecimal
+ * values, a leading {@code 0} for octal values, or decimal digits.  The
+ * floating point parsers accept decimal values with an optional fraction
+ * and exponent.  All parsers ignore surrounding whitespace and accept
+ * underscores between digits, as in Java literals.  Invalid values are
+ * reported with a {@link NumberFormatException}.
+ *
+ * The integer parsers never allocate except to report an error.  The
+ * floating point parsers compute values of up to 15 significant digits with
+ * a decimal exponent of at most 22 exactly, which covers typical
+ * configuration values, and fall back to {@link Double#parseDouble(String)}
+ * for everything else, including {@code NaN} and {@code Infinity}.
+ *
+ * The parsers are opt-in: the typed getters of {@link MappedProperties} use
+ * them to parse values straight from the mapped file, while the standard
+ * injectors keep using {@link Integer#parseInt(String)} and its relatives,
+ * so that the values they accept do not change.  Note that, as with
+ * {@link Long#decode(String)}, an integer value with a leading zero is octal.
+ *
+ * @author jonathan.wonders
+ */
+public final class ConflexParsers {
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** The largest mantissa that a double represents exactly. */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    public static int parseInt(CharSequence value) {
+        return parseInt(value, 0, value.length());
+    }
+
+    public static int parseInt(CharSequence value, int start, int end) {
+        return (int) parse(value, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    public static int parseInt(byte[] value, int start, int end) {
+        return (int) parse(value, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    public static int parseInt(ByteBuffer value, int start, int end) {
+        return (int) parse(value, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    public static long parseLong(CharSequence value) {
+        return parseLong(value, 0, value.length());
+    }
+
+    public static long parseLong(CharSequence value, int start, int end) {
+        return parse(value, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    public static long parseLong(byte[] value, int start, int end) {
+        return parse(value, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    public static long parseLong(ByteBuffer value, int start, int end) {
+        return parse(value, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    public static double parseDouble(CharSequence value) {
+        return parseDouble(value, 0, value.length());
+    }
+
+    public static double parseDouble(CharSequence value, int start, int end) {
+        return parseDouble((Object) value, start, end);
+    }
+
+    public static double parseDouble(byte[] value, int start, int end) {
+        return parseDouble((Object) value, start, end);
+    }
+
+    public static double parseDouble(ByteBuffer value, int start, int end) {
+        return parseDouble((Object) value, start, end);
+    }
+
+    public static float parseFloat(CharSequence value) {
+        return parseFloat(value, 0, value.length());
+    }
+
+    public static float parseFloat(CharSequence value, int start, int end) {
+        return parseFloat((Object) value, start, end);
+    }
+
+    public static float parseFloat(byte[] value, int start, int end) {
+        return parseFloat((Object) value, start, end);
+    }
+
+    public static float parseFloat(ByteBuffer value, int start, int end) {
+        return parseFloat((Object) value, start, end);
+    }
+
+    /**
+     * Returns the character at the index of a CharSequence, byte array or
+     * ByteBuffer.  Call sites see a single source type in practice, so the
+     * checks are cheap once compiled.
+     */
+    private static char charAt(Object source, int index) {
+        if (source instanceof String) {
+            return ((String) source).charAt(index);
+        } else if (source instanceof byte[]) {
+            return (char) (((byte[]) source)[index] & 0xff);
+        } else if (source instanceof ByteBuffer) {
+            return (char) (((ByteBuffer) source).get(index) & 0xff);
+        }
+        return ((CharSequence) source).charAt(index);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c <= ' ';
+    }
+
+    /**
+     * Parses an integer with {@link Long#decode(String)} semantics and checks
+     * that it lies within the bounds.
+     */
+    private static long parse(Object source, int start, int end, long min, long max) {
+        int i = start;
+        int last = end;
+        while (i < last && isWhitespace(charAt(source, i))) {
+            ++i;
+        }
+        while (last > i && isWhitespace(charAt(source, last - 1))) {
+            --last;
+        }
+        if (i == last) {
+            throw error(source, start, end);
+        }
+        boolean negative = false;
+        char c = charAt(source, i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            ++i;
+        }
+        int radix = 10;
+        if (i + 1 < last && charAt(source, i) == '0' && (charAt(source, i + 1) == 'x' || charAt(source, i + 1) == 'X')) {
+            radix = 16;
+            i += 2;
+        } else if (i < last && charAt(source, i) == '#') {
+            radix = 16;
+            ++i;
+        } else if (i + 1 < last && charAt(source, i) == '0') {
+            radix = 8;
+            ++i;
+        }
+        if (i == last) {
+            throw error(source, start, end);
+        }
+
+        // accumulate negatively, since the magnitude of the minimum is larger than the maximum
+        long limit = negative ? min : -max;
+        long multiplicationLimit = limit / radix;
+        long result = 0;
+        boolean digit = false;
+        for (; i < last; ++i) {
+            c = charAt(source, i);
+            if (c == '_') {
+                if (!digit || i + 1 == last || charAt(source, i + 1) == '_') {
+                    throw error(source, start, end);
+                }
+                continue;
+            }
+            int d = radix == 10 ? (c >= '0' && c <= '9' ? c - '0' : -1) : Character.digit(c, radix);
+            if (d < 0 || result < multiplicationLimit) {
+                throw error(source, start, end);
+            }
+            result *= radix;
+            if (result < limit + d) {
+                throw error(source, start, end);
+            }
+            result -= d;
+            digit = true;
+        }
+        return negative ? result : -result;
+    }
+
+    private static double parseDouble(Object source, int start, int end) {
+        int i = start;
+        int last = end;
+        while (i < last && isWhitespace(charAt(source, i))) {
+            ++i;
+        }
+        while (last > i && isWhitespace(charAt(source, last - 1))) {
+            --last;
+        }
+        int scan = scanDecimal(source, i, last);
+        if (scan < 0) {
+            return Double.parseDouble(fallback(source, start, end));
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean negative = charAt(source, i) == '-';
+        for (int j = i; j < last; ++j) {
+            char c = charAt(source, j);
+            if (c >= '0' && c <= '9') {
+                if (mantissa == 0 && c == '0') {
+                    // leading zeros are not significant
+                } else if (++digits > 15) {
+                    return Double.parseDouble(fallback(source, start, end));
+                } else {
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                if (j >= scan) {
+                    // digits after the decimal point
+                    --exponent;
+                }
+            } else if (c == 'e' || c == 'E') {
+                exponent += parseExponent(source, j + 1, last);
+                break;
+            }
+        }
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(fallback(source, start, end));
+        }
+        double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    private static float parseFloat(Object source, int start, int end) {
+        int i = start;
+        int last = end;
+        while (i < last && isWhitespace(charAt(source, i))) {
+            ++i;
+        }
+        while (last > i && isWhitespace(charAt(source, last - 1))) {
+            --last;
+        }
+        int scan = scanDecimal(source, i, last);
+        if (scan < 0) {
+            return Float.parseFloat(fallback(source, start, end));
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean negative = charAt(source, i) == '-';
+        for (int j = i; j < last; ++j) {
+            char c = charAt(source, j);
+            if (c >= '0' && c <= '9') {
+                if (mantissa == 0 && c == '0') {
+                    // leading zeros are not significant
+                } else if (++digits > 7) {
+                    return Float.parseFloat(fallback(source, start, end));
+                } else {
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                if (j >= scan) {
+                    --exponent;
+                }
+            } else if (c == 'e' || c == 'E') {
+                exponent += parseExponent(source, j + 1, last);
+                break;
+            }
+        }
+        if (mantissa == 0) {
+            return negative ? -0.0f : 0.0f;
+        }
+        // a float represents mantissas below 2^24 and powers of ten up to 1e10 exactly
+        if (mantissa >= 1 << 24 || exponent < -10 || exponent > 10) {
+            return Float.parseFloat(fallback(source, start, end));
+        }
+        float power = (float) POWERS_OF_TEN[Math.abs(exponent)];
+        float value = exponent < 0 ? mantissa / power : mantissa * power;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Validates a trimmed decimal of the form [sign] digits [. digits]
+     * [(e|E) [sign] digits] with underscores between digits, and returns the
+     * index just after the integer digits, which is where digits start
+     * counting towards the fraction.  Returns -1 if the value has any other
+     * form, which leaves it to the JDK's parsers.
+     */
+    private static int scanDecimal(Object source, int start, int end) {
+        int i = start;
+        if (i < end && (charAt(source, i) == '-' || charAt(source, i) == '+')) {
+            ++i;
+        }
+        int integer = i;
+        i = scanDigits(source, i, end);
+        int point = i;
+        int fraction = i;
+        if (i < end && charAt(source, i) == '.') {
+            fraction = scanDigits(source, i + 1, end);
+            if (point == integer && fraction == i + 1) {
+                return -1;
+            }
+            i = fraction;
+        } else if (point == integer) {
+            return -1;
+        }
+        if (i < end && (charAt(source, i) == 'e' || charAt(source, i) == 'E')) {
+            int exponent = i + 1;
+            if (exponent < end && (charAt(source, exponent) == '-' || charAt(source, exponent) == '+')) {
+                ++exponent;
+            }
+            i = scanDigits(source, exponent, end);
+            if (i == exponent) {
+                return -1;
+            }
+        }
+        return i == end ? point : -1;
+    }
+
+    /**
+     * Parses the decimal exponent of a value validated by
+     * {@link #scanDecimal(Object, int, int)}, saturating at a magnitude that
+     * is out of range for any double.
+     */
+    private static int parseExponent(Object source, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (charAt(source, i) == '-' || charAt(source, i) == '+') {
+            negative = charAt(source, i) == '-';
+            ++i;
+        }
+        int exponent = 0;
+        for (; i < end; ++i) {
+            char c = charAt(source, i);
+            if (c != '_' && exponent < 10000) {
+                exponent = exponent * 10 + (c - '0');
+            }
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    /**
+     * Returns the index after a run of digits with single underscores
+     * between them, starting at the index.
+     */
+    private static int scanDigits(Object source, int start, int end) {
+        int i = start;
+        while (i < end) {
+            char c = charAt(source, i);
+            if (c >= '0' && c <= '9') {
+                ++i;
+            } else if (c == '_' && i > start && i + 1 < end && charAt(source, i + 1) >= '0'
+                    && charAt(source, i + 1) <= '9') {
+                ++i;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Copies the range without underscores for the JDK's parsers.
+     */
+    private static String fallback(Object source, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; ++i) {
+            char c = charAt(source, i);
+            if (c != '_') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static NumberFormatException error(Object source, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; ++i) {
+            sb.append(charAt(source, i));
+        }
+        return new NumberFormatException("For input string: \"" + sb + "\"");
+    }
+
+    private ConflexParsers() {
+    }
+}
@@ -0,0 +1,1007 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A plan holds the resolved properties of a single class for a particular
+ * set of injectors.  Plans are immutable once constructed and are shared
+ * by every conflex instance through a process-wide cache.
+ *
+ * The cache is backed by a {@link ClassValue} so that plans are stored
+ * alongside the class they describe and become unreachable together with
+ * it, rather than pinning the class loader through a static map.  Within a
+ * class, plans are keyed by a snapshot of the injector registry because a
+ * custom injector changes how the properties are resolved.  Injectors are
+ * compared by identity, so at most {@link #MAX_PLANS} of the most recently
+ * used registries are kept per class; otherwise registering a new injector
+ * instance, e.g. per request, would add a plan for the life of the class.
+ *
+ * @author jonathan.wonders
+ */
+final class ConflexPlan {
+
+    private static final ClassValue<Plans> PLANS = new ClassValue<Plans>() {
+        @Override
+        protected Plans computeValue(Class<?> type) {
+            return new Plans(type);
+        }
+    };
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /** (ConflexInjector, Object, Field, String)void adapted to (Object, String)void when bound. */
+    private static final MethodHandle INJECT_FIELD;
+    private static final MethodHandle INJECT_METHOD;
+
+    /** (ConflexGeneratedInjector, Object, int, String)void adapted to (Object, String)void when bound. */
+    private static final MethodHandle INJECT_GENERATED;
+    private static final MethodHandle ASSIGN_GENERATED;
+
+    /** (String)boolean and (String, String)String used to substitute defaults for missing values. */
+    private static final MethodHandle IS_NULL;
+    private static final MethodHandle OR_ELSE;
+
+    /** The number of distinct prefixes for which prefixed keys are kept per plan. */
+    static final int MAX_PREFIXES = 64;
+
+    /** The number of distinct injector registries for which plans are kept per class. */
+    static final int MAX_PLANS = 8;
+
+    /** LiveField.holder adapted to (Object)Object when bound. */
+    private static final MethodHandle HOLDER;
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+
+    /** The live handle types and the types of the values they hold. */
+    private static final Map<Class<?>, Class<?>> LIVE = new HashMap<Class<?>, Class<?>>();
+
+    static {
+        LIVE.put(ConflexInt.class, int.class);
+        LIVE.put(ConflexLong.class, long.class);
+        LIVE.put(ConflexDouble.class, double.class);
+        LIVE.put(ConflexValue.class, Object.class);
+        LIVE.put(ConflexStableBoolean.class, boolean.class);
+        LIVE.put(ConflexStableInt.class, int.class);
+        LIVE.put(ConflexStableLong.class, long.class);
+        LIVE.put(ConflexStable.class, Object.class);
+        for (Class<?> primitive : new Class<?>[] { boolean.class, byte.class, char.class, short.class,
+                int.class, long.class, float.class, double.class }) {
+            PRIMITIVES.put(primitive.getName(), primitive);
+        }
+        try {
+            INJECT_GENERATED = LOOKUP.findVirtual(ConflexGeneratedInjector.class, "inject",
+                    MethodType.methodType(void.class, Object.class, int.class, String.class));
+            ASSIGN_GENERATED = LOOKUP.findVirtual(ConflexGeneratedInjector.class, "assign",
+                    MethodType.methodType(void.class, Object.class, int.class, Object.class));
+            IS_NULL = LOOKUP.findStatic(ConflexPlan.class, "isNull",
+                    MethodType.methodType(boolean.class, String.class));
+            OR_ELSE = LOOKUP.findStatic(ConflexPlan.class, "orElse",
+                    MethodType.methodType(String.class, String.class, String.class));
+            INJECT_FIELD = LOOKUP.findVirtual(ConflexInjector.class, "inject",
+                    MethodType.methodType(void.class, Object.class, Field.class, String.class));
+            INJECT_METHOD = LOOKUP.findVirtual(ConflexInjector.class, "inject",
+                    MethodType.methodType(void.class, Object.class, Method.class, String.class));
+            HOLDER = LOOKUP.findVirtual(LiveField.class, "holder",
+                    MethodType.methodType(Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Class<?> clazz;
+    private final List<ResolvedProperty> properties;
+    private final MethodHandle compiled;
+    private final String[] keys;
+    private final ConcurrentMap<String, String[]> prefixedKeys;
+    private volatile PrefixedKeys recentKeys;
+
+    private ConflexPlan(Class<?> clazz, List<ResolvedProperty> properties, boolean compile) {
+        this.clazz = clazz;
+        this.properties = Collections.unmodifiableList(properties);
+        this.compiled = compile ? ConflexCompiler.compile(this.properties) : null;
+        this.keys = new String[properties.size()];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = properties.get(i).p.getKey();
+        }
+        this.prefixedKeys = new ConcurrentHashMap<String, String[]>(4);
+    }
+
+    /**
+     * Returns the plan for the class and injector registry, resolving it
+     * if no equivalent plan has been cached yet.  Registries are compared
+     * by content so instances that register the same injectors share a plan.
+     * The registry must not be modified once it has been passed in.
+     *
+     * @param clazz The class to resolve properties for.
+     * @param injectors The injectors available to the plan.
+     * @return The shared plan.
+     */
+    static ConflexPlan get(Class<?> clazz, Map<Class<?>, ConflexInjector> injectors) {
+        return PLANS.get(clazz).get(injectors);
+    }
+
+    /**
+     * Returns the number of plans cached for the class.
+     */
+    static int getCachedPlanCount(Class<?> clazz) {
+        return PLANS.get(clazz).size();
+    }
+
+    /**
+     * Resolves a new plan without consulting the cache.
+     *
+     * @param clazz The class to resolve properties for.
+     * @param injectors The injectors available to the plan.
+     * @param compile Whether the properties should be compiled into a
+     * single injector, see {@link ConflexCompiler}.
+     * @return The resolved plan.
+     */
+    static ConflexPlan resolve(Class<?> clazz, Map<Class<?>, ConflexInjector> injectors, boolean compile) {
+        List<ResolvedProperty> properties = null;
+        ConflexGeneratedInjector generated = findGenerated(clazz);
+        if (generated != null) {
+            properties = resolveGenerated(clazz, injectors, generated);
+        }
+        if (properties == null) {
+            properties = resolveDeclared(clazz, injectors);
+        }
+        return new ConflexPlan(clazz, properties, compile);
+    }
+
+    private static List<ResolvedProperty> resolveDeclared(Class<?> clazz, Map<Class<?>, ConflexInjector> injectors) {
+        List<ResolvedProperty> properties = new ArrayList<ResolvedProperty>();
+        for (Field field : clazz.getDeclaredFields()) {
+            if (field.isAnnotationPresent(ConflexProperty.class)) {
+                Class<?> type = valueType(field);
+                ConflexInjector injector = findInjector(injectors, type);
+                if (injector != null) {
+                    ConflexProperty property = field.getAnnotation(ConflexProperty.class);
+                    properties.add(bind(PropertyDescriptor.of(field, property), type,
+                            field, null, injector));
+                }
+            }
+        }
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(ConflexProperty.class) && method.getParameterTypes().length == 1) {
+                Class<?> type = method.getParameterTypes()[0];
+                ConflexInjector injector = findInjector(injectors, type);
+                if (injector != null) {
+                    ConflexProperty property = method.getAnnotation(ConflexProperty.class);
+                    properties.add(bind(PropertyDescriptor.of(method, property), type,
+                            null, method, injector));
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Resolves the properties listed by a generated injector.  Properties the
+     * generated class can assign directly are bound to it when the standard
+     * injector is registered for their type, the remaining members are looked
+     * up by name.  Returns null if the generated class is out of date with
+     * respect to the target class.
+     */
+    private static List<ResolvedProperty> resolveGenerated(Class<?> clazz,
+            Map<Class<?>, ConflexInjector> injectors, ConflexGeneratedInjector generated) {
+        List<ResolvedProperty> properties = new ArrayList<ResolvedProperty>();
+        try {
+            PropertyDescriptor[] descriptors = generated.getProperties();
+            for (int i = 0; i < descriptors.length; ++i) {
+                PropertyDescriptor descriptor = descriptors[i];
+                Class<?> type = loadType(clazz, descriptor.getType());
+                Field live = null;
+                if (!descriptor.isMethod() && LIVE.containsKey(type)) {
+                    live = clazz.getDeclaredField(descriptor.getMember());
+                    type = valueType(live);
+                }
+                ConflexInjector injector = findInjector(injectors, type);
+                if (injector == null) {
+                    continue;
+                }
+                if (live != null) {
+                    properties.add(bind(descriptor, type, live, null, injector));
+                } else if (generated.canInject(i) && isStandard(injector)) {
+                    properties.add(bind(descriptor, type, generated, i, injector));
+                } else if (descriptor.isMethod()) {
+                    Method method = clazz.getDeclaredMethod(descriptor.getMember(), type);
+                    properties.add(bind(descriptor, type, null, method, injector));
+                } else {
+                    Field field = clazz.getDeclaredField(descriptor.getMember());
+                    properties.add(bind(descriptor, type, field, null, injector));
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+        return properties;
+    }
+
+    /**
+     * Returns an instance of the generated injector for the class, or null
+     * if the annotation processor did not run for it.
+     */
+    private static ConflexGeneratedInjector findGenerated(Class<?> clazz) {
+        String name = clazz.getName();
+        int dot = name.lastIndexOf('.');
+        String generatedName = name.substring(0, dot + 1)
+                + name.substring(dot + 1).replace('$', '_') + ConflexGeneratedInjector.SUFFIX;
+        try {
+            Class<?> generated = Class.forName(generatedName, true, clazz.getClassLoader());
+            if (ConflexGeneratedInjector.class.isAssignableFrom(generated)) {
+                return (ConflexGeneratedInjector) generated.getDeclaredConstructor().newInstance();
+            }
+        } catch (ReflectiveOperationException e) {
+            // not generated, or not usable
+        } catch (LinkageError e) {
+            // not generated, or not usable
+        }
+        return null;
+    }
+
+    private static Class<?> loadType(Class<?> clazz, String name) throws ClassNotFoundException {
+        Class<?> primitive = PRIMITIVES.get(name);
+        if (primitive != null) {
+            return primitive;
+        }
+        return Class.forName(name, false, clazz.getClassLoader());
+    }
+
+    /**
+     * Returns the type of the values injected into the field, which is the
+     * type held by a live handle or otherwise the field's own type.  Returns
+     * null for a {@link ConflexValue} or {@link ConflexStable} whose type
+     * argument is not a class.
+     */
+    private static Class<?> valueType(Field field) {
+        Class<?> type = field.getType();
+        Class<?> held = LIVE.get(type);
+        if (held == Object.class) {
+            Type generic = field.getGenericType();
+            if (generic instanceof ParameterizedType) {
+                Type argument = ((ParameterizedType) generic).getActualTypeArguments()[0];
+                if (argument instanceof Class) {
+                    return (Class<?>) argument;
+                } else if (argument instanceof ParameterizedType) {
+                    return (Class<?>) ((ParameterizedType) argument).getRawType();
+                }
+            }
+            return null;
+        }
+        return held != null ? held : type;
+    }
+
+    /**
+     * Generated injectors parse values the way the standard injectors do, so
+     * they may only stand in for them and not for custom injectors.
+     */
+    private static boolean isStandard(ConflexInjector injector) {
+        return injector.getClass().getDeclaringClass() == StandardInjectors.class;
+    }
+
+    /**
+     * Returns whether the injector's parser describes how it injects values,
+     * so that properties may be assigned through the parser instead of the
+     * injector's reflective methods.  That is not the case for a subclass of
+     * a standard injector that inherits the parser but overrides
+     * {@code inject} or {@code parseAndInject}, whose overrides must run.
+     */
+    private static boolean usesParser(ConflexInjector injector) {
+        // walk up from the injector's class to the first standard injector
+        for (Class<?> c = injector.getClass(); c != null && c.getDeclaringClass() != StandardInjectors.class;
+                c = c.getSuperclass()) {
+            boolean parser = false;
+            boolean overridden = false;
+            for (Method method : c.getDeclaredMethods()) {
+                String name = method.getName();
+                if (name.equals("parser") && method.getParameterTypes().length == 1) {
+                    parser = true;
+                } else if ((name.equals("inject") || name.equals("parseAndInject"))
+                        && method.getParameterTypes().length == 3) {
+                    overridden = true;
+                }
+            }
+            if (parser) {
+                // a parser declared alongside the injector's methods is its own
+                return true;
+            }
+            if (overridden) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Attempts to find an injector that will produce a value that is assignable to
+     * the field.
+     *
+     * 1. Look for an injector registered for the concrete type.
+     * 2. Check if the type is an enum.
+     * 3. Check if there is an injector registered for a superclass.
+     * 4. Check if there is an injector registered for an interface.
+     *
+     * @param injectors The registry to search.
+     * @param clazz The class to find an injector for.
+     * @return An injector if found, null otherwise.
+     */
+    private static ConflexInjector findInjector(Map<Class<?>, ConflexInjector> injectors, Class<?> clazz) {
+        if (clazz == null) {
+            return null;
+        }
+        ConflexInjector injector = injectors.get(clazz);
+        if (injector == null && clazz.isEnum()) {
+            injector = injectors.get(Enum.class);
+        }
+        return injector;
+    }
+
+    Class<?> getTargetClass() {
+        return clazz;
+    }
+
+    List<ResolvedProperty> getProperties() {
+        return properties;
+    }
+
+    boolean isCompiled() {
+        return compiled != null;
+    }
+
+    /**
+     * Returns the keys of the properties with the prefix prepended, in the
+     * order of {@link #getProperties()}.  The keys are built once per prefix
+     * and their hash codes computed up front, so that looking them up in a
+     * configuration map allocates nothing once the prefix has been seen.
+     *
+     * At most {@link #MAX_PREFIXES} prefixes are kept; beyond that an
+     * arbitrary prefix is evicted to bound the memory held by the plan.
+     * The returned array is shared and must not be modified.
+     *
+     * @param prefix The key prefix, where null is the same as no prefix.
+     * @return The prefixed keys.
+     */
+    String[] getKeys(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return keys;
+        }
+        PrefixedKeys recent = recentKeys;
+        if (recent != null && recent.prefix.equals(prefix)) {
+            return recent.keys;
+        }
+        String[] result = prefixedKeys.get(prefix);
+        if (result == null) {
+            result = new String[keys.length];
+            for (int i = 0; i < keys.length; ++i) {
+                result[i] = prefix + keys[i];
+                result[i].hashCode();
+            }
+            if (prefixedKeys.size() >= MAX_PREFIXES) {
+                Iterator<String> it = prefixedKeys.keySet().iterator();
+                if (it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+            String[] existing = prefixedKeys.putIfAbsent(prefix, result);
+            if (existing != null) {
+                result = existing;
+            }
+            recentKeys = new PrefixedKeys(prefix, result);
+        }
+        return result;
+    }
+
+    /**
+     * Injects the values into the target, one value per property in the
+     * order of {@link #getProperties()}.  A null value injects the property's
+     * default value.
+     *
+     * @param target The object into which the values are to be injected.
+     * @param values The values to inject.
+     * @throws InjectionException
+     */
+    void inject(Object target, String[] values) throws InjectionException {
+        if (compiled == null) {
+            for (int i = 0; i < values.length; ++i) {
+                properties.get(i).inject(target, values[i]);
+            }
+            return;
+        }
+        try {
+            compiled.invokeExact(target, values);
+        } catch (Throwable e) {
+            throw toInjectionException(e);
+        }
+    }
+
+    /**
+     * Injects the values of a typed configuration into the target, assigning
+     * values in their native types where the properties accept them.
+     *
+     * @param target The object into which the values are to be injected.
+     * @param config The values to inject.
+     * @param prefix The prefix prepended to each property key.
+     * @throws InjectionException
+     */
+    void inject(Object target, TypedConfig config, String prefix) throws InjectionException {
+        int[] ids = config.ids(getKeys(prefix));
+        for (int i = 0; i < ids.length; ++i) {
+            ResolvedProperty rp = properties.get(i);
+            int id = ids[i];
+            if (id < 0) {
+                rp.inject(target, null);
+            } else if (!rp.assign(target, config, id)) {
+                rp.inject(target, config.stringValue(id));
+            }
+        }
+    }
+
+    private static InjectionException toInjectionException(Throwable e) {
+        if (e instanceof InjectionException) {
+            return (InjectionException) e;
+        } else if (e instanceof IllegalArgumentException) {
+            return new InjectionException("Unable to parse value.", e);
+        }
+        return new InjectionException("Unanticipated exception during injection.", e);
+    }
+
+    /**
+     * The plans resolved for a single class.  The most recently requested
+     * plan is remembered along with the identity of its registry, which lets
+     * instances sharing a registry (most commonly the default one) skip
+     * hashing and comparing the registry contents.  Other plans are kept in
+     * a small map ordered by use, from which the least recently used plan is
+     * evicted.
+     */
+    private static final class Plans {
+        private final Class<?> clazz;
+        private final Map<Map<Class<?>, ConflexInjector>, ConflexPlan> plans;
+        private volatile Recent recent;
+
+        Plans(Class<?> clazz) {
+            this.clazz = clazz;
+            this.plans = new LinkedHashMap<Map<Class<?>, ConflexInjector>, ConflexPlan>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Map<Class<?>, ConflexInjector>, ConflexPlan> eldest) {
+                    return size() > MAX_PLANS;
+                }
+            };
+        }
+
+        ConflexPlan get(Map<Class<?>, ConflexInjector> injectors) {
+            Recent r = recent;
+            if (r != null && r.injectors == injectors) {
+                return r.plan;
+            }
+            ConflexPlan plan;
+            synchronized (plans) {
+                plan = plans.get(injectors);
+            }
+            if (plan == null) {
+                Map<Class<?>, ConflexInjector> snapshot =
+                        Collections.unmodifiableMap(new HashMap<Class<?>, ConflexInjector>(injectors));
+                // resolved outside the lock, so concurrent misses may resolve the plan twice
+                plan = resolve(clazz, snapshot, true);
+                synchronized (plans) {
+                    ConflexPlan existing = plans.get(snapshot);
+                    if (existing != null) {
+                        plan = existing;
+                    } else {
+                        plans.put(snapshot, plan);
+                    }
+                }
+            }
+            recent = new Recent(injectors, plan);
+            return plan;
+        }
+
+        int size() {
+            synchronized (plans) {
+                return plans.size();
+            }
+        }
+    }
+
+    private static final class PrefixedKeys {
+        final String prefix;
+        final String[] keys;
+
+        PrefixedKeys(String prefix, String[] keys) {
+            this.prefix = prefix;
+            this.keys = keys;
+        }
+    }
+
+    private static final class Recent {
+        final Map<Class<?>, ConflexInjector> injectors;
+        final ConflexPlan plan;
+
+        Recent(Map<Class<?>, ConflexInjector> injectors, ConflexPlan plan) {
+            this.injectors = injectors;
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * Holds data for a single property field of the class that this
+     * plan is capable of injecting configuration into.
+     *
+     * The property is bound to a method handle of type (Object, String)void
+     * when the plan is resolved.  Injectors implementing
+     * {@link ConflexHandleInjector} have their parser combined with an
+     * exactly typed setter for the field or method, everything else is
+     * adapted from the reflective {@link ConflexInjector} methods.  The field
+     * and method are null when the property is injected by a generated
+     * injector.
+     *
+     * Non-empty defaults of the standard types are parsed once, when the
+     * plan is resolved, and assigned as constants whenever the key is absent.
+     *
+     * For a live or stable handle field, such as {@link ConflexInt} or
+     * {@link ConflexStableInt}, the type is the type of the held value and the
+     * setter updates the handle.
+     */
+    static final class ResolvedProperty {
+        final PropertyDescriptor p;
+        final Class<?> type;
+        final Field field;
+        final Method method;
+        final ConflexInjector injector;
+
+        /** (Object, type)void, or null if the injector does not expose a parser. */
+        final MethodHandle setter;
+        /** (String)type, or null if the injector does not expose a parser. */
+        final MethodHandle parser;
+        /** (Object, String)void, parses and injects a present value. */
+        final MethodHandle handle;
+        /** (Object, String)void, injects the value or the default if the value is null. */
+        final MethodHandle handleOrDefault;
+        /** (Object)void, assigns the parsed default, or null if it is parsed on each use. */
+        final MethodHandle defaultHandle;
+        /** (String)Object and (Object, Object)void, or null if parsed values cannot be shared. */
+        private final MethodHandle sharedParser;
+        private final MethodHandle sharedSetter;
+        /**
+         * (Object, long)void, (Object, double)void and (Object, boolean)void
+         * assigning native values of a {@link TypedConfig}, or null if the
+         * type does not accept that kind of value.
+         */
+        private final MethodHandle longSetter;
+        private final MethodHandle doubleSetter;
+        private final MethodHandle booleanSetter;
+        /** The type with primitives boxed, which objects must be instances of. */
+        private final Class<?> boxedType;
+        /** The range of integral values that fit the type. */
+        private final long longMin;
+        private final long longMax;
+
+        ResolvedProperty(PropertyDescriptor p, Class<?> type, Field field, Method method,
+                ConflexInjector injector, MethodHandle setter, MethodHandle parser,
+                MethodHandle handle, MethodHandle defaultHandle) {
+            this.p = p;
+            this.type = type;
+            this.field = field;
+            this.method = method;
+            this.injector = injector;
+            this.setter = setter;
+            this.parser = parser;
+            this.handle = handle;
+            this.defaultHandle = defaultHandle;
+            if (defaultHandle != null) {
+                this.handleOrDefault = MethodHandles.guardWithTest(
+                        MethodHandles.dropArguments(IS_NULL, 0, Object.class),
+                        MethodHandles.dropArguments(defaultHandle, 1, String.class),
+                        handle);
+            } else {
+                this.handleOrDefault = MethodHandles.filterArguments(handle, 1,
+                        MethodHandles.insertArguments(OR_ELSE, 1, p.getDefaultValue()));
+            }
+            if (setter != null && parser != null && isStandard(injector)) {
+                this.sharedParser = parser.asType(MethodType.methodType(Object.class, String.class));
+                this.sharedSetter = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            } else {
+                this.sharedParser = null;
+                this.sharedSetter = null;
+            }
+
+            this.boxedType = MethodType.methodType(type).wrap().returnType();
+            Class<?> primitive = MethodType.methodType(type).unwrap().returnType();
+            MethodHandle longSetter = null;
+            MethodHandle doubleSetter = null;
+            MethodHandle booleanSetter = null;
+            long longMin = Long.MIN_VALUE;
+            long longMax = Long.MAX_VALUE;
+            if (sharedSetter != null && primitive.isPrimitive()) {
+                MethodHandle unboxed = setter.asType(MethodType.methodType(void.class, Object.class, primitive));
+                if (primitive == boolean.class) {
+                    booleanSetter = unboxed;
+                } else if (primitive == double.class || primitive == float.class) {
+                    doubleSetter = MethodHandles.explicitCastArguments(unboxed,
+                            MethodType.methodType(void.class, Object.class, double.class));
+                    longSetter = MethodHandles.explicitCastArguments(unboxed,
+                            MethodType.methodType(void.class, Object.class, long.class));
+                } else if (primitive != char.class) {
+                    longSetter = MethodHandles.explicitCastArguments(unboxed,
+                            MethodType.methodType(void.class, Object.class, long.class));
+                    if (primitive == int.class) {
+                        longMin = Integer.MIN_VALUE;
+                        longMax = Integer.MAX_VALUE;
+                    } else if (primitive == short.class) {
+                        longMin = Short.MIN_VALUE;
+                        longMax = Short.MAX_VALUE;
+                    } else if (primitive == byte.class) {
+                        longMin = Byte.MIN_VALUE;
+                        longMax = Byte.MAX_VALUE;
+                    }
+                }
+            }
+            this.longSetter = longSetter;
+            this.doubleSetter = doubleSetter;
+            this.booleanSetter = booleanSetter;
+            this.longMin = longMin;
+            this.longMax = longMax;
+        }
+
+        /**
+         * @return The type of the field or the setter's parameter.
+         */
+        Class<?> getType() {
+            return type;
+        }
+
+        /**
+         * Returns the annotated field, looking it up by name if the property
+         * was resolved from a generated injector.
+         *
+         * @param clazz The class declaring the property.
+         * @return The field, or null if the property is a setter method.
+         */
+        Field getField(Class<?> clazz) throws NoSuchFieldException {
+            if (field != null || p.isMethod()) {
+                return field;
+            }
+            Field declared = clazz.getDeclaredField(p.getMember());
+            declared.setAccessible(true);
+            return declared;
+        }
+
+        /**
+         * Parses the value and injects it into the target, injecting the
+         * default value instead if the value is null.
+         *
+         * @param target The object into which the value is to be injected.
+         * @param value The value to inject, or null if the key is absent.
+         * @throws InjectionException
+         */
+        void inject(Object target, String value) throws InjectionException {
+            try {
+                handleOrDefault.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw toInjectionException(e);
+            }
+        }
+
+        /**
+         * Assigns the value with the id in its native type if the property
+         * accepts it, see {@link TypedConfig}.
+         *
+         * @return False if the value must be injected from its string form.
+         */
+        boolean assign(Object target, TypedConfig config, int id) throws InjectionException {
+            try {
+                switch (config.kind(id)) {
+                case TypedConfig.LONG:
+                    long value = config.longValue(id);
+                    if (longSetter == null || value < longMin || value > longMax) {
+                        return false;
+                    }
+                    longSetter.invokeExact(target, value);
+                    return true;
+                case TypedConfig.DOUBLE:
+                    if (doubleSetter == null) {
+                        return false;
+                    }
+                    doubleSetter.invokeExact(target, config.doubleValue(id));
+                    return true;
+                case TypedConfig.BOOLEAN:
+                    if (booleanSetter == null) {
+                        return false;
+                    }
+                    booleanSetter.invokeExact(target, config.booleanValue(id));
+                    return true;
+                case TypedConfig.OBJECT:
+                    Object object = config.objectValue(id);
+                    if (sharedSetter == null || !boxedType.isInstance(object)) {
+                        return false;
+                    }
+                    sharedSetter.invokeExact(target, object);
+                    return true;
+                default:
+                    return false;
+                }
+            } catch (Throwable e) {
+                throw toInjectionException(e);
+            }
+        }
+
+        /**
+         * Returns whether values parsed by {@link #parse(String)} are
+         * immutable and may be assigned to any number of targets, which is
+         * the case for properties bound to the standard injectors.
+         */
+        boolean isShareable() {
+            return sharedParser != null;
+        }
+
+        /**
+         * Parses a value for {@link #assign(Object, Object)}.
+         *
+         * @throws InjectionException if the value cannot be parsed.
+         * @throws IllegalStateException if the property is not shareable.
+         */
+        Object parse(String value) throws InjectionException {
+            if (sharedParser == null) {
+                throw new IllegalStateException("Property " + p.getKey() + " is not shareable.");
+            }
+            try {
+                return (Object) sharedParser.invokeExact(value);
+            } catch (Throwable e) {
+                throw toInjectionException(e);
+            }
+        }
+
+        /**
+         * Assigns a value returned by {@link #parse(String)} to the target.
+         *
+         * @throws IllegalStateException if the property is not shareable.
+         */
+        void assign(Object target, Object value) throws InjectionException {
+            if (sharedSetter == null) {
+                throw new IllegalStateException("Property " + p.getKey() + " is not shareable.");
+            }
+            try {
+                sharedSetter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw toInjectionException(e);
+            }
+        }
+    }
+
+    /**
+     * Binds a property to its field or setter method.
+     */
+    private static ResolvedProperty bind(PropertyDescriptor descriptor, Class<?> type,
+            Field field, Method method, ConflexInjector injector) throws InjectionException {
+        MethodHandle parser = parser(injector, type);
+        if (field != null && LIVE.containsKey(field.getType())) {
+            return bindLive(descriptor, type, field, injector, parser);
+        }
+        MethodHandle setter = null;
+        if (parser != null) {
+            try {
+                setter = field != null ? setter(field) : setter(method);
+            } catch (IllegalAccessException e) {
+                // fall back to the injector's reflective methods
+            } catch (SecurityException e) {
+                // fall back to the injector's reflective methods
+            }
+        }
+        if (setter == null) {
+            MethodHandle adapter = field != null ? INJECT_FIELD : INJECT_METHOD;
+            MethodHandle handle = MethodHandles.insertArguments(adapter, 2, field != null ? field : method)
+                    .bindTo(injector);
+            return new ResolvedProperty(descriptor, type, field, method, injector, null, null, handle, null);
+        }
+        MethodHandle handle = MethodHandles.filterArguments(setter, 1, parser);
+        return new ResolvedProperty(descriptor, type, field, method, injector, setter, parser, handle,
+                bindDefault(descriptor, injector, setter, parser));
+    }
+
+    /**
+     * Binds a live handle field, whose setter updates the handle held by the
+     * field rather than the field itself.
+     */
+    private static ResolvedProperty bindLive(PropertyDescriptor descriptor, Class<?> type,
+            Field field, ConflexInjector injector, MethodHandle parser) throws InjectionException {
+        if (parser == null) {
+            throw new InjectionException("The injector for " + type.getName() + " does not provide a parser,"
+                    + " which the live property " + descriptor.getKey() + " in " + descriptor.getOwner()
+                    + " requires.");
+        }
+        MethodHandle setter;
+        try {
+            setter = liveSetter(field, type);
+        } catch (ReflectiveOperationException e) {
+            throw new InjectionException("Unable to access the live property " + descriptor.getKey()
+                    + " in " + descriptor.getOwner() + ".", e);
+        }
+        MethodHandle handle = MethodHandles.filterArguments(setter, 1, parser);
+        return new ResolvedProperty(descriptor, type, field, null, injector, setter, parser, handle,
+                bindDefault(descriptor, injector, setter, parser));
+    }
+
+    /**
+     * Binds a property to the generated injector that assigns it.
+     */
+    private static ResolvedProperty bind(PropertyDescriptor descriptor, Class<?> type,
+            ConflexGeneratedInjector generated, int index, ConflexInjector injector) throws InjectionException {
+        MethodHandle handle = MethodHandles.insertArguments(INJECT_GENERATED, 2, index).bindTo(generated);
+        MethodHandle parser = parser(injector, type);
+        MethodHandle setter = null;
+        MethodHandle defaultHandle = null;
+        if (parser != null) {
+            setter = MethodHandles.insertArguments(ASSIGN_GENERATED, 2, index).bindTo(generated)
+                    .asType(MethodType.methodType(void.class, Object.class, type));
+            defaultHandle = bindDefault(descriptor, injector, setter, parser);
+        }
+        return new ResolvedProperty(descriptor, type, null, null, injector, setter, parser, handle, defaultHandle);
+    }
+
+    private static MethodHandle parser(ConflexInjector injector, Class<?> type) {
+        if (injector instanceof ConflexHandleInjector && usesParser(injector)) {
+            MethodHandle parser = ((ConflexHandleInjector) injector).parser(type);
+            if (parser != null) {
+                return parser.asType(MethodType.methodType(type, String.class));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the default value once and returns a handle of type (Object)void
+     * that assigns it.  Only the standard injectors produce immutable values
+     * that are safe to share between targets, and an empty default usually
+     * marks a required property, so other defaults are parsed on each use.
+     * Addresses expire, so their defaults are left to the injector's cache.
+     *
+     * @throws InjectionException if the default value cannot be parsed.
+     */
+    private static MethodHandle bindDefault(PropertyDescriptor descriptor, ConflexInjector injector,
+            MethodHandle setter, MethodHandle parser) throws InjectionException {
+        String defaultValue = descriptor.getDefaultValue();
+        if (defaultValue.isEmpty() || !isStandard(injector)
+                || injector instanceof StandardInjectors.InetAddressInjector) {
+            return null;
+        }
+        Object value;
+        try {
+            value = parser.invoke(defaultValue);
+        } catch (Throwable e) {
+            throw new InjectionException("Unable to parse the default value \"" + defaultValue
+                    + "\" of property " + descriptor.getKey() + " in " + descriptor.getOwner() + ".", e);
+        }
+        return MethodHandles.insertArguments(setter, 1, value);
+    }
+
+    @SuppressWarnings("unused")
+    private static boolean isNull(String value) {
+        return value == null;
+    }
+
+    @SuppressWarnings("unused")
+    private static String orElse(String value, String defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+    /**
+     * Returns a setter of type (Object, type)void for the field, where type
+     * is the field's own type so that primitives are never boxed.
+     */
+    private static MethodHandle setter(Field field) throws IllegalAccessException {
+        field.setAccessible(true);
+        MethodHandle setter = LOOKUP.unreflectSetter(field);
+        if (Modifier.isStatic(field.getModifiers())) {
+            setter = MethodHandles.dropArguments(setter, 0, Object.class);
+        }
+        return setter.asType(MethodType.methodType(void.class, Object.class, field.getType()));
+    }
+
+    /**
+     * Returns a handle of type (Object, type)void that sets the value of the
+     * live handle held by the field, assigning a new handle to the field
+     * first if it is null.
+     */
+    private static MethodHandle liveSetter(Field field, Class<?> type) throws ReflectiveOperationException {
+        field.setAccessible(true);
+        boolean isStatic = Modifier.isStatic(field.getModifiers());
+        MethodHandle getter = LOOKUP.unreflectGetter(field);
+        MethodHandle assign = null;
+        if (!Modifier.isFinal(field.getModifiers())) {
+            assign = LOOKUP.unreflectSetter(field);
+            if (isStatic) {
+                assign = MethodHandles.dropArguments(assign, 0, Object.class);
+            }
+            assign = assign.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+        if (isStatic) {
+            getter = MethodHandles.dropArguments(getter, 0, Object.class);
+        }
+        getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+        Class<?> handleType = field.getType();
+        MethodHandle holder = HOLDER.bindTo(new LiveField(field, getter, assign))
+                .asType(MethodType.methodType(handleType, Object.class));
+        Class<?> held = LIVE.get(handleType);
+        MethodHandle set = LOOKUP.findVirtual(handleType, "set", MethodType.methodType(void.class, held))
+                .asType(MethodType.methodType(void.class, handleType, type));
+        return MethodHandles.filterArguments(set, 0, holder);
+    }
+
+    /**
+     * Returns the live handle held by a field, creating it on first use.
+     */
+    private static final class LiveField {
+        private final Field field;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        LiveField(Field field, MethodHandle getter, MethodHandle setter) {
+            this.field = field;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @SuppressWarnings("unused")
+        Object holder(Object target) throws Throwable {
+            Object holder = (Object) getter.invokeExact(target);
+            if (holder != null) {
+                return holder;
+            }
+            synchronized (this) {
+                holder = (Object) getter.invokeExact(target);
+                if (holder == null) {
+                    if (setter == null) {
+                        throw new InjectionException("The final live property " + field.getName() + " in "
+                                + field.getDeclaringClass().getName() + " is null.");
+                    }
+                    holder = field.getType().getDeclaredConstructor().newInstance();
+                    setter.invokeExact(target, holder);
+                }
+            }
+            return holder;
+        }
+    }
+
+    /**
+     * Returns a handle of type (Object, type)void for the setter method that
+     * discards any value it returns.
+     */
+    private static MethodHandle setter(Method method) throws IllegalAccessException {
+        method.setAccessible(true);
+        MethodHandle setter = LOOKUP.unreflect(method);
+        if (Modifier.isStatic(method.getModifiers())) {
+            setter = MethodHandles.dropArguments(setter, 0, Object.class);
+        }
+        return setter.asType(MethodType.methodType(void.class, Object.class, method.getParameterTypes()[0]));
+    }
+}
@@ -0,0 +1,30 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+/**
+ * Chooses the key prefix for each target of a batch injection, e.g. from a
+ * partition or tenant identifier held by the target.
+ *
+ * @param <T> The type of the targets.
+ * @author jonathan.wonders
+ */
+public interface ConflexPrefixFunction<T> {
+
+    /**
+     * @param target The object into which configuration is about to be injected.
+     * @return The prefix prepended to each property key for the target.
+     */
+    String prefixOf(T target);
+}
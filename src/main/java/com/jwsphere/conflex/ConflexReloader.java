@@ -0,0 +1,310 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a properties file and re-injects the properties whose keys changed
+ * into the registered targets, so that live objects pick up edits without a
+ * restart.
+ *
+ * Editors and deployment tools often touch a file several times while
+ * saving it, so the reloader waits until no event has been seen for the
+ * debounce interval before reading the file.  It then compares the new
+ * values with the previous ones, and only the properties whose prefixed keys
+ * were added, removed or modified are injected again, found through a
+ * {@link ConflexKeyIndex} so that the cost of a reload is proportional to
+ * the number of changed properties.  A removed key injects the property's
+ * default value.  Targets are held weakly and stop being reloaded once they
+ * are garbage collected.
+ *
+ * Re-injection happens on the watcher thread, while other threads may be
+ * reading the targets, so reloadable properties should be volatile or
+ * otherwise safely published by their setters.
+ *
+ * The reloader is also a {@link ConfigSource} over the most recently loaded
+ * values.
+ *
+ * @author jonathan.wonders
+ */
+public final class ConflexReloader implements ConfigSource, Closeable {
+
+    private final Path file;
+    private final long debounceNanos;
+    private final ConflexKeyIndex index = new ConflexKeyIndex();
+    private final List<ConfigPublisher> publishers = new CopyOnWriteArrayList<ConfigPublisher>();
+
+    private volatile Map<String, String> values;
+    private volatile Exception lastFailure;
+    private volatile long reloads;
+
+    private WatchService watcher;
+    private Thread thread;
+
+    /**
+     * Creates a reloader for the file that debounces events for 100ms.
+     *
+     * @param file The properties file.
+     * @throws IOException if the file cannot be read.
+     */
+    public ConflexReloader(Path file) throws IOException {
+        this(file, 100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a reloader for the file and loads its current values.
+     *
+     * @param file The properties file.
+     * @param debounce How long the file must be left alone before it is read.
+     * @param unit The unit of the debounce interval.
+     * @throws IOException if the file cannot be read.
+     */
+    public ConflexReloader(Path file, long debounce, TimeUnit unit) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.debounceNanos = unit.toNanos(debounce);
+        this.values = load(this.file);
+    }
+
+    /**
+     * Injects the current values into the target using the conflex
+     * instance's prefix and re-injects changed properties on each reload.
+     *
+     * @param conflex The conflex instance for the target's class.
+     * @param target The object to keep up to date.
+     */
+    public void register(Conflex conflex, Object target) throws InjectionException {
+        register(conflex, target, conflex.getPrefix());
+    }
+
+    /**
+     * Injects the current values into the target using the prefix and
+     * re-injects changed properties on each reload.
+     *
+     * @param conflex The conflex instance for the target's class.
+     * @param target The object to keep up to date.
+     * @param prefix The prefix prepended to each property key.
+     */
+    public synchronized void register(Conflex conflex, Object target, String prefix) throws InjectionException {
+        conflex.inject(target, this, prefix);
+        index.register(conflex, target, prefix);
+    }
+
+    /**
+     * Stops re-injecting the target.
+     *
+     * @return True if the target was registered.
+     */
+    public boolean unregister(Object target) {
+        return index.unregister(target);
+    }
+
+    /**
+     * Publishes the current values and publishes again after each reload
+     * that changes any value, so that the publisher's snapshots follow the
+     * file.
+     *
+     * @param publisher The publisher to keep up to date.
+     */
+    public synchronized void publishTo(ConfigPublisher publisher) throws InjectionException {
+        publisher.publish(this);
+        publishers.add(publisher);
+    }
+
+    /**
+     * Returns the index of the registered targets by key, e.g. to monitor
+     * its size.
+     */
+    public ConflexKeyIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Starts watching the file on a daemon thread.
+     *
+     * @throws IOException if the file's directory cannot be watched.
+     */
+    public synchronized void start() throws IOException {
+        if (watcher != null) {
+            throw new IllegalStateException("The reloader has already been started.");
+        }
+        watcher = file.getFileSystem().newWatchService();
+        file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "conflex-reloader-" + file.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Reads the file and re-injects the properties whose keys changed since
+     * the previous load.  This is called by the watcher thread but may also
+     * be called directly, e.g. when the reloader has not been started.
+     *
+     * @return The keys whose values changed.
+     * @throws IOException if the file cannot be read, in which case the
+     * previous values are kept.
+     * @throws InjectionException if a changed value cannot be injected or
+     * published.  The new values are kept, and the remaining properties are
+     * still injected.
+     */
+    public synchronized Set<String> reload() throws IOException, InjectionException {
+        Map<String, String> previous = values;
+        Map<String, String> current = load(file);
+        Set<String> changed = diff(previous, current);
+        values = current;
+        ++reloads;
+        if (changed.isEmpty()) {
+            return changed;
+        }
+        InjectionException failure = null;
+        for (ConfigPublisher publisher : publishers) {
+            try {
+                publisher.publish(this);
+            } catch (InjectionException e) {
+                failure = e;
+            }
+        }
+        index.inject(changed, this);
+        if (failure != null) {
+            throw failure;
+        }
+        return changed;
+    }
+
+    @Override
+    public String get(String key) {
+        return values.get(key);
+    }
+
+    /**
+     * @return The number of times the file has been loaded since the reloader was created.
+     */
+    public long getReloadCount() {
+        return reloads;
+    }
+
+    /**
+     * @return The exception of the most recent reload on the watcher thread
+     * that failed, or null if none has failed.
+     */
+    public Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                boolean relevant = drain(watcher.take());
+                WatchKey key;
+                while ((key = watcher.poll(debounceNanos, TimeUnit.NANOSECONDS)) != null) {
+                    relevant |= drain(key);
+                }
+                if (relevant && Files.exists(file)) {
+                    try {
+                        reload();
+                    } catch (IOException e) {
+                        lastFailure = e;
+                    } catch (RuntimeException e) {
+                        // an InjectionException, or a malformed file rejected by Properties.load
+                        lastFailure = e;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Consumes the events of the key and returns whether any of them may
+     * concern the watched file.
+     */
+    private boolean drain(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private static Map<String, String> load(Path file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = Files.newInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        Map<String, String> values = new HashMap<String, String>();
+        for (String key : properties.stringPropertyNames()) {
+            values.put(key, properties.getProperty(key));
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    private static Set<String> diff(Map<String, String> previous, Map<String, String> current) {
+        Set<String> changed = new HashSet<String>();
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,87 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+
+/**
+ * A stable long property, for values that are read constantly but change
+ * rarely, if ever.  It is bound like a {@link ConflexInt} and updated in
+ * place by later injections.
+ *
+ * The value is held as the constant target of a {@link MutableCallSite}.
+ * Code that invokes {@link #getter()} from a static final field reads the
+ * value as a constant once compiled, and is deoptimized by the JVM only
+ * when an injection changes the value.
+ *
+ * @see ConflexStable
+ * @author jonathan.wonders
+ */
+public final class ConflexStableLong {
+
+    private final MutableCallSite site;
+    private final MethodHandle getter;
+    private volatile long value;
+
+    public ConflexStableLong() {
+        this(0L);
+    }
+
+    /**
+     * @param value The value held until the handle is first injected.
+     */
+    public ConflexStableLong(long value) {
+        this.site = new MutableCallSite(MethodHandles.constant(long.class, value));
+        this.getter = site.dynamicInvoker();
+        this.value = value;
+    }
+
+    /**
+     * Returns the current value with a volatile read.  Invoking
+     * {@link #getter()} held in a static final field is cheaper, since the
+     * JIT folds the value.
+     *
+     * @return The current value.
+     */
+    public long get() {
+        return value;
+    }
+
+    /**
+     * Returns a handle of type ()long that returns the current value.
+     */
+    public MethodHandle getter() {
+        return getter;
+    }
+
+    /**
+     * Changes the value, invalidating any code compiled with the previous
+     * value as a constant.  Setters are serialized so that the value and
+     * the call site target always agree.
+     */
+    synchronized void set(long value) {
+        if (value != this.value) {
+            this.value = value;
+            site.setTarget(MethodHandles.constant(long.class, value));
+            MutableCallSite.syncAll(new MutableCallSite[] { site });
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(get());
+    }
+}
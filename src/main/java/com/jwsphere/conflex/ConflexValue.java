@@ -0,0 +1,66 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+/**
+ * A live property of any type handled by an injector.  A field of this type
+ * annotated with {@link ConflexProperty} is bound to the handle once, and
+ * each later injection, e.g. by a {@link ConflexReloader}, swaps the value
+ * held by the handle instead of replacing the field.  Reading the value is a
+ * single volatile read, so code holding the handle always sees the most
+ * recently injected value without running the injection again.
+ *
+ * The value is parsed by the injector registered for the type argument of
+ * the field, e.g. {@code ConflexValue<URI>} uses the injector for URI, which
+ * must be a {@link ConflexHandleInjector}.  Primitive values can be held
+ * without boxing by {@link ConflexInt}, {@link ConflexLong} and
+ * {@link ConflexDouble}.
+ *
+ * If the field is null when it is first injected, conflex assigns a new
+ * handle, otherwise it updates the handle the field already holds, which
+ * allows the field to be final.
+ *
+ * @param <T> The type of the value.
+ * @author jonathan.wonders
+ */
+public final class ConflexValue<T> {
+
+    private volatile T value;
+
+    public ConflexValue() {
+    }
+
+    /**
+     * @param value The value held until the handle is first injected.
+     */
+    public ConflexValue(T value) {
+        this.value = value;
+    }
+
+    /**
+     * @return The current value.
+     */
+    public T get() {
+        return value;
+    }
+
+    void set(T value) {
+        this.value = value;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,240 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A {@link ConfigSource} over Hadoop style configuration files, as written by
+ * {@link com.jwsphere.conflex.tools.ConflexHadoopConfigurationFileGenerator}:
+ *
+ * <pre>
+ * &lt;configuration&gt;
+ *   &lt;property&gt;
+ *     &lt;name&gt;key&lt;/name&gt;
+ *     &lt;value&gt;value&lt;/value&gt;
+ *     &lt;final&gt;true&lt;/final&gt;
+ *     &lt;description&gt;What the property does.&lt;/description&gt;
+ *   &lt;/property&gt;
+ * &lt;/configuration&gt;
+ * </pre>
+ *
+ * Files are read with a streaming StAX parser and only the properties that
+ * are retained are kept, so when the keys of the plans that will be injected
+ * are supplied with {@link Builder#retain(Conflex)}, memory use is
+ * proportional to those keys rather than to the size of the files.
+ *
+ * As with Hadoop's Configuration, resources are read in order, a later value
+ * of a key replaces an earlier one unless the earlier property was marked
+ * final, names are trimmed while values are not, and the name, value and
+ * final flag may also be given as attributes of the property element.
+ * Includes and variable expansion are not supported.
+ *
+ * @author jonathan.wonders
+ */
+public final class HadoopConfigurationSource implements ConfigSource {
+
+    private final Map<String, Property> properties;
+
+    private HadoopConfigurationSource(Map<String, Property> properties) {
+        this.properties = properties;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String get(String key) {
+        Property property = properties.get(key);
+        return property == null ? null : property.value;
+    }
+
+    /**
+     * Returns whether the property was marked final.
+     */
+    public boolean isFinal(String key) {
+        Property property = properties.get(key);
+        return property != null && property.isFinal;
+    }
+
+    /**
+     * Returns the description of the property, or null if it has none.
+     */
+    public String getDescription(String key) {
+        Property property = properties.get(key);
+        return property == null ? null : property.description;
+    }
+
+    /**
+     * Returns the number of properties that were retained.
+     */
+    public int size() {
+        return properties.size();
+    }
+
+    private static final class Property {
+        final String value;
+        final String description;
+        final boolean isFinal;
+
+        Property(String value, String description, boolean isFinal) {
+            this.value = value;
+            this.description = description;
+            this.isFinal = isFinal;
+        }
+    }
+
+    public static final class Builder {
+        private final Map<String, Property> properties = new HashMap<String, Property>();
+        private Set<String> retained;
+        private XMLInputFactory factory;
+
+        private Builder() {
+        }
+
+        /**
+         * Retains the keys that the conflex instance reads, with its prefix.
+         * Until a key is retained, every property is.
+         */
+        public Builder retain(Conflex conflex) throws InjectionException {
+            return retain(conflex, conflex.getPrefix());
+        }
+
+        /**
+         * Retains the keys that the conflex instance reads with the prefix.
+         */
+        public Builder retain(Conflex conflex, String prefix) throws InjectionException {
+            return retain(Arrays.asList(conflex.resolve().getKeys(prefix)));
+        }
+
+        /**
+         * Retains the keys.  Properties that were read before the keys were
+         * retained are kept.
+         */
+        public Builder retain(Collection<String> keys) {
+            if (retained == null) {
+                retained = new HashSet<String>();
+            }
+            retained.addAll(keys);
+            return this;
+        }
+
+        /**
+         * Reads the properties of the resource.  The lifecycle of the stream
+         * is managed by the caller.
+         *
+         * @param in The XML content.
+         * @throws IOException if the stream cannot be read or is not well formed.
+         */
+        public Builder add(InputStream in) throws IOException {
+            try {
+                XMLStreamReader reader = factory().createXMLStreamReader(in);
+                try {
+                    read(reader);
+                } finally {
+                    reader.close();
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException("The configuration could not be read.", e);
+            }
+            return this;
+        }
+
+        public HadoopConfigurationSource build() {
+            return new HadoopConfigurationSource(new HashMap<String, Property>(properties));
+        }
+
+        private XMLInputFactory factory() {
+            if (factory == null) {
+                factory = XMLInputFactory.newInstance();
+                factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+                factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+                factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            }
+            return factory;
+        }
+
+        private void read(XMLStreamReader reader) throws XMLStreamException {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && "property".equals(reader.getLocalName())) {
+                    readProperty(reader);
+                }
+            }
+        }
+
+        /**
+         * Reads the property at which the reader is positioned, leaving the
+         * reader at its end element.  The text of an element is only kept
+         * while the property may be retained.
+         */
+        private void readProperty(XMLStreamReader reader) throws XMLStreamException {
+            String name = trim(reader.getAttributeValue(null, "name"));
+            String value = reader.getAttributeValue(null, "value");
+            String description = null;
+            boolean isFinal = "true".equals(reader.getAttributeValue(null, "final"));
+
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    --depth;
+                } else if (event == XMLStreamConstants.START_ELEMENT) {
+                    String element = reader.getLocalName();
+                    boolean wanted = name == null || isRetained(name);
+                    if ("name".equals(element)) {
+                        name = trim(reader.getElementText());
+                    } else if ("value".equals(element) && wanted) {
+                        value = reader.getElementText();
+                    } else if ("description".equals(element) && wanted) {
+                        description = reader.getElementText();
+                    } else if ("final".equals(element)) {
+                        isFinal = "true".equals(reader.getElementText().trim());
+                    } else {
+                        ++depth;
+                    }
+                }
+            }
+
+            if (name == null || value == null || !isRetained(name)) {
+                return;
+            }
+            Property previous = properties.get(name);
+            if (previous == null || !previous.isFinal) {
+                properties.put(name, new Property(value, description, isFinal));
+            }
+        }
+
+        private boolean isRetained(String name) {
+            return retained == null || retained.contains(name);
+        }
+
+        private static String trim(String text) {
+            return text == null ? null : text.trim();
+        }
+    }
+}
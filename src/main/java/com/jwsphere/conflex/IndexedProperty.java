@@ -0,0 +1,86 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * A {@link ConflexProperty} read from a {@link ConflexIndex} rather than
+ * from a member.  It is equal to, and has the same hash code as, the
+ * annotation it was indexed from, so properties from the index and from
+ * reflection can be mixed in the same set.
+ *
+ * @author jonathan.wonders
+ */
+final class IndexedProperty implements ConflexProperty {
+
+    private final PropertyDescriptor descriptor;
+
+    IndexedProperty(PropertyDescriptor descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    @Override
+    public Class<? extends Annotation> annotationType() {
+        return ConflexProperty.class;
+    }
+
+    @Override
+    public String key() {
+        return descriptor.getKey();
+    }
+
+    @Override
+    public String description() {
+        return descriptor.getDescription();
+    }
+
+    @Override
+    public String defaultValue() {
+        return descriptor.getDefaultValue();
+    }
+
+    /**
+     * Compares members as specified by {@link Annotation#equals(Object)}.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ConflexProperty)) {
+            return false;
+        }
+        ConflexProperty other = (ConflexProperty) obj;
+        return key().equals(other.key())
+                && description().equals(other.description())
+                && defaultValue().equals(other.defaultValue());
+    }
+
+    /**
+     * Hashes members as specified by {@link Annotation#hashCode()}.
+     */
+    @Override
+    public int hashCode() {
+        return (127 * "key".hashCode() ^ key().hashCode())
+                + (127 * "description".hashCode() ^ description().hashCode())
+                + (127 * "defaultValue".hashCode() ^ defaultValue().hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return "@" + ConflexProperty.class.getName() + "(key=" + key() + ", description=" + description()
+                + ", defaultValue=" + defaultValue() + ")";
+    }
+}
@@ -0,0 +1,530 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link ConfigSource} over a .properties file that is mapped into memory
+ * rather than loaded into a {@link java.util.Properties}.
+ *
+ * Opening the file makes a single pass over its bytes that records, for each
+ * entry, the offsets of the key and of the value along with the hash of the
+ * key, and builds an open addressing table of those entries.  No strings are
+ * created at that point.  A key is compared against the mapped bytes when it
+ * is looked up and its value is decoded on first lookup only, so the cost of
+ * injecting a plan is proportional to the keys the plan reads rather than to
+ * the size of the file.
+ *
+ * The format is the one read by {@link java.util.Properties#load(java.io.InputStream)}:
+ * the file is ISO 8859-1, lines starting with {@code #} or {@code !} are
+ * comments, keys are separated from values by {@code =}, {@code :} or
+ * whitespace, a line ending in a backslash continues on the next line, and
+ * {@code \t}, {@code \n}, {@code \r}, {@code \f} and {@code \}{@code uXXXX}
+ * escapes are decoded.  When a key appears more than once the last value
+ * wins.  This is the format written by
+ * {@link com.jwsphere.conflex.tools.ConflexPropertiesFileGenerator}.
+ *
+ * The file should not be modified while it is mapped; a file that changes is
+ * better read by a {@link ConflexReloader}.
+ *
+ * @author jonathan.wonders
+ */
+public final class MappedProperties implements ConfigSource {
+
+    /** Marks a key that ended at a separator or whitespace rather than the end of the line. */
+    private static final int END = -1;
+
+    private final ByteBuffer buffer;
+
+    /** The offset of the key and of the value of each entry, interleaved. */
+    private final int[] offsets;
+
+    /** The hash of the key of each entry, as computed by {@link String#hashCode()}. */
+    private final int[] hashes;
+
+    /** Open addressing table of entry index plus one, zero being an empty slot. */
+    private final int[] table;
+
+    private final String[] values;
+    private final int size;
+
+    /**
+     * Maps and indexes the file.
+     *
+     * @param file The .properties file.
+     * @throws IOException if the file cannot be read or is larger than 2GB.
+     * @throws IllegalArgumentException if the file contains a malformed
+     * {@code \}{@code uXXXX} escape.
+     */
+    public MappedProperties(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("The file " + file + " is too large to be mapped.");
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            channel.close();
+        }
+
+        Entries entries = index(buffer);
+        this.offsets = Arrays.copyOf(entries.offsets, 2 * entries.count);
+        this.hashes = Arrays.copyOf(entries.hashes, entries.count);
+
+        int capacity = Integer.highestOneBit(Math.max(entries.count, 1) * 2 - 1) << 1;
+        this.table = new int[capacity];
+        this.values = new String[entries.count];
+        int distinct = 0;
+        for (int i = 0; i < entries.count; ++i) {
+            int slot = spread(hashes[i]) & (capacity - 1);
+            while (true) {
+                int existing = table[slot] - 1;
+                if (existing < 0) {
+                    table[slot] = i + 1;
+                    ++distinct;
+                    break;
+                }
+                if (hashes[existing] == hashes[i] && sameKey(offsets[2 * existing], offsets[2 * i])) {
+                    table[slot] = i + 1;
+                    break;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+        }
+        this.size = distinct;
+    }
+
+    /**
+     * Returns the value of the key, decoding it on first lookup.
+     */
+    @Override
+    public String get(String key) {
+        int entry = find(key);
+        if (entry < 0) {
+            return null;
+        }
+        String value = values[entry];
+        if (value == null) {
+            // racing threads decode equal strings
+            value = decodeValue(offsets[2 * entry + 1]);
+            values[entry] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of the key parsed as an int by
+     * {@link ConflexParsers#parseInt(ByteBuffer, int, int)}.  A value without
+     * escapes is parsed from the mapped bytes without creating a String.
+     *
+     * @param key The key.
+     * @param defaultValue The value returned when the file has no such key.
+     * @throws NumberFormatException if the value is not an int.
+     */
+    public int getInt(String key, int defaultValue) {
+        int entry = find(key);
+        if (entry < 0) {
+            return defaultValue;
+        }
+        int offset = offsets[2 * entry + 1];
+        int end = plainValueEnd(offset);
+        return end < 0 ? ConflexParsers.parseInt(decoded(entry)) : ConflexParsers.parseInt(buffer, offset, end);
+    }
+
+    /**
+     * Returns the value of the key parsed as a long, as {@link #getInt(String, int)} does.
+     */
+    public long getLong(String key, long defaultValue) {
+        int entry = find(key);
+        if (entry < 0) {
+            return defaultValue;
+        }
+        int offset = offsets[2 * entry + 1];
+        int end = plainValueEnd(offset);
+        return end < 0 ? ConflexParsers.parseLong(decoded(entry)) : ConflexParsers.parseLong(buffer, offset, end);
+    }
+
+    /**
+     * Returns the value of the key parsed as a float, as {@link #getInt(String, int)} does.
+     */
+    public float getFloat(String key, float defaultValue) {
+        int entry = find(key);
+        if (entry < 0) {
+            return defaultValue;
+        }
+        int offset = offsets[2 * entry + 1];
+        int end = plainValueEnd(offset);
+        return end < 0 ? ConflexParsers.parseFloat(decoded(entry)) : ConflexParsers.parseFloat(buffer, offset, end);
+    }
+
+    /**
+     * Returns the value of the key parsed as a double, as {@link #getInt(String, int)} does.
+     */
+    public double getDouble(String key, double defaultValue) {
+        int entry = find(key);
+        if (entry < 0) {
+            return defaultValue;
+        }
+        int offset = offsets[2 * entry + 1];
+        int end = plainValueEnd(offset);
+        return end < 0 ? ConflexParsers.parseDouble(decoded(entry)) : ConflexParsers.parseDouble(buffer, offset, end);
+    }
+
+    /**
+     * Returns whether the file contains the key, without decoding its value.
+     */
+    public boolean containsKey(String key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Returns the number of distinct keys in the file.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decodes and returns the distinct keys of the file in the order of the
+     * entries that define their values.
+     */
+    public List<String> getKeys() {
+        List<String> keys = new ArrayList<String>(size);
+        int count = hashes.length;
+        boolean[] live = new boolean[count];
+        for (int slot : table) {
+            if (slot != 0) {
+                live[slot - 1] = true;
+            }
+        }
+        for (int i = 0; i < count; ++i) {
+            if (live[i]) {
+                keys.add(decodeKey(offsets[2 * i]));
+            }
+        }
+        return keys;
+    }
+
+    private int find(String key) {
+        int hash = key.hashCode();
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        while (true) {
+            int entry = table[slot] - 1;
+            if (entry < 0) {
+                return -1;
+            }
+            if (hashes[entry] == hash && keyEquals(offsets[2 * entry], key)) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean keyEquals(int offset, String key) {
+        Cursor cursor = new Cursor(buffer, offset);
+        for (int i = 0, n = key.length(); i < n; ++i) {
+            if (cursor.readKey() != key.charAt(i)) {
+                return false;
+            }
+        }
+        return cursor.readKey() == END;
+    }
+
+    private boolean sameKey(int offset, int other) {
+        Cursor a = new Cursor(buffer, offset);
+        Cursor b = new Cursor(buffer, other);
+        while (true) {
+            int c = a.readKey();
+            if (c != b.readKey()) {
+                return false;
+            }
+            if (c == END) {
+                return true;
+            }
+        }
+    }
+
+    private String decodeKey(int offset) {
+        Cursor cursor = new Cursor(buffer, offset);
+        StringBuilder key = new StringBuilder();
+        for (int c = cursor.readKey(); c != END; c = cursor.readKey()) {
+            key.append((char) c);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the end of the value at the offset, or -1 if the value contains
+     * an escape or continues on the next line and must be decoded.
+     */
+    private int plainValueEnd(int offset) {
+        int limit = buffer.limit();
+        int end = offset;
+        while (end < limit) {
+            byte b = buffer.get(end);
+            if (b == '\\') {
+                return -1;
+            }
+            if (b == '\r' || b == '\n') {
+                break;
+            }
+            ++end;
+        }
+        return end;
+    }
+
+    private String decoded(int entry) {
+        String value = values[entry];
+        return value != null ? value : decodeValue(offsets[2 * entry + 1]);
+    }
+
+    private String decodeValue(int offset) {
+        // most values contain no escapes and are copied as they are
+        int end = plainValueEnd(offset);
+        if (end >= 0) {
+            byte[] bytes = new byte[end - offset];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        Cursor cursor = new Cursor(buffer, offset);
+        StringBuilder value = new StringBuilder();
+        for (int c = cursor.read(); c != Cursor.EOL; c = cursor.read()) {
+            value.append((char) c);
+        }
+        return value.toString();
+    }
+
+    /**
+     * Scans the buffer for entries, validating escapes as it goes.
+     */
+    private static Entries index(ByteBuffer buffer) {
+        Entries entries = new Entries();
+        Cursor cursor = new Cursor(buffer, 0);
+        int limit = buffer.limit();
+        int pos = 0;
+        while (true) {
+            // skip blank lines and the indentation of the next line
+            while (pos < limit && isLineSpace(buffer.get(pos))) {
+                ++pos;
+            }
+            if (pos >= limit) {
+                return entries;
+            }
+            byte first = buffer.get(pos);
+            if (first == '#' || first == '!') {
+                // comments do not continue onto the next line
+                while (pos < limit && buffer.get(pos) != '\r' && buffer.get(pos) != '\n') {
+                    ++pos;
+                }
+                continue;
+            }
+
+            int keyOffset = pos;
+            cursor.pos = pos;
+            int hash = 0;
+            int c;
+            while ((c = cursor.readKey()) != END) {
+                hash = 31 * hash + c;
+            }
+
+            // the value starts after whitespace and at most one separator
+            boolean separated = cursor.separator;
+            int valueOffset;
+            while (true) {
+                valueOffset = cursor.pos;
+                c = cursor.read();
+                if (c == Cursor.EOL || cursor.escaped) {
+                    break;
+                }
+                if (!isSpace(c)) {
+                    if (!separated && (c == '=' || c == ':')) {
+                        separated = true;
+                    } else {
+                        break;
+                    }
+                }
+            }
+            if (c != Cursor.EOL) {
+                // consume the rest of the value to find the end of the line
+                cursor.pos = valueOffset;
+                while (cursor.read() != Cursor.EOL) {
+                }
+            }
+            entries.add(keyOffset, valueOffset, hash);
+            pos = cursor.pos;
+        }
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\f';
+    }
+
+    private static boolean isLineSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\f' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * Reads the characters of a logical line, joining continued lines and
+     * decoding escapes.
+     */
+    private static final class Cursor {
+
+        static final int EOL = -2;
+
+        final ByteBuffer buffer;
+        int pos;
+        boolean escaped;
+        boolean separator;
+
+        Cursor(ByteBuffer buffer, int pos) {
+            this.buffer = buffer;
+            this.pos = pos;
+        }
+
+        /**
+         * Returns the next character of the key or {@link MappedProperties#END}
+         * after the key, leaving the cursor past a separator that ended it.
+         */
+        int readKey() {
+            int mark = pos;
+            int c = read();
+            if (c == EOL) {
+                // remain at the end of the line
+                pos = mark;
+                separator = false;
+                return END;
+            }
+            if (!escaped) {
+                if (c == '=' || c == ':') {
+                    separator = true;
+                    return END;
+                }
+                if (isSpace(c)) {
+                    separator = false;
+                    return END;
+                }
+            }
+            return c;
+        }
+
+        /**
+         * Returns the next character of the line, or {@link #EOL} after
+         * consuming the line terminator.
+         */
+        int read() {
+            int limit = buffer.limit();
+            while (true) {
+                if (pos >= limit) {
+                    return EOL;
+                }
+                int c = buffer.get(pos++) & 0xff;
+                if (c == '\r' || c == '\n') {
+                    skipNewline(c);
+                    return EOL;
+                }
+                if (c != '\\') {
+                    escaped = false;
+                    return c;
+                }
+                if (pos >= limit) {
+                    // a trailing backslash is dropped
+                    return EOL;
+                }
+                c = buffer.get(pos++) & 0xff;
+                if (c == '\r' || c == '\n') {
+                    // the line continues after the indentation of the next
+                    skipNewline(c);
+                    while (pos < limit && isSpace(buffer.get(pos))) {
+                        ++pos;
+                    }
+                    continue;
+                }
+                escaped = true;
+                switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'u':
+                    return readUnicode();
+                default:
+                    return c;
+                }
+            }
+        }
+
+        private void skipNewline(int c) {
+            if (c == '\r' && pos < buffer.limit() && buffer.get(pos) == '\n') {
+                ++pos;
+            }
+        }
+
+        private int readUnicode() {
+            if (pos + 4 > buffer.limit()) {
+                throw malformed();
+            }
+            int value = 0;
+            for (int i = 0; i < 4; ++i) {
+                int digit = Character.digit(buffer.get(pos++), 16);
+                if (digit < 0) {
+                    throw malformed();
+                }
+                value = (value << 4) | digit;
+            }
+            return value;
+        }
+
+        private IllegalArgumentException malformed() {
+            return new IllegalArgumentException("Malformed \\uxxxx encoding at offset " + pos + ".");
+        }
+    }
+
+    private static final class Entries {
+        int[] offsets = new int[64];
+        int[] hashes = new int[32];
+        int count;
+
+        void add(int keyOffset, int valueOffset, int hash) {
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 4);
+            }
+            offsets[2 * count] = keyOffset;
+            offsets[2 * count + 1] = valueOffset;
+            hashes[count] = hash;
+            ++count;
+        }
+    }
+}
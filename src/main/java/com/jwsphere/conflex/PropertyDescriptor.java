@@ -0,0 +1,152 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes a single member annotated with {@link ConflexProperty}.  Types
+ * are referred to by their binary names (as returned by {@link Class#getName()})
+ * so that descriptors can be produced without loading the classes involved,
+ * e.g. by an annotation processor.
+ *
+ * @author jonathan.wonders
+ */
+public final class PropertyDescriptor {
+
+    private final String key;
+    private final String description;
+    private final String defaultValue;
+    private final String owner;
+    private final String member;
+    private final String type;
+    private final boolean method;
+
+    /**
+     * @param key The configuration key.
+     * @param description The description of the property.
+     * @param defaultValue The default value of the property.
+     * @param owner The binary name of the class declaring the member.
+     * @param member The name of the field or setter method.
+     * @param type The binary name of the field type or the setter's parameter type.
+     * @param method Whether the member is a setter method rather than a field.
+     */
+    public PropertyDescriptor(String key, String description, String defaultValue,
+            String owner, String member, String type, boolean method) {
+        this.key = key;
+        this.description = description;
+        this.defaultValue = defaultValue;
+        this.owner = owner;
+        this.member = member;
+        this.type = type;
+        this.method = method;
+    }
+
+    /**
+     * Creates a descriptor for an annotated field.
+     */
+    public static PropertyDescriptor of(Field field, ConflexProperty property) {
+        return new PropertyDescriptor(property.key(), property.description(), property.defaultValue(),
+                field.getDeclaringClass().getName(), field.getName(), field.getType().getName(), false);
+    }
+
+    /**
+     * Creates a descriptor for an annotated setter method.
+     */
+    public static PropertyDescriptor of(Method method, ConflexProperty property) {
+        Class<?>[] parameters = method.getParameterTypes();
+        String type = parameters.length == 1 ? parameters[0].getName() : "";
+        return new PropertyDescriptor(property.key(), property.description(), property.defaultValue(),
+                method.getDeclaringClass().getName(), method.getName(), type, true);
+    }
+
+    /**
+     * Creates descriptors for the annotated members of the class, fields
+     * first, then methods.
+     */
+    public static List<PropertyDescriptor> of(Class<?> clazz) {
+        List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>();
+        for (Field field : clazz.getDeclaredFields()) {
+            ConflexProperty property = field.getAnnotation(ConflexProperty.class);
+            if (property != null) {
+                properties.add(of(field, property));
+            }
+        }
+        for (Method method : clazz.getDeclaredMethods()) {
+            ConflexProperty property = method.getAnnotation(ConflexProperty.class);
+            if (property != null) {
+                properties.add(of(method, property));
+            }
+        }
+        return properties;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getDefaultValue() {
+        return defaultValue;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getMember() {
+        return member;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isMethod() {
+        return method;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PropertyDescriptor)) {
+            return false;
+        }
+        PropertyDescriptor other = (PropertyDescriptor) obj;
+        return method == other.method && key.equals(other.key) && description.equals(other.description)
+                && defaultValue.equals(other.defaultValue) && owner.equals(other.owner)
+                && member.equals(other.member) && type.equals(other.type);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = key.hashCode();
+        hash = 31 * hash + owner.hashCode();
+        hash = 31 * hash + member.hashCode();
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "{ key : " + key + " } { owner : " + owner + "#" + member + " } { type : " + type + " }";
+    }
+}
@@ -14,6 +14,9 @@
 package com.jwsphere.conflex;
 
 import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
@@ -23,9 +26,37 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class StandardInjectors {
 
+    private static final MethodHandle PARSE_BOOLEAN = findParser(Boolean.class, "parseBoolean", boolean.class);
+    private static final MethodHandle PARSE_INT = findParser(Integer.class, "parseInt", int.class);
+    private static final MethodHandle PARSE_LONG = findParser(Long.class, "parseLong", long.class);
+    private static final MethodHandle PARSE_FLOAT = findParser(Float.class, "parseFloat", float.class);
+    private static final MethodHandle PARSE_DOUBLE = findParser(Double.class, "parseDouble", double.class);
+    private static final MethodHandle ENUM_VALUE_OF;
+    private static final MethodHandle PARSER_BASED_PARSE;
+
+    static {
+        try {
+            ENUM_VALUE_OF = MethodHandles.publicLookup().findStatic(Enum.class, "valueOf",
+                    MethodType.methodType(Enum.class, Class.class, String.class));
+            PARSER_BASED_PARSE = MethodHandles.lookup().findVirtual(ParserBasedObjectInjector.class, "parse",
+                    MethodType.methodType(Object.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     public static class StringInjector extends InjectorBase {
         @Override
         public void parseAndInject(Object target, Field field, String value) throws IllegalAccessException {
@@ -35,6 +66,10 @@ public final class StandardInjectors {
         public void parseAndInject(Object target, Method method, String value) throws ReflectiveOperationException {
             method.invoke(target, value);
         }
+        @Override
+        public MethodHandle parser(Class<?> type) {
+            return MethodHandles.identity(String.class);
+        }
     }
 
     public static class PrimitiveBoolean extends InjectorBase {
@@ -44,7 +79,11 @@ public final class StandardInjectors {
         }
         @Override
         protected void parseAndInject(Object target, Method method, String value) throws ReflectiveOperationException {
-            method.invoke(this, Boolean.parseBoolean(value));
+            method.invoke(target, Boolean.parseBoolean(value));
+        }
+        @Override
+        public MethodHandle parser(Class<?> type) {
+            return PARSE_BOOLEAN;
         }
     }
 
@@ -57,6 +96,10 @@ public final class StandardInjectors {
         protected void parseAndInject(Object target, Method method, String value) throws ReflectiveOperationException {
             method.invoke(target, Integer.parseInt(value));
         }
+        @Override
+        public MethodHandle parser(Class<?> type) {
+            return PARSE_INT;
+        }
     }
 
     public static class PrimitiveLong extends InjectorBase {
@@ -68,6 +111,10 @@ public final class StandardInjectors {
         protected void parseAndInject(Object target, Method method, String value) throws ReflectiveOperationException {
             method.invoke(target, Long.parseLong(value));
         }
+        @Override
+        public MethodHandle parser(Class<?> type) {
+            return PARSE_LONG;
+        }
     }
 
     public static class PrimitiveFloat extends InjectorBase {
@@ -79,6 +126,10 @@ public final class StandardInjectors {
         protected void parseAndInject(Object target, Method method, String value) throws ReflectiveOperationException {
             method.invoke(target, Float.parseFloat(value));
         }
+        @Override
+        public MethodHandle parser(Class<?> type) {
+            return PARSE_FLOAT;
+        }
     }
 
     public static class PrimitiveDouble extends InjectorBase {
@@ -90,6 +141,10 @@ public final class StandardInjectors {
         protected void parseAndInject(Object target, Method method, String value) throws ReflectiveOperationException {
             method.invoke(target, Double.parseDouble(value));
         }
+        @Override
+        public MethodHandle parser(Class<?> type) {
+            return PARSE_DOUBLE;
+        }
     }
 
     public static class EnumInjector extends InjectorBase {
@@ -105,6 +160,12 @@ public final class StandardInjectors {
             method.invoke(target, Enum.valueOf((Class<Enum>) method.getParameterTypes()[0], value));
         }
 
+        @Override
+        public MethodHandle parser(Class<?> type) {
+            return MethodHandles.insertArguments(ENUM_VALUE_OF, 0, type)
+                    .asType(MethodType.methodType(type, String.class));
+        }
+
     }
 
     public static class BoxedBoolean extends ParserBasedObjectInjector {
@@ -181,13 +242,278 @@ public final class StandardInjectors {
         }
     }
     
+    /**
+     * Resolves host names to addresses and caches the results, including
+     * failures, so that injecting the same host into many objects does not
+     * repeat the lookup.  Successful lookups are cached for the positive TTL
+     * and failed lookups for the negative TTL, which default to the JVM's own
+     * TTLs, i.e. the {@code networkaddress.cache.ttl} and
+     * {@code networkaddress.cache.negative.ttl} security properties, or 30
+     * and 10 seconds when they are not set.  At most {@link #MAX_HOSTS} hosts
+     * are cached; when the cache is full, expired hosts are evicted first.
+     *
+     * When constructed with a refresh executor, an expired address is still
+     * injected while the host is resolved again in the background, so that a
+     * slow or unavailable name service does not stall injection once a host
+     * has been resolved.  Hosts that have never been resolved, or whose last
+     * lookup failed, are always resolved synchronously.
+     *
+     * The resolver is pluggable so that tests can substitute a local stand-in
+     * for the name service.
+     *
+     * @author jonathan.wonders
+     */
     public static class InetAddressInjector extends ParserBasedObjectInjector {
+
+        /**
+         * Resolves a host name to an address.
+         */
+        public interface Resolver {
+            InetAddress resolve(String host) throws UnknownHostException;
+        }
+
+        /**
+         * Resolves host names using {@link InetAddress#getByName(String)}.
+         */
+        public static final Resolver SYSTEM_RESOLVER = new Resolver() {
+            @Override
+            public InetAddress resolve(String host) throws UnknownHostException {
+                return InetAddress.getByName(host);
+            }
+        };
+
+        /** The number of hosts whose lookups are cached. */
+        static final int MAX_HOSTS = 1024;
+
+        private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+        private final Resolver resolver;
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+        private final Executor refreshExecutor;
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong refreshes = new AtomicLong();
+        private final AtomicLong lookups = new AtomicLong();
+        private final AtomicLong lookupNanos = new AtomicLong();
+
+        public InetAddressInjector() {
+            this(SYSTEM_RESOLVER, ttl("networkaddress.cache.ttl", "sun.net.inetaddr.ttl", 30),
+                    ttl("networkaddress.cache.negative.ttl", "sun.net.inetaddr.negative.ttl", 10),
+                    TimeUnit.SECONDS, null);
+        }
+
+        /**
+         * @param resolver The resolver used to look up hosts.
+         * @param ttl How long a resolved address is cached.
+         * @param negativeTtl How long a failed lookup is cached.
+         * @param unit The unit of both TTLs.
+         * @param refreshExecutor The executor on which expired addresses are
+         *        resolved again, or null to resolve them synchronously.
+         */
+        public InetAddressInjector(Resolver resolver, long ttl, long negativeTtl, TimeUnit unit,
+                Executor refreshExecutor) {
+            if (resolver == null) {
+                throw new NullPointerException("resolver");
+            }
+            this.resolver = resolver;
+            this.ttlNanos = unit.toNanos(ttl);
+            this.negativeTtlNanos = unit.toNanos(negativeTtl);
+            this.refreshExecutor = refreshExecutor;
+        }
+
         @Override
         protected Object parse(String value) {
+            Entry entry = cache.get(value);
+            if (entry != null) {
+                long now = nanoTime();
+                if (now - entry.expires < 0) {
+                    hits.incrementAndGet();
+                    return entry.get();
+                }
+                if (refreshExecutor != null && entry.address != null) {
+                    hits.incrementAndGet();
+                    refresh(value, entry);
+                    return entry.address;
+                }
+            }
+            misses.incrementAndGet();
+            return lookup(value).get();
+        }
+
+        /**
+         * Discards all cached lookups.
+         */
+        public void invalidate() {
+            cache.clear();
+        }
+
+        /**
+         * Returns the number of injections served from the cache, including
+         * expired addresses served while being refreshed.
+         */
+        public long getHitCount() {
+            return hits.get();
+        }
+
+        /**
+         * Returns the number of injections that had to wait for a lookup.
+         */
+        public long getMissCount() {
+            return misses.get();
+        }
+
+        /**
+         * Returns the number of lookups that failed.
+         */
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        /**
+         * Returns the number of background refreshes that were started.
+         */
+        public long getRefreshCount() {
+            return refreshes.get();
+        }
+
+        /**
+         * Returns the number of lookups performed by the resolver.
+         */
+        public long getLookupCount() {
+            return lookups.get();
+        }
+
+        /**
+         * Returns the total time spent in the resolver.
+         */
+        public long getLookupTime(TimeUnit unit) {
+            return unit.convert(lookupNanos.get(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Returns the number of hosts currently cached.
+         */
+        int getCachedHostCount() {
+            return cache.size();
+        }
+
+        /**
+         * Returns the current time in nanoseconds, which tests may override to
+         * control expiry.
+         */
+        protected long nanoTime() {
+            return System.nanoTime();
+        }
+
+        private void refresh(final String host, Entry entry) {
+            if (!entry.refreshing.compareAndSet(false, true)) {
+                return;
+            }
+            refreshes.incrementAndGet();
             try {
-                return InetAddress.getByName(value);
+                refreshExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        lookup(host);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                entry.refreshing.set(false);
+            }
+        }
+
+        private Entry lookup(String host) {
+            long start = nanoTime();
+            Entry entry;
+            try {
+                InetAddress address = resolver.resolve(host);
+                entry = new Entry(address, null, start + ttlNanos);
             } catch (UnknownHostException e) {
-                throw new IllegalArgumentException(e);
+                failures.incrementAndGet();
+                Entry previous = cache.get(host);
+                if (refreshExecutor != null && previous != null && previous.address != null) {
+                    // keep serving the last known address, but retry after the negative TTL
+                    entry = new Entry(previous.address, null, start + negativeTtlNanos);
+                } else {
+                    entry = new Entry(null, e, start + negativeTtlNanos);
+                }
+            } finally {
+                lookups.incrementAndGet();
+                lookupNanos.addAndGet(nanoTime() - start);
+            }
+            if (cache.size() >= MAX_HOSTS && !cache.containsKey(host)) {
+                evict(start);
+            }
+            cache.put(host, entry);
+            return entry;
+        }
+
+        /**
+         * Removes the expired hosts, or an arbitrary host if none has expired.
+         */
+        private void evict(long now) {
+            boolean evicted = false;
+            Iterator<Entry> it = cache.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().expires >= 0) {
+                    it.remove();
+                    evicted = true;
+                }
+            }
+            if (!evicted) {
+                it = cache.values().iterator();
+                if (it.hasNext()) {
+                    it.next();
+                    it.remove();
+                }
+            }
+        }
+
+        /**
+         * Returns the TTL in seconds given by the security property, or else
+         * by the system property, as {@link InetAddress} reads them.  A
+         * negative TTL caches lookups forever.
+         */
+        static long ttl(String securityProperty, String systemProperty, long defaultSeconds) {
+            String value = null;
+            try {
+                value = Security.getProperty(securityProperty);
+                if (value == null) {
+                    value = System.getProperty(systemProperty);
+                }
+            } catch (SecurityException e) {
+                // use the default
+            }
+            if (value == null) {
+                return defaultSeconds;
+            }
+            try {
+                long seconds = Long.parseLong(value.trim());
+                return seconds < 0 ? Long.MAX_VALUE : seconds;
+            } catch (NumberFormatException e) {
+                return defaultSeconds;
+            }
+        }
+
+        private static final class Entry {
+            final InetAddress address;
+            final UnknownHostException failure;
+            final long expires;
+            final AtomicBoolean refreshing = new AtomicBoolean();
+
+            Entry(InetAddress address, UnknownHostException failure, long expires) {
+                this.address = address;
+                this.failure = failure;
+                this.expires = expires;
+            }
+
+            InetAddress get() {
+                if (address == null) {
+                    throw new IllegalArgumentException(failure);
+                }
+                return address;
             }
         }
     }
@@ -197,7 +523,7 @@ public final class StandardInjectors {
      * setting either the value and default value.  To actually set the value
      * this class delegates to the particular implementation.
      */
-    private abstract static class InjectorBase implements ConflexInjector {
+    private abstract static class InjectorBase implements ConflexHandleInjector {
         @Override
         public void inject(Object target, Field field, String value) throws InjectionException {
             try {
@@ -234,7 +560,7 @@ public final class StandardInjectors {
         protected abstract void parseAndInject(Object target, Method m, String v) throws ReflectiveOperationException;
     }
 
-    public abstract static class ParserBasedObjectInjector implements ConflexInjector {
+    public abstract static class ParserBasedObjectInjector implements ConflexHandleInjector {
         @Override
         public void inject(Object target, Field field, String value) throws InjectionException {
             try {
@@ -269,9 +595,26 @@ public final class StandardInjectors {
             }
         }
 
+        /**
+         * Returns a handle that invokes {@link #parse(String)} on this injector
+         * and casts the result to the requested type.
+         */
+        @Override
+        public MethodHandle parser(Class<?> type) {
+            return PARSER_BASED_PARSE.bindTo(this).asType(MethodType.methodType(type, String.class));
+        }
+
         protected abstract Object parse(String value);
     }
 
+    private static MethodHandle findParser(Class<?> owner, String name, Class<?> type) {
+        try {
+            return MethodHandles.publicLookup().findStatic(owner, name, MethodType.methodType(type, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private StandardInjectors() {
     }
 }
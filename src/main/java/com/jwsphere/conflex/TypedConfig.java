@@ -0,0 +1,215 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * An immutable configuration that keeps values in their native types, e.g.
+ * as produced by a YAML or JSON parser, so that they can be injected without
+ * formatting them as strings and parsing them again.
+ *
+ * Every key is assigned an id.  Integral, floating point and boolean values
+ * are stored in a primitive array indexed by id, as the value itself, the
+ * bits of the double and zero or one respectively, and all other values in
+ * an object array.  When a property is injected by a standard injector, a
+ * value of a compatible kind is assigned directly: integral values to the
+ * integral types when in range and to the floating point types, floating
+ * point values to the floating point types, booleans to booleans, and
+ * objects that are instances of the property's type as they are.  Any other
+ * combination falls back to parsing the string form of the value.
+ *
+ * The store is also a {@link ConfigSource} that returns the string form of
+ * each value.
+ *
+ * @author jonathan.wonders
+ */
+public final class TypedConfig implements ConfigSource {
+
+    static final byte STRING = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte BOOLEAN = 3;
+    static final byte OBJECT = 4;
+
+    private final Map<String, Integer> ids;
+    private final byte[] kinds;
+    private final long[] primitives;
+    private final Object[] objects;
+    private final Map<String[], int[]> idCache = new WeakHashMap<String[], int[]>();
+
+    private TypedConfig(Map<String, Object> values) {
+        int size = values.size();
+        this.ids = new HashMap<String, Integer>(size * 2);
+        this.kinds = new byte[size];
+        this.primitives = new long[size];
+        this.objects = new Object[size];
+        int id = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            ids.put(entry.getKey(), id);
+            Object value = entry.getValue();
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                kinds[id] = LONG;
+                primitives[id] = ((Number) value).longValue();
+            } else if (value instanceof Double) {
+                kinds[id] = DOUBLE;
+                primitives[id] = Double.doubleToRawLongBits((Double) value);
+            } else if (value instanceof Float) {
+                // widen through the decimal form, so that 0.1f is stored as 0.1 rather than 0.10000000149011612
+                kinds[id] = DOUBLE;
+                primitives[id] = Double.doubleToRawLongBits(Double.parseDouble(value.toString()));
+            } else if (value instanceof Boolean) {
+                kinds[id] = BOOLEAN;
+                primitives[id] = ((Boolean) value).booleanValue() ? 1 : 0;
+            } else if (value instanceof String) {
+                kinds[id] = STRING;
+                objects[id] = value;
+            } else {
+                kinds[id] = OBJECT;
+                objects[id] = value;
+            }
+            ++id;
+        }
+    }
+
+    /**
+     * @return A builder for a new configuration.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The number of keys.
+     */
+    public int size() {
+        return kinds.length;
+    }
+
+    /**
+     * @return The id of the key, or -1 if it is absent.
+     */
+    public int id(String key) {
+        Integer id = ids.get(key);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the ids of the keys, or -1 for absent keys.  The result is
+     * cached by the identity of the array, which is how plans reuse their
+     * prefixed keys, so repeated injections skip the key lookups.  The cache
+     * holds the arrays weakly, so that the keys a plan evicts are not kept
+     * alive by the configuration.  The returned array is shared and must not
+     * be modified.
+     */
+    int[] ids(String[] keys) {
+        int[] result;
+        synchronized (idCache) {
+            result = idCache.get(keys);
+        }
+        if (result == null) {
+            result = new int[keys.length];
+            for (int i = 0; i < keys.length; ++i) {
+                result[i] = id(keys[i]);
+            }
+            synchronized (idCache) {
+                idCache.put(keys, result);
+            }
+        }
+        return result;
+    }
+
+    byte kind(int id) {
+        return kinds[id];
+    }
+
+    long longValue(int id) {
+        return primitives[id];
+    }
+
+    double doubleValue(int id) {
+        return Double.longBitsToDouble(primitives[id]);
+    }
+
+    boolean booleanValue(int id) {
+        return primitives[id] != 0;
+    }
+
+    Object objectValue(int id) {
+        return objects[id];
+    }
+
+    /**
+     * Returns the string form of the value with the id.
+     */
+    String stringValue(int id) {
+        switch (kinds[id]) {
+        case LONG:
+            return Long.toString(primitives[id]);
+        case DOUBLE:
+            return Double.toString(doubleValue(id));
+        case BOOLEAN:
+            return Boolean.toString(booleanValue(id));
+        default:
+            return Conflex.toValue(objects[id]);
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        int id = id(key);
+        return id < 0 ? null : stringValue(id);
+    }
+
+    /**
+     * Collects the values of a {@link TypedConfig}.  Integral values are
+     * Long, Integer, Short and Byte; floating point values are Double and
+     * Float, which is stored as the double of the same decimal form.
+     * BigInteger and BigDecimal values are kept as objects.
+     */
+    public static final class Builder {
+        private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a value, replacing any previous value of the key.  Null values
+         * are ignored.
+         */
+        public Builder put(String key, Object value) {
+            if (value != null) {
+                values.put(key, value);
+            }
+            return this;
+        }
+
+        /**
+         * Adds every entry of the map, e.g. the flattened output of a parser.
+         */
+        public Builder putAll(Map<String, ?> map) {
+            for (Map.Entry<String, ?> entry : map.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+            return this;
+        }
+
+        public TypedConfig build() {
+            return new TypedConfig(values);
+        }
+    }
+}
@@ -0,0 +1,527 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex.processor;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.jwsphere.conflex.ConflexGeneratedInjector;
+import com.jwsphere.conflex.ConflexIndex;
+import com.jwsphere.conflex.ConflexModule;
+import com.jwsphere.conflex.ConflexProperty;
+import com.jwsphere.conflex.PropertyDescriptor;
+
+/**
+ * Generates a {@link ConflexGeneratedInjector} for every class that declares
+ * members annotated with {@link ConflexProperty}.  The generated class holds
+ * a static table of the properties and assigns the members that are visible
+ * to it directly, parsing values the same way the standard injectors do.
+ * Private members and types without a standard injector are listed in the
+ * table but left to conflex' reflective path.
+ *
+ * The properties and modules of every class that is compiled are also
+ * written to a {@link ConflexIndex}, which conflex reads instead of
+ * reflecting on the classes.  When the class output already holds an index,
+ * e.g. from an incremental build, the classes that were not compiled again
+ * are kept in it as long as their class files remain in the class output,
+ * so that classes deleted since the index was written are dropped.
+ *
+ * The processor is registered as a service, so it runs for any project that
+ * compiles against conflex.
+ *
+ * @author jonathan.wonders
+ */
+public class ConflexProcessor extends AbstractProcessor {
+
+    /**
+     * Expressions that parse a value named {@code value} into the given type,
+     * matching the standard injectors.  Enums are handled separately.
+     */
+    private static final Map<String, String> PARSERS = new HashMap<String, String>();
+
+    static {
+        PARSERS.put("java.lang.String", "value");
+        PARSERS.put("boolean", "java.lang.Boolean.parseBoolean(value)");
+        PARSERS.put("int", "java.lang.Integer.parseInt(value)");
+        PARSERS.put("long", "java.lang.Long.parseLong(value)");
+        PARSERS.put("float", "java.lang.Float.parseFloat(value)");
+        PARSERS.put("double", "java.lang.Double.parseDouble(value)");
+        PARSERS.put("java.lang.Boolean", "java.lang.Boolean.valueOf(value)");
+        PARSERS.put("java.lang.Integer", "java.lang.Integer.valueOf(value)");
+        PARSERS.put("java.lang.Long", "java.lang.Long.valueOf(value)");
+        PARSERS.put("java.lang.Float", "java.lang.Float.valueOf(value)");
+        PARSERS.put("java.lang.Double", "java.lang.Double.valueOf(value)");
+        PARSERS.put("java.math.BigInteger", "new java.math.BigInteger(value)");
+        PARSERS.put("java.math.BigDecimal", "new java.math.BigDecimal(value)");
+        PARSERS.put("java.net.URI", "java.net.URI.create(value)");
+        PARSERS.put("java.io.File", "new java.io.File(value)");
+    }
+
+    /** The properties and modules of the classes compiled so far. */
+    private final ConflexIndex.Builder index = ConflexIndex.builder();
+
+    /** The binary names of the classes compiled so far. */
+    private final Set<String> compiled = new HashSet<String>();
+
+    /** The classes that the index is generated from. */
+    private final Set<Element> indexed = new LinkedHashSet<Element>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new HashSet<String>(Arrays.asList(ConflexProperty.class.getName(), ConflexModule.class.getName()));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            try {
+                writeIndex();
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Unable to generate the conflex index: " + e.getMessage());
+            }
+            return false;
+        }
+        for (Element element : roundEnv.getRootElements()) {
+            addCompiled(element);
+        }
+
+        Map<TypeElement, List<Element>> byType = new LinkedHashMap<TypeElement, List<Element>>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(ConflexProperty.class)) {
+            if (!(element.getEnclosingElement() instanceof TypeElement)) {
+                continue;
+            }
+            TypeElement type = (TypeElement) element.getEnclosingElement();
+            List<Element> members = byType.get(type);
+            if (members == null) {
+                members = new ArrayList<Element>();
+                byType.put(type, members);
+            }
+            members.add(element);
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(ConflexModule.class)) {
+            if (element instanceof TypeElement && !byType.containsKey(element)) {
+                byType.put((TypeElement) element, new ArrayList<Element>());
+            }
+        }
+        for (Map.Entry<TypeElement, List<Element>> entry : byType.entrySet()) {
+            TypeElement type = entry.getKey();
+            if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+                continue;
+            }
+            index(type, entry.getValue());
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            try {
+                generate(type, order(entry.getValue()));
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "Unable to generate a conflex injector: " + e.getMessage(), type);
+            }
+        }
+        return false;
+    }
+
+    private void addCompiled(Element element) {
+        if (element instanceof TypeElement) {
+            compiled.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+            for (Element enclosed : element.getEnclosedElements()) {
+                addCompiled(enclosed);
+            }
+        }
+    }
+
+    /**
+     * Adds the properties of the type to the index in the order reflection
+     * lists them, fields first, and the type's module if it is one.
+     */
+    private void index(TypeElement type, List<Element> members) {
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        indexed.add(type);
+        for (ElementKind kind : Arrays.asList(ElementKind.FIELD, ElementKind.METHOD)) {
+            for (Element member : members) {
+                if (member.getKind() != kind) {
+                    continue;
+                }
+                ConflexProperty property = member.getAnnotation(ConflexProperty.class);
+                String memberType;
+                if (kind == ElementKind.FIELD) {
+                    memberType = binaryName(member.asType());
+                } else {
+                    List<? extends Element> parameters = ((ExecutableElement) member).getParameters();
+                    memberType = parameters.size() == 1 ? binaryName(parameters.get(0).asType()) : "";
+                }
+                index.add(new PropertyDescriptor(property.key(), property.description(), property.defaultValue(),
+                        binaryName, member.getSimpleName().toString(), memberType, kind == ElementKind.METHOD));
+            }
+        }
+
+        ConflexModule module = type.getAnnotation(ConflexModule.class);
+        if (module != null) {
+            index.addModule(binaryName, module.description(), moduleRefs(type));
+        }
+    }
+
+    /**
+     * Returns the binary names of the classes the module refers to, which are
+     * read from the annotation mirror since the classes may not be loadable.
+     */
+    private List<String> moduleRefs(TypeElement type) {
+        List<String> refs = new ArrayList<String>();
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+            if (!annotation.getQualifiedName().contentEquals(ConflexModule.class.getName())) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet()) {
+                if (!entry.getKey().getSimpleName().contentEquals("refs")) {
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) entry.getValue().getValue();
+                for (AnnotationValue value : values) {
+                    refs.add(binaryName((TypeMirror) value.getValue()));
+                }
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Writes the index of the compiled classes, merged with the classes of
+     * an existing index that were not compiled again and whose class files
+     * still exist.
+     */
+    private void writeIndex() throws IOException {
+        ConflexIndex current = index.build();
+        ConflexIndex.Builder merged = ConflexIndex.builder();
+        ConflexIndex existing = readIndex();
+        if (existing != null) {
+            merged.addAll(existing, false);
+            for (String className : existing.getClasses()) {
+                if (compiled.contains(className) || !classFileExists(className)) {
+                    merged.remove(className);
+                }
+            }
+        } else if (current.isEmpty()) {
+            return;
+        }
+        merged.addAll(current, false);
+
+        FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                ConflexIndex.RESOURCE, indexed.toArray(new Element[indexed.size()]));
+        Writer writer = new OutputStreamWriter(resource.openOutputStream(), StandardCharsets.UTF_8);
+        try {
+            merged.build().write(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private boolean classFileExists(String className) {
+        int dot = className.lastIndexOf('.');
+        try {
+            // the filer returns a file object for an output location whether or not the file exists
+            FileObject classFile = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT,
+                    dot < 0 ? "" : className.substring(0, dot), className.substring(dot + 1) + ".class");
+            classFile.openInputStream().close();
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            // keep the class rather than lose it on an unrelated failure
+            return true;
+        }
+    }
+
+    private ConflexIndex readIndex() {
+        try {
+            FileObject resource = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+                    ConflexIndex.RESOURCE);
+            InputStream in = resource.openInputStream();
+            try {
+                return ConflexIndex.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Ignoring the existing conflex index: " + e.getMessage());
+            return null;
+        } catch (IllegalArgumentException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Ignoring the existing conflex index: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Orders the members the way conflex resolves them at runtime: fields
+     * first, then setter methods with a single parameter.
+     */
+    private List<Element> order(List<Element> members) {
+        List<Element> ordered = new ArrayList<Element>(members.size());
+        for (Element member : members) {
+            if (member.getKind() == ElementKind.FIELD) {
+                ordered.add(member);
+            }
+        }
+        for (Element member : members) {
+            if (member.getKind() == ElementKind.METHOD
+                    && ((ExecutableElement) member).getParameters().size() == 1) {
+                ordered.add(member);
+            }
+        }
+        return ordered;
+    }
+
+    private void generate(TypeElement type, List<Element> members) throws IOException {
+        Elements elements = processingEnv.getElementUtils();
+        PackageElement pkg = elements.getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(type).toString();
+        String simpleName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1)
+                .replace('$', '_') + ConflexGeneratedInjector.SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        boolean typeVisible = isVisible(type);
+        String target = type.getQualifiedName().toString();
+
+        StringBuilder properties = new StringBuilder();
+        StringBuilder cases = new StringBuilder();
+        StringBuilder assignments = new StringBuilder();
+        StringBuilder injectable = new StringBuilder();
+        for (int i = 0; i < members.size(); ++i) {
+            Element member = members.get(i);
+            ConflexProperty property = member.getAnnotation(ConflexProperty.class);
+            boolean method = member.getKind() == ElementKind.METHOD;
+            TypeMirror memberType = method
+                    ? ((ExecutableElement) member).getParameters().get(0).asType()
+                    : member.asType();
+
+            properties.append("        new com.jwsphere.conflex.PropertyDescriptor(")
+                    .append(elements.getConstantExpression(property.key())).append(", ")
+                    .append(elements.getConstantExpression(property.description())).append(", ")
+                    .append(elements.getConstantExpression(property.defaultValue())).append(", ")
+                    .append(elements.getConstantExpression(binaryName)).append(", ")
+                    .append(elements.getConstantExpression(member.getSimpleName().toString())).append(", ")
+                    .append(elements.getConstantExpression(binaryName(memberType))).append(", ")
+                    .append(method).append("),\n");
+
+            String parser = typeVisible ? parser(member, memberType) : null;
+            if (parser != null) {
+                String receiver = member.getModifiers().contains(Modifier.STATIC)
+                        ? target : "((" + target + ") target)";
+                appendCase(cases, i, receiver, member, parser);
+                appendCase(assignments, i, receiver, member, "(" + boxed(memberType) + ") value");
+                injectable.append("        case ").append(i).append(":\n");
+            }
+        }
+
+        Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter();
+        try {
+            if (!packageName.isEmpty()) {
+                writer.append("package ").append(packageName).append(";\n\n");
+            }
+            writer.append("/**\n");
+            writer.append(" * Conflex injector for {@link ").append(type.getQualifiedName()).append("}.\n");
+            writer.append(" * Generated by ").append(ConflexProcessor.class.getName()).append(", do not edit.\n");
+            writer.append(" */\n");
+            writer.append("public final class ").append(simpleName)
+                    .append(" implements com.jwsphere.conflex.ConflexGeneratedInjector {\n\n");
+            writer.append("    private static final com.jwsphere.conflex.PropertyDescriptor[] PROPERTIES = {\n");
+            writer.append(properties);
+            writer.append("    };\n\n");
+            writer.append("    @Override\n");
+            writer.append("    public com.jwsphere.conflex.PropertyDescriptor[] getProperties() {\n");
+            writer.append("        return PROPERTIES.clone();\n");
+            writer.append("    }\n\n");
+            writer.append("    @Override\n");
+            writer.append("    public boolean canInject(int index) {\n");
+            writer.append("        switch (index) {\n");
+            if (injectable.length() > 0) {
+                writer.append(injectable);
+                writer.append("            return true;\n");
+            }
+            writer.append("        default:\n");
+            writer.append("            return false;\n");
+            writer.append("        }\n");
+            writer.append("    }\n\n");
+            writer.append("    @Override\n");
+            writer.append("    public void inject(Object target, int index, String value) {\n");
+            writer.append("        switch (index) {\n");
+            writer.append(cases);
+            writer.append("        default:\n");
+            writer.append("            throw new UnsupportedOperationException(\"Property \" + index")
+                    .append(" + \" must be injected reflectively.\");\n");
+            writer.append("        }\n");
+            writer.append("    }\n\n");
+            writer.append("    @Override\n");
+            writer.append("    public void assign(Object target, int index, Object value) {\n");
+            writer.append("        switch (index) {\n");
+            writer.append(assignments);
+            writer.append("        default:\n");
+            writer.append("            throw new UnsupportedOperationException(\"Property \" + index")
+                    .append(" + \" must be injected reflectively.\");\n");
+            writer.append("        }\n");
+            writer.append("    }\n");
+            writer.append("}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void appendCase(StringBuilder cases, int index, String receiver, Element member,
+            String expression) {
+        cases.append("        case ").append(index).append(":\n");
+        cases.append("            ").append(receiver).append(".").append(member.getSimpleName());
+        if (member.getKind() == ElementKind.METHOD) {
+            cases.append("(").append(expression).append(");\n");
+        } else {
+            cases.append(" = ").append(expression).append(";\n");
+        }
+        cases.append("            return;\n");
+    }
+
+    /**
+     * Returns the name of the type to cast an assigned value to, which is the
+     * wrapper class for primitives.
+     */
+    private String boxed(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+    }
+
+    /**
+     * Returns the expression parsing {@code value} for the member, or null if
+     * the generated class cannot assign the member directly.
+     */
+    private String parser(Element member, TypeMirror type) {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return null;
+        }
+        if (member.getKind() == ElementKind.FIELD && modifiers.contains(Modifier.FINAL)) {
+            return null;
+        }
+        if (type.getKind().isPrimitive()) {
+            return PARSERS.get(type.toString());
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        if (element.getKind() == ElementKind.ENUM) {
+            return isVisible(element) ? element.getQualifiedName() + ".valueOf(value)" : null;
+        }
+        return PARSERS.get(element.getQualifiedName().toString());
+    }
+
+    /**
+     * Returns whether the type can be referenced from a class in its package.
+     */
+    private static boolean isVisible(TypeElement type) {
+        Element element = type;
+        while (element instanceof TypeElement) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the name of the erased type as {@link Class#getName()} would.
+     */
+    private String binaryName(TypeMirror type) {
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror erased = types.erasure(type);
+        switch (erased.getKind()) {
+        case DECLARED:
+            TypeElement element = (TypeElement) ((DeclaredType) erased).asElement();
+            return processingEnv.getElementUtils().getBinaryName(element).toString();
+        case ARRAY:
+            return "[" + descriptor(((ArrayType) erased).getComponentType());
+        default:
+            return erased.toString();
+        }
+    }
+
+    private String descriptor(TypeMirror type) {
+        switch (type.getKind()) {
+        case BOOLEAN: return "Z";
+        case BYTE: return "B";
+        case CHAR: return "C";
+        case SHORT: return "S";
+        case INT: return "I";
+        case LONG: return "J";
+        case FLOAT: return "F";
+        case DOUBLE: return "D";
+        case ARRAY: return "[" + descriptor(((ArrayType) type).getComponentType());
+        default: return "L" + binaryName(type) + ";";
+        }
+    }
+}
@@ -0,0 +1,23 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+/**
+ * This package contains the annotation processor that runs when conflex is
+ * on the compiler's classpath.  The processor generates an injector for each
+ * class with {@link com.jwsphere.conflex.ConflexProperty} annotations so that
+ * conflex can resolve and inject those classes without reflection.
+ * 
+ * @author jonathan.wonders
+ */
+package com.jwsphere.conflex.processor;
@@ -0,0 +1,126 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex.tools;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Inspects the bytes of class files without loading them.
+ *
+ * @author jonathan.wonders
+ */
+final class ClassFiles {
+
+    /** Set when a class file refers to {@link com.jwsphere.conflex.ConflexProperty}. */
+    static final int PROPERTY = 1;
+
+    /** Set when a class file refers to {@link com.jwsphere.conflex.ConflexModule}. */
+    static final int MODULE = 2;
+
+    static final byte[] PROPERTY_DESCRIPTOR = "Lcom/jwsphere/conflex/ConflexProperty;".getBytes(StandardCharsets.UTF_8);
+    static final byte[] MODULE_DESCRIPTOR = "Lcom/jwsphere/conflex/ConflexModule;".getBytes(StandardCharsets.UTF_8);
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /**
+     * Returns which of the conflex annotations the constant pool of the class
+     * file names.  An annotation is always named by a CONSTANT_Utf8 entry
+     * holding its descriptor, so a class without such an entry cannot be
+     * annotated, and the entry is only present for other reasons in classes
+     * that declare members of the annotation type itself.
+     *
+     * @param bytes The class file.
+     * @param length The length of the class file within the array.
+     * @return A mask of {@link #PROPERTY} and {@link #MODULE}, which is zero
+     * if the bytes are not a class file.
+     */
+    static int annotationMask(byte[] bytes, int length) {
+        if (length < 10 || readInt(bytes, 0) != MAGIC) {
+            return 0;
+        }
+        int count = readUnsignedShort(bytes, 8);
+        int pos = 10;
+        int mask = 0;
+        for (int i = 1; i < count && pos + 3 <= length; ++i) {
+            int tag = bytes[pos];
+            switch (tag) {
+            case 1:
+                int size = readUnsignedShort(bytes, pos + 1);
+                if (pos + 3 + size > length) {
+                    return mask;
+                }
+                if (equals(bytes, pos + 3, size, PROPERTY_DESCRIPTOR)) {
+                    mask |= PROPERTY;
+                } else if (equals(bytes, pos + 3, size, MODULE_DESCRIPTOR)) {
+                    mask |= MODULE;
+                }
+                pos += 3 + size;
+                break;
+            case 3:
+            case 4:
+            case 9:
+            case 10:
+            case 11:
+            case 12:
+            case 17:
+            case 18:
+                pos += 5;
+                break;
+            case 5:
+            case 6:
+                // eight byte constants take two entries
+                pos += 9;
+                ++i;
+                break;
+            case 7:
+            case 8:
+            case 16:
+            case 19:
+            case 20:
+                pos += 3;
+                break;
+            case 15:
+                pos += 4;
+                break;
+            default:
+                return mask;
+            }
+        }
+        return mask;
+    }
+
+    static int readUnsignedShort(byte[] bytes, int pos) {
+        return ((bytes[pos] & 0xff) << 8) | (bytes[pos + 1] & 0xff);
+    }
+
+    static int readInt(byte[] bytes, int pos) {
+        return ((bytes[pos] & 0xff) << 24) | ((bytes[pos + 1] & 0xff) << 16)
+                | ((bytes[pos + 2] & 0xff) << 8) | (bytes[pos + 3] & 0xff);
+    }
+
+    private static boolean equals(byte[] bytes, int pos, int size, byte[] expected) {
+        if (size != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < size; ++i) {
+            if (bytes[pos + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ClassFiles() {
+    }
+}
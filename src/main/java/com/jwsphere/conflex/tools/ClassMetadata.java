@@ -0,0 +1,473 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.jwsphere.conflex.ConflexModule;
+import com.jwsphere.conflex.ConflexProperty;
+import com.jwsphere.conflex.PropertyDescriptor;
+
+/**
+ * The conflex annotations of a class, read from the RuntimeVisibleAnnotations
+ * attributes of its class file rather than through reflection, so that the
+ * class is neither loaded nor initialized.
+ *
+ * The properties are described in the order that reflection returns them
+ * for the class: the annotated fields followed by the annotated methods,
+ * each in the order of the class file.  Members that are not annotated and
+ * annotations other than {@link ConflexProperty} and {@link ConflexModule}
+ * are skipped without being decoded.
+ *
+ * @author jonathan.wonders
+ */
+public final class ClassMetadata {
+
+    private static final String PROPERTY = "Lcom/jwsphere/conflex/ConflexProperty;";
+    private static final String MODULE = "Lcom/jwsphere/conflex/ConflexModule;";
+    private static final String ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+    private final String name;
+    private final List<PropertyDescriptor> properties;
+    private final boolean module;
+    private final String moduleDescription;
+    private final List<String> moduleRefs;
+
+    private ClassMetadata(String name, List<PropertyDescriptor> properties, boolean module,
+            String moduleDescription, List<String> moduleRefs) {
+        this.name = name;
+        this.properties = Collections.unmodifiableList(properties);
+        this.module = module;
+        this.moduleDescription = moduleDescription;
+        this.moduleRefs = Collections.unmodifiableList(moduleRefs);
+    }
+
+    /**
+     * Reads the metadata of a class file.
+     *
+     * @param bytes The class file.
+     * @return The metadata.
+     * @throws IllegalArgumentException if the bytes are not a class file.
+     */
+    public static ClassMetadata read(byte[] bytes) {
+        return read(bytes, bytes.length);
+    }
+
+    /**
+     * Reads the metadata of the class file that occupies the start of the array.
+     *
+     * @param bytes The array holding the class file.
+     * @param length The length of the class file.
+     * @return The metadata.
+     * @throws IllegalArgumentException if the bytes are not a class file.
+     */
+    public static ClassMetadata read(byte[] bytes, int length) {
+        try {
+            return new Parser(bytes, length).parse();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("The class file is truncated.", e);
+        }
+    }
+
+    /**
+     * Reads the metadata of the class file in the stream, whose lifecycle is
+     * managed by the caller.
+     */
+    public static ClassMetadata read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return read(out.toByteArray());
+    }
+
+    /**
+     * Returns the binary name of the class.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the properties declared by the annotated members of the class.
+     */
+    public List<PropertyDescriptor> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Returns whether the class is annotated with {@link ConflexModule}.
+     */
+    public boolean isModule() {
+        return module;
+    }
+
+    /**
+     * Returns the description of the module, or the empty string.
+     */
+    public String getModuleDescription() {
+        return moduleDescription;
+    }
+
+    /**
+     * Returns the binary names of the classes that the module refers to.
+     */
+    public List<String> getModuleRefs() {
+        return moduleRefs;
+    }
+
+    @Override
+    public String toString() {
+        return "{ class : " + name + " } { properties : " + properties.size() + " } { module : " + module + " }";
+    }
+
+    /**
+     * Converts a field descriptor to the binary name that
+     * {@link Class#getName()} returns for the type.
+     */
+    static String toBinaryName(String descriptor) {
+        switch (descriptor.charAt(0)) {
+        case 'Z':
+            return "boolean";
+        case 'B':
+            return "byte";
+        case 'C':
+            return "char";
+        case 'S':
+            return "short";
+        case 'I':
+            return "int";
+        case 'J':
+            return "long";
+        case 'F':
+            return "float";
+        case 'D':
+            return "double";
+        case 'V':
+            return "void";
+        case 'L':
+            return descriptor.substring(1, descriptor.length() - 1).replace('/', '.');
+        default:
+            // arrays are named by their descriptor with dots
+            return descriptor.replace('/', '.');
+        }
+    }
+
+    private static final class Parser {
+        private final byte[] bytes;
+        private final int length;
+        private int[] offsets;
+        private String[] strings;
+        private int pos;
+
+        Parser(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        ClassMetadata parse() {
+            if (length < 10 || ClassFiles.readInt(bytes, 0) != 0xCAFEBABE) {
+                throw new IllegalArgumentException("The bytes are not a class file.");
+            }
+            readConstantPool();
+
+            pos += 2; // access flags
+            String className = utf8(u2(offsets[u2()] + 1)).replace('/', '.');
+            pos += 2; // super class
+            int interfaces = u2();
+            pos += 2 * interfaces;
+
+            List<PropertyDescriptor> fields = new ArrayList<PropertyDescriptor>();
+            List<PropertyDescriptor> methods = new ArrayList<PropertyDescriptor>();
+            readMembers(className, false, fields);
+            readMembers(className, true, methods);
+            fields.addAll(methods);
+
+            boolean module = false;
+            String description = "";
+            List<String> refs = new ArrayList<String>();
+            for (int i = 0, n = u2(); i < n; ++i) {
+                String attribute = utf8(u2());
+                int size = u4();
+                check(pos, size);
+                int end = pos + size;
+                if (ANNOTATIONS.equals(attribute)) {
+                    for (int j = 0, annotations = u2(); j < annotations; ++j) {
+                        if (MODULE.equals(utf8(u2()))) {
+                            module = true;
+                            description = readModule(refs);
+                        } else {
+                            skipPairs();
+                        }
+                    }
+                }
+                pos = end;
+            }
+            return new ClassMetadata(className, fields, module, description, refs);
+        }
+
+        private void readConstantPool() {
+            int count = ClassFiles.readUnsignedShort(bytes, 8);
+            offsets = new int[count];
+            strings = new String[count];
+            pos = 10;
+            for (int i = 1; i < count; ++i) {
+                offsets[i] = pos;
+                int tag = u1(pos);
+                switch (tag) {
+                case 1:
+                    pos += 3 + u2(pos + 1);
+                    break;
+                case 3:
+                case 4:
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    pos += 5;
+                    break;
+                case 5:
+                case 6:
+                    pos += 9;
+                    ++i;
+                    break;
+                case 7:
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    pos += 3;
+                    break;
+                case 15:
+                    pos += 4;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown constant pool tag " + tag + ".");
+                }
+            }
+        }
+
+        private void readMembers(String owner, boolean method, List<PropertyDescriptor> properties) {
+            for (int i = 0, n = u2(); i < n; ++i) {
+                pos += 2; // access flags
+                int nameIndex = u2();
+                int descriptorIndex = u2();
+                for (int j = 0, attributes = u2(); j < attributes; ++j) {
+                    String attribute = utf8(u2());
+                    int size = u4();
+                    check(pos, size);
+                    int end = pos + size;
+                    if (ANNOTATIONS.equals(attribute)) {
+                        for (int k = 0, annotations = u2(); k < annotations; ++k) {
+                            if (PROPERTY.equals(utf8(u2()))) {
+                                properties.add(readProperty(owner, utf8(nameIndex),
+                                        memberType(utf8(descriptorIndex), method), method));
+                            } else {
+                                skipPairs();
+                            }
+                        }
+                    }
+                    pos = end;
+                }
+            }
+        }
+
+        /**
+         * Returns the binary name of a field's type or of the parameter of
+         * a setter, or the empty string for a method that does not take
+         * exactly one parameter, as {@link PropertyDescriptor#of} does.
+         */
+        private static String memberType(String descriptor, boolean method) {
+            if (!method) {
+                return toBinaryName(descriptor);
+            }
+            int end = descriptor.indexOf(')');
+            int next = skipType(descriptor, 1);
+            if (next != end || end == 1) {
+                return "";
+            }
+            return toBinaryName(descriptor.substring(1, end));
+        }
+
+        private static int skipType(String descriptor, int index) {
+            while (descriptor.charAt(index) == '[') {
+                ++index;
+            }
+            if (descriptor.charAt(index) == 'L') {
+                return descriptor.indexOf(';', index) + 1;
+            }
+            return index + 1;
+        }
+
+        private PropertyDescriptor readProperty(String owner, String member, String type, boolean method) {
+            String key = null;
+            String description = "";
+            String defaultValue = "";
+            for (int i = 0, n = u2(); i < n; ++i) {
+                String element = utf8(u2());
+                if (u1(pos) == 's') {
+                    ++pos;
+                    String value = utf8(u2());
+                    if ("key".equals(element)) {
+                        key = value;
+                    } else if ("description".equals(element)) {
+                        description = value;
+                    } else if ("defaultValue".equals(element)) {
+                        defaultValue = value;
+                    }
+                } else {
+                    skipValue();
+                }
+            }
+            if (key == null) {
+                throw new IllegalArgumentException("The property " + owner + "#" + member + " has no key.");
+            }
+            return new PropertyDescriptor(key, description, defaultValue, owner, member, type, method);
+        }
+
+        private String readModule(List<String> refs) {
+            String description = "";
+            for (int i = 0, n = u2(); i < n; ++i) {
+                String element = utf8(u2());
+                if ("description".equals(element) && u1(pos) == 's') {
+                    ++pos;
+                    description = utf8(u2());
+                } else if ("refs".equals(element) && u1(pos) == '[') {
+                    ++pos;
+                    for (int j = 0, values = u2(); j < values; ++j) {
+                        if (u1(pos) == 'c') {
+                            ++pos;
+                            refs.add(toBinaryName(utf8(u2())));
+                        } else {
+                            skipValue();
+                        }
+                    }
+                } else {
+                    skipValue();
+                }
+            }
+            return description;
+        }
+
+        private void skipPairs() {
+            for (int i = 0, n = u2(); i < n; ++i) {
+                pos += 2;
+                skipValue();
+            }
+        }
+
+        private void skipValue() {
+            int tag = u1(pos++);
+            switch (tag) {
+            case 'e':
+                pos += 4;
+                break;
+            case '@':
+                pos += 2;
+                skipPairs();
+                break;
+            case '[':
+                for (int i = 0, n = u2(); i < n; ++i) {
+                    skipValue();
+                }
+                break;
+            default:
+                pos += 2;
+            }
+        }
+
+        private int u1(int offset) {
+            check(offset, 1);
+            return bytes[offset];
+        }
+
+        private int u2() {
+            int value = u2(pos);
+            pos += 2;
+            return value;
+        }
+
+        private int u2(int offset) {
+            check(offset, 2);
+            return ClassFiles.readUnsignedShort(bytes, offset);
+        }
+
+        private int u4() {
+            check(pos, 4);
+            int value = ClassFiles.readInt(bytes, pos);
+            pos += 4;
+            return value;
+        }
+
+        /**
+         * Checks a read against the length rather than the array, whose tail
+         * may hold stale bytes of a larger class file when it is a reused
+         * buffer.
+         */
+        private void check(int offset, int size) {
+            if (offset < 0 || offset > length - size) {
+                throw new IllegalArgumentException("The class file is truncated.");
+            }
+        }
+
+        /**
+         * Decodes the modified UTF-8 of a CONSTANT_Utf8 entry.
+         */
+        private String utf8(int index) {
+            String value = strings[index];
+            if (value != null) {
+                return value;
+            }
+            int offset = offsets[index];
+            if (u1(offset) != 1) {
+                throw new IllegalArgumentException("The constant " + index + " is not a string.");
+            }
+            int size = u2(offset + 1);
+            int start = offset + 3;
+            int end = start + size;
+            check(start, size);
+            char[] chars = new char[size];
+            int n = 0;
+            for (int i = start; i < end; ++n) {
+                int b = bytes[i++] & 0xff;
+                if (b < 0x80) {
+                    chars[n] = (char) b;
+                } else if (b < 0xe0) {
+                    if (i + 1 > end) {
+                        throw new IllegalArgumentException("The constant " + index + " is malformed.");
+                    }
+                    chars[n] = (char) (((b & 0x1f) << 6) | (bytes[i++] & 0x3f));
+                } else {
+                    if (i + 2 > end) {
+                        throw new IllegalArgumentException("The constant " + index + " is malformed.");
+                    }
+                    chars[n] = (char) (((b & 0x0f) << 12) | ((bytes[i] & 0x3f) << 6) | (bytes[i + 1] & 0x3f));
+                    i += 2;
+                }
+            }
+            value = new String(chars, 0, n);
+            strings[index] = value;
+            return value;
+        }
+    }
+}
@@ -15,22 +15,42 @@ package com.jwsphere.conflex.tools;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 import com.jwsphere.conflex.Conflex;
 import com.jwsphere.conflex.ConflexProperty;
+import com.jwsphere.conflex.PropertyDescriptor;
 
 /**
  * This class provides some utilities for analyzing the properties annotated
  * in a set of classes when compared to a configuration of some sort.
+ *
+ * The declared keys are collected and indexed once, on first use, so an
+ * analyzer can be kept and applied to many configurations.  An analysis
+ * looks at each key of the configuration once: a declared key is marked as
+ * present and any other key is extra, and the declared keys left unmarked
+ * are missing.  For each extra key, the closest declared key within a small
+ * edit distance is suggested, since extra keys are often misspellings.
+ *
+ * When the properties are read with a prefix, the analyzer can be given the
+ * same prefix, so that keys are compared without it and keys outside of it,
+ * which belong to other components, are ignored.
  * 
  * @author jonathan.wonders
  */
 public class ConflexAnalyzer {
 
+    /** The default edit distance within which a declared key is suggested. */
+    public static final int DEFAULT_MAX_DISTANCE = 2;
+
     private Collection<Class<?>> classes;
+    private Collection<PropertyDescriptor> descriptors;
+    private String prefix = "";
+    private int maxDistance = DEFAULT_MAX_DISTANCE;
+    private DeclaredKeys declared;
 
     public ConflexAnalyzer(Class<?> ... classes) {
         this.classes = new ArrayList<Class<?>>(classes.length);
@@ -44,36 +64,202 @@ public class ConflexAnalyzer {
         this.classes.addAll(classes);
     }
 
-    public <U, V> Collection<String> findMissingProperties(Map<U, V> conf) {
-        Collection<String> missing = new ArrayList<String>();
-        for (ConflexProperty property : Conflex.getAnnotatedProperties(classes)) {
-            if (!conf.containsKey(property.key())) {
-                missing.add(property.key());
-            }
+    /**
+     * Returns an analyzer for properties that were described without loading
+     * their classes, e.g. by {@link ClassMetadata} or a scan of the classpath.
+     */
+    public static ConflexAnalyzer forProperties(Collection<PropertyDescriptor> properties) {
+        ConflexAnalyzer analyzer = new ConflexAnalyzer(new ArrayList<Class<?>>());
+        analyzer.descriptors = new ArrayList<PropertyDescriptor>(properties);
+        return analyzer;
+    }
+
+    /**
+     * Analyzes the keys under the prefix, which the declared keys are
+     * expected to follow in the configuration.
+     *
+     * @param prefix The prefix, or null for none.
+     * @return This analyzer.
+     */
+    public ConflexAnalyzer prefix(String prefix) {
+        this.prefix = prefix == null ? "" : prefix;
+        return this;
+    }
+
+    /**
+     * Sets the edit distance within which a declared key is suggested for an
+     * extra one.  For a key shorter than twice the distance, the distance is
+     * lowered to half the key's length, since a short key would otherwise
+     * match almost anything.
+     *
+     * @param maxDistance The distance, or 0 to not suggest keys.
+     * @return This analyzer.
+     */
+    public ConflexAnalyzer suggestWithin(int maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("The distance must not be negative.");
         }
-        return missing;
+        this.maxDistance = maxDistance;
+        return this;
+    }
+
+    public <U, V> Collection<String> findMissingProperties(Map<U, V> conf) {
+        return analyze(conf).getMissing();
     }
 
     public <U, V> Collection<String> findExtraProperties(Map<U, V> conf) {
-        SortedSet<String> propertyKeys = new TreeSet<String>();
+        return analyze(conf).getExtra();
+    }
+
+    /**
+     * Compares the configuration to the declared properties.
+     *
+     * @param conf The configuration, of which keys that are not strings are ignored.
+     * @return The analysis.
+     */
+    public <U, V> Analysis analyze(Map<U, V> conf) {
+        List<String> keys = new ArrayList<String>(conf.size());
         for (Object key : conf.keySet()) {
             if (key instanceof String) {
-                propertyKeys.add((String) key);
+                keys.add((String) key);
             }
         }
-        return findExtraProperties(propertyKeys);
+        return analyze(keys);
     }
 
-    private SortedSet<String> findExtraProperties(SortedSet<String> confKeys) {
-        Collection<ConflexProperty> cProperties = 
-                Conflex.getAnnotatedProperties(classes);
+    /**
+     * Compares the keys of a configuration, e.g. of a
+     * {@link com.jwsphere.conflex.MappedProperties}, to the declared
+     * properties.
+     *
+     * @param keys The keys, each of which should be given once.
+     * @return The analysis.
+     */
+    public Analysis analyze(Collection<String> keys) {
+        DeclaredKeys declared = getDeclaredKeys();
+        boolean[] present = new boolean[declared.size()];
+        List<String> extra = new ArrayList<String>();
+        for (String key : keys) {
+            if (!key.startsWith(prefix)) {
+                continue;
+            }
+            int position = declared.indexOf(key.substring(prefix.length()));
+            if (position >= 0) {
+                present[position] = true;
+            } else {
+                extra.add(key);
+            }
+        }
 
-        SortedSet<String> cPropertyKeys = new TreeSet<String>();
-        for (ConflexProperty property : cProperties) {
-            cPropertyKeys.add(property.key());
+        List<String> missing = new ArrayList<String>();
+        for (int i = 0; i < present.length; ++i) {
+            if (!present[i]) {
+                missing.add(prefix + declared.get(i));
+            }
         }
+        Collections.sort(extra);
+        Map<String, String> suggestions = new LinkedHashMap<String, String>();
+        for (String key : extra) {
+            String suggestion = suggest(declared, key.substring(prefix.length()));
+            if (suggestion != null) {
+                suggestions.put(key, prefix + suggestion);
+            }
+        }
+        return new Analysis(missing, extra, suggestions);
+    }
 
-        confKeys.removeAll(cPropertyKeys);
-        return confKeys;
+    /**
+     * Returns the declared key closest to the given one, including the
+     * prefix, or null if there is none within the distance.
+     */
+    public String suggest(String key) {
+        if (!key.startsWith(prefix)) {
+            return null;
+        }
+        DeclaredKeys declared = getDeclaredKeys();
+        String unprefixed = key.substring(prefix.length());
+        if (declared.indexOf(unprefixed) >= 0) {
+            return key;
+        }
+        String suggestion = suggest(declared, unprefixed);
+        return suggestion == null ? null : prefix + suggestion;
+    }
+
+    private String suggest(DeclaredKeys declared, String key) {
+        return declared.closest(key, Math.min(maxDistance, key.length() / 2));
+    }
+
+    private synchronized DeclaredKeys getDeclaredKeys() {
+        if (declared == null) {
+            List<String> keys = new ArrayList<String>();
+            if (descriptors != null) {
+                for (PropertyDescriptor property : descriptors) {
+                    keys.add(property.getKey());
+                }
+            } else {
+                for (ConflexProperty property : Conflex.getAnnotatedProperties(classes)) {
+                    keys.add(property.key());
+                }
+            }
+            declared = new DeclaredKeys(keys);
+        }
+        return declared;
+    }
+
+    /**
+     * The result of comparing a configuration to the declared properties.
+     */
+    public static final class Analysis {
+        private final List<String> missing;
+        private final List<String> extra;
+        private final Map<String, String> suggestions;
+
+        Analysis(List<String> missing, List<String> extra, Map<String, String> suggestions) {
+            this.missing = Collections.unmodifiableList(missing);
+            this.extra = Collections.unmodifiableList(extra);
+            this.suggestions = Collections.unmodifiableMap(suggestions);
+        }
+
+        /**
+         * Returns the declared keys that the configuration lacks, sorted.
+         */
+        public List<String> getMissing() {
+            return missing;
+        }
+
+        /**
+         * Returns the keys of the configuration that are not declared, sorted.
+         */
+        public List<String> getExtra() {
+            return extra;
+        }
+
+        /**
+         * Returns the closest declared key for each extra key that has one.
+         */
+        public Map<String, String> getSuggestions() {
+            return suggestions;
+        }
+
+        public boolean isComplete() {
+            return missing.isEmpty() && extra.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (String key : missing) {
+                builder.append("missing: ").append(key).append('\n');
+            }
+            for (String key : extra) {
+                builder.append("extra: ").append(key);
+                String suggestion = suggestions.get(key);
+                if (suggestion != null) {
+                    builder.append(" (did you mean ").append(suggestion).append("?)");
+                }
+                builder.append('\n');
+            }
+            return builder.toString();
+        }
     }
 }
@@ -0,0 +1,526 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.jwsphere.conflex.PropertyDescriptor;
+
+/**
+ * Finds the classes on a classpath that are annotated with
+ * {@link com.jwsphere.conflex.ConflexProperty} or
+ * {@link com.jwsphere.conflex.ConflexModule}, so that the tools can be run
+ * over a whole application rather than over classes listed by hand, e.g.
+ *
+ * <pre>
+ * ConflexClasspathScanner.Result result = ConflexClasspathScanner.ofClassPath().scan();
+ * new ConflexPropertiesFileGenerator(result.loadClasses(loader)).generate(file);
+ * </pre>
+ *
+ * Directories and jars are read directly and the constant pool of each class
+ * file is searched for the descriptors of the annotations.  The annotations
+ * of the classes that name them are read by {@link ClassMetadata}, so no
+ * class is loaded during the scan and the properties found can be given to
+ * the tools as they are, e.g.
+ *
+ * <pre>
+ * ConflexPropertiesFileGenerator.forProperties(result.getProperties()).generate(file);
+ * </pre>
+ * Each directory or jar is scanned by its own task in a fork-join pool, and
+ * the class files of a large root are split into ranges of
+ * {@link #THRESHOLD} that are read in parallel.
+ *
+ * @author jonathan.wonders
+ */
+public class ConflexClasspathScanner {
+
+    /** The number of class files below which a range is not split further. */
+    static final int THRESHOLD = 256;
+
+    private final List<Path> roots;
+    private ForkJoinPool pool;
+
+    /**
+     * Constructs a scanner for the directories and jars.  Roots that do not
+     * exist are skipped, as they are by the class loader.
+     *
+     * @param roots The directories and jars to scan.
+     */
+    public ConflexClasspathScanner(Collection<Path> roots) {
+        this.roots = new ArrayList<Path>(new LinkedHashSet<Path>(roots));
+    }
+
+    /**
+     * Constructs a scanner for the directories and jars.
+     *
+     * @param roots The directories and jars to scan.
+     */
+    public ConflexClasspathScanner(Path... roots) {
+        this.roots = new ArrayList<Path>(new LinkedHashSet<Path>(Arrays.asList(roots)));
+    }
+
+    /**
+     * Returns a scanner for the elements of a classpath.
+     *
+     * @param classPath The elements separated by {@link File#pathSeparator}.
+     */
+    public static ConflexClasspathScanner of(String classPath) {
+        List<Path> roots = new ArrayList<Path>();
+        for (String element : classPath.split(File.pathSeparator)) {
+            if (!element.isEmpty()) {
+                roots.add(Paths.get(element));
+            }
+        }
+        return new ConflexClasspathScanner(roots);
+    }
+
+    /**
+     * Returns a scanner for the classpath of the running application, as
+     * given by the {@code java.class.path} system property.
+     */
+    public static ConflexClasspathScanner ofClassPath() {
+        return of(System.getProperty("java.class.path", ""));
+    }
+
+    /**
+     * Configure the scanner to scan in the pool rather than in a pool of
+     * its own with one thread per processor.
+     *
+     * @param pool The pool.
+     * @return This scanner.
+     */
+    public ConflexClasspathScanner parallel(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Scans the roots.
+     *
+     * @return The annotated classes found and the statistics of the scan.
+     * @throws IOException if a root exists but cannot be read.
+     */
+    public Result scan() throws IOException {
+        long start = System.nanoTime();
+        List<RecursiveTask<Partial>> tasks = new ArrayList<RecursiveTask<Partial>>();
+        for (Path root : roots) {
+            if (Files.isDirectory(root)) {
+                tasks.add(new DirectoryTask(root));
+            } else if (Files.isRegularFile(root)) {
+                tasks.add(new JarTask(root));
+            }
+        }
+
+        ForkJoinPool scanPool = pool == null ? new ForkJoinPool() : pool;
+        Partial total = new Partial();
+        try {
+            for (RecursiveTask<Partial> task : tasks) {
+                scanPool.execute(task);
+            }
+            for (RecursiveTask<Partial> task : tasks) {
+                total.add(task.join());
+            }
+        } catch (Failure e) {
+            throw e.getCause();
+        } finally {
+            if (pool == null) {
+                scanPool.shutdown();
+            }
+        }
+        return new Result(total, tasks.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * The result of a scan.  Class names are binary names, sorted.
+     */
+    public static final class Result {
+        private final List<ClassMetadata> metadata;
+        private final List<PropertyDescriptor> properties;
+        private final List<String> propertyClasses;
+        private final List<String> moduleClasses;
+        private final List<String> classNames;
+        private final int roots;
+        private final long classFiles;
+        private final long bytes;
+        private final long elapsed;
+
+        Result(Partial partial, int roots, long elapsed) {
+            // a class present in more than one root is read from the first
+            Map<String, ClassMetadata> classes = new TreeMap<String, ClassMetadata>();
+            for (ClassMetadata metadata : partial.classes) {
+                if (!classes.containsKey(metadata.getName())) {
+                    classes.put(metadata.getName(), metadata);
+                }
+            }
+            List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>();
+            List<String> propertyClasses = new ArrayList<String>();
+            List<String> moduleClasses = new ArrayList<String>();
+            for (ClassMetadata metadata : classes.values()) {
+                properties.addAll(metadata.getProperties());
+                if (!metadata.getProperties().isEmpty()) {
+                    propertyClasses.add(metadata.getName());
+                }
+                if (metadata.isModule()) {
+                    moduleClasses.add(metadata.getName());
+                }
+            }
+            this.metadata = Collections.unmodifiableList(new ArrayList<ClassMetadata>(classes.values()));
+            this.properties = Collections.unmodifiableList(properties);
+            this.propertyClasses = Collections.unmodifiableList(propertyClasses);
+            this.moduleClasses = Collections.unmodifiableList(moduleClasses);
+            this.classNames = Collections.unmodifiableList(new ArrayList<String>(classes.keySet()));
+            this.roots = roots;
+            this.classFiles = partial.classFiles;
+            this.bytes = partial.bytes;
+            this.elapsed = elapsed;
+        }
+
+        /**
+         * Returns the metadata of the classes that use either annotation.
+         */
+        public List<ClassMetadata> getMetadata() {
+            return metadata;
+        }
+
+        /**
+         * Returns the properties declared by the classes, grouped by class.
+         */
+        public List<PropertyDescriptor> getProperties() {
+            return properties;
+        }
+
+        /**
+         * Returns the classes that declare a member annotated with
+         * {@link com.jwsphere.conflex.ConflexProperty}.
+         */
+        public List<String> getPropertyClasses() {
+            return propertyClasses;
+        }
+
+        /**
+         * Returns the classes annotated with {@link com.jwsphere.conflex.ConflexModule}.
+         */
+        public List<String> getModuleClasses() {
+            return moduleClasses;
+        }
+
+        /**
+         * Returns the classes that use either annotation.
+         */
+        public List<String> getClassNames() {
+            return classNames;
+        }
+
+        /**
+         * Loads the classes that use either annotation without initializing them.
+         *
+         * @param loader The loader of the scanned classpath.
+         * @return The classes, which can be given to the other tools.
+         * @throws ClassNotFoundException if a class cannot be loaded by the loader.
+         */
+        public List<Class<?>> loadClasses(ClassLoader loader) throws ClassNotFoundException {
+            List<Class<?>> classes = new ArrayList<Class<?>>(classNames.size());
+            for (String name : classNames) {
+                classes.add(Class.forName(name, false, loader));
+            }
+            return classes;
+        }
+
+        /**
+         * Returns the number of directories and jars that were scanned.
+         */
+        public int getRootCount() {
+            return roots;
+        }
+
+        /**
+         * Returns the number of class files that were read.
+         */
+        public long getClassFileCount() {
+            return classFiles;
+        }
+
+        /**
+         * Returns the number of bytes of class files that were read.
+         */
+        public long getByteCount() {
+            return bytes;
+        }
+
+        public long getElapsedTime(TimeUnit unit) {
+            return unit.convert(elapsed, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(elapsed, 1) / 1e9;
+            return String.format("Scanned %d class files (%.1f MB) in %d roots in %.1f ms: "
+                    + "%.0f classes/s, %.1f MB/s, %d annotated classes",
+                    classFiles, bytes / 1e6, roots, elapsed / 1e6,
+                    classFiles / seconds, bytes / 1e6 / seconds, classNames.size());
+        }
+    }
+
+    /**
+     * The classes found and the work done by one task.
+     */
+    static final class Partial {
+        final List<ClassMetadata> classes = new ArrayList<ClassMetadata>();
+        long classFiles;
+        long bytes;
+        private byte[] buffer = new byte[8192];
+
+        void add(Partial other) {
+            classes.addAll(other.classes);
+            classFiles += other.classFiles;
+            bytes += other.bytes;
+        }
+
+        /**
+         * Reads the class file and records its name if it is annotated.
+         *
+         * @param entryName The path of the class file relative to its root.
+         * @param in The content of the class file.
+         * @param size The size of the class file if known, or -1.
+         */
+        void inspect(String entryName, InputStream in, long size) throws IOException {
+            if (size > buffer.length) {
+                buffer = new byte[(int) size];
+            }
+            int length = 0;
+            while (true) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, length * 2);
+                }
+                int n = in.read(buffer, length, buffer.length - length);
+                if (n < 0) {
+                    break;
+                }
+                length += n;
+            }
+
+            ++classFiles;
+            bytes += length;
+            if (ClassFiles.annotationMask(buffer, length) != 0) {
+                ClassMetadata metadata;
+                try {
+                    metadata = ClassMetadata.read(buffer, length);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("The class file " + entryName + " is malformed.", e);
+                }
+                if (metadata.isModule() || !metadata.getProperties().isEmpty()) {
+                    classes.add(metadata);
+                }
+            }
+        }
+    }
+
+    /**
+     * Carries an IOException out of the pool.
+     */
+    private static final class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Failure(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Returns whether the entry, relative to its root, is a class file that
+     * can declare properties.  Versioned entries of multi-release jars and
+     * module descriptors are skipped.
+     */
+    static boolean isClassFile(String name) {
+        return name.endsWith(".class") && !name.startsWith("META-INF/")
+                && !name.endsWith("module-info.class");
+    }
+
+    private static final class DirectoryTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path root;
+
+        DirectoryTask(Path root) {
+            this.root = root;
+        }
+
+        @Override
+        protected Partial compute() {
+            final List<Path> files = new ArrayList<Path>();
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (file.getFileName().toString().endsWith(".class")) {
+                            files.add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                throw new Failure(e);
+            }
+            return new FileRangeTask(root, files.toArray(new Path[files.size()]), 0, files.size()).compute();
+        }
+    }
+
+    private static final class FileRangeTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path root;
+        private final Path[] files;
+        private final int from;
+        private final int to;
+
+        FileRangeTask(Path root, Path[] files, int from, int to) {
+            this.root = root;
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                FileRangeTask right = new FileRangeTask(root, files, mid, to);
+                right.fork();
+                Partial partial = new FileRangeTask(root, files, from, mid).compute();
+                partial.add(right.join());
+                return partial;
+            }
+            Partial partial = new Partial();
+            try {
+                for (int i = from; i < to; ++i) {
+                    String name = root.relativize(files[i]).toString().replace(File.separatorChar, '/');
+                    if (!isClassFile(name)) {
+                        continue;
+                    }
+                    InputStream in = Files.newInputStream(files[i]);
+                    try {
+                        partial.inspect(name, in, Files.size(files[i]));
+                    } finally {
+                        in.close();
+                    }
+                }
+            } catch (IOException e) {
+                throw new Failure(e);
+            }
+            return partial;
+        }
+    }
+
+    private static final class JarTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path jar;
+
+        JarTask(Path jar) {
+            this.jar = jar;
+        }
+
+        @Override
+        protected Partial compute() {
+            try {
+                ZipFile zip = new ZipFile(jar.toFile());
+                try {
+                    List<ZipEntry> entries = new ArrayList<ZipEntry>();
+                    Enumeration<? extends ZipEntry> e = zip.entries();
+                    while (e.hasMoreElements()) {
+                        ZipEntry entry = e.nextElement();
+                        if (!entry.isDirectory() && isClassFile(entry.getName())) {
+                            entries.add(entry);
+                        }
+                    }
+                    ZipEntry[] array = entries.toArray(new ZipEntry[entries.size()]);
+                    return new EntryRangeTask(zip, array, 0, array.length).compute();
+                } finally {
+                    zip.close();
+                }
+            } catch (IOException e) {
+                throw new Failure(new IOException("The jar " + jar + " could not be read.", e));
+            }
+        }
+    }
+
+    private static final class EntryRangeTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final ZipFile zip;
+        private final ZipEntry[] entries;
+        private final int from;
+        private final int to;
+
+        EntryRangeTask(ZipFile zip, ZipEntry[] entries, int from, int to) {
+            this.zip = zip;
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                EntryRangeTask right = new EntryRangeTask(zip, entries, mid, to);
+                right.fork();
+                Partial partial = new EntryRangeTask(zip, entries, from, mid).compute();
+                partial.add(right.join());
+                return partial;
+            }
+            Partial partial = new Partial();
+            try {
+                for (int i = from; i < to; ++i) {
+                    InputStream in = zip.getInputStream(entries[i]);
+                    try {
+                        partial.inspect(entries[i].getName(), in, entries[i].getSize());
+                    } finally {
+                        in.close();
+                    }
+                }
+            } catch (IOException e) {
+                throw new Failure(new IOException("The jar " + zip.getName() + " could not be read.", e));
+            }
+            return partial;
+        }
+    }
+}
@@ -3,16 +3,23 @@ package com.jwsphere.conflex.tools;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
-import com.jwsphere.conflex.Conflex;
-import com.jwsphere.conflex.ConflexProperty;
+import com.jwsphere.conflex.PropertyDescriptor;
 
 public class ConflexHadoopConfigurationFileGenerator {
 
     private Collection<Class<?>> classes;
     boolean ignoreEmptyDefaults;
+    private ForkJoinPool pool;
+    private Collection<PropertyDescriptor> descriptors;
 
     /**
      * Constructs a generator for the specified classes.
@@ -38,29 +45,58 @@ public class ConflexHadoopConfigurationFileGenerator {
         this.ignoreEmptyDefaults = false;
     }
 
-    public void generate(Writer writer) throws IOException {
-        writer.append("<configuration>").append('\n');
+    /**
+     * Returns a generator for properties that were described without loading
+     * their classes, e.g. by {@link ClassMetadata} or a scan of the classpath.
+     *
+     * @param properties The properties to generate a template for.
+     */
+    public static ConflexHadoopConfigurationFileGenerator forProperties(Collection<PropertyDescriptor> properties) {
+        ConflexHadoopConfigurationFileGenerator generator =
+                new ConflexHadoopConfigurationFileGenerator(new ArrayList<Class<?>>());
+        generator.descriptors = new ArrayList<PropertyDescriptor>(properties);
+        return generator;
+    }
 
-        for (ConflexProperty property : Conflex.getAnnotatedProperties(classes)) {
+    /**
+     * Configure the generator to collect the properties of the classes in
+     * parallel in the pool.  Classes are written in the order they were
+     * given and the properties of each class in the order of their keys
+     * either way.
+     *
+     * @param pool The pool, or null to collect in the calling thread.
+     * @return This generator.
+     */
+    public ConflexHadoopConfigurationFileGenerator parallel(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
 
-            boolean includeProperty = !(ignoreEmptyDefaults && 
-                    property.defaultValue().isEmpty());
+    /**
+     * Appends the configuration to the writer, whose lifecycle is managed
+     * by the caller.  The content is buffered and written to the writer in
+     * large blocks.
+     */
+    public void generate(Writer writer) throws IOException {
+        GeneratorOutput out = new GeneratorOutput(writer);
+        generate(out);
+        out.finish();
+    }
 
-            if (includeProperty) {
-                writer.append("\t<property>").append('\n');
-                writer.append("\t\t<name>").append(property.key())
-                .append("</name>").append('\n');
-                writer.append("\t\t<value>").append(property.defaultValue())
-                .append("</value>").append('\n');
-                // write a comment with the description if it is not empty
-                if (!property.description().isEmpty()) {
-                    writer.append("\t\t<description>").append(property.description())
-                    .append("</description>").append('\n');
-                }
-                writer.append("\t</property>").append('\n');
-            }
+    /**
+     * Writes the configuration to the file as UTF-8, replacing its content.
+     * The file is written through a channel in large blocks.
+     */
+    public void generate(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            GeneratorOutput out = new GeneratorOutput(channel, StandardCharsets.UTF_8);
+            generate(out);
+            out.finish();
+        } finally {
+            channel.close();
         }
-        writer.append("</configuration>");
     }
 
     public String generate() {
@@ -68,8 +104,31 @@ public class ConflexHadoopConfigurationFileGenerator {
         try {
             generate(writer);
         } catch (IOException e) {
-            // suppressed
+            // a StringWriter does not throw
+            throw new AssertionError(e);
         }
         return writer.toString();
     }
+
+    private void generate(GeneratorOutput out) throws IOException {
+        out.append("<configuration>\n");
+        for (PropertyDescriptor property : properties()) {
+            out.append("\t<property>\n");
+            out.append("\t\t<name>").appendXml(property.getKey()).append("</name>\n");
+            out.append("\t\t<value>").appendXml(property.getDefaultValue()).append("</value>\n");
+            // write the description if it is not empty
+            if (!property.getDescription().isEmpty()) {
+                out.append("\t\t<description>").appendXml(property.getDescription()).append("</description>\n");
+            }
+            out.append("\t</property>\n");
+        }
+        out.append("</configuration>");
+    }
+
+    private List<PropertyDescriptor> properties() {
+        if (descriptors != null) {
+            return PropertyCollector.order(descriptors, ignoreEmptyDefaults);
+        }
+        return PropertyCollector.collect(classes, ignoreEmptyDefaults, pool);
+    }
 }
@@ -16,15 +16,29 @@ package com.jwsphere.conflex.tools;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
-import com.jwsphere.conflex.Conflex;
 import com.jwsphere.conflex.ConflexProperty;
+import com.jwsphere.conflex.PropertyDescriptor;
 
 /**
  * This class provides the ability to generate the content for a properties
  * file from a set of classes annotated with {@link ConflexProperty}.
+ * Keys and default values are escaped so that the file is ASCII and reads
+ * back the same values with {@link java.util.Properties#load} or
+ * {@link com.jwsphere.conflex.MappedProperties}.
+ *
+ * Classes are written in the order they were given and the properties of
+ * each class in the order of their keys, so the output is the same from one
+ * run to the next.  The properties of many classes can be collected in
+ * parallel with {@link #parallel(ForkJoinPool)}.
  * 
  * @author jonathan.wonders
  */
@@ -32,6 +46,8 @@ public class ConflexPropertiesFileGenerator {
 
     private Collection<Class<?>> classes;
     boolean ignoreEmptyDefaults;
+    private ForkJoinPool pool;
+    private Collection<PropertyDescriptor> descriptors;
 
     /**
      * Constructs a generator for the specified classes.
@@ -57,6 +73,18 @@ public class ConflexPropertiesFileGenerator {
         this.ignoreEmptyDefaults = false;
     }
 
+    /**
+     * Returns a generator for properties that were described without loading
+     * their classes, e.g. by {@link ClassMetadata} or a scan of the classpath.
+     *
+     * @param properties The properties to generate a template for.
+     */
+    public static ConflexPropertiesFileGenerator forProperties(Collection<PropertyDescriptor> properties) {
+        ConflexPropertiesFileGenerator generator = new ConflexPropertiesFileGenerator(new ArrayList<Class<?>>());
+        generator.descriptors = new ArrayList<PropertyDescriptor>(properties);
+        return generator;
+    }
+
     /**
      * Configure the generator to ignore properties that have an
      * empty string as a default value.
@@ -68,12 +96,26 @@ public class ConflexPropertiesFileGenerator {
         return this;
     }
 
+    /**
+     * Configure the generator to collect the properties of the classes in
+     * parallel in the pool.  The output is the same as when collecting them
+     * sequentially.
+     *
+     * @param pool The pool, or null to collect in the calling thread.
+     * @return This generator.
+     */
+    public ConflexPropertiesFileGenerator parallel(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
     /**
      * Generates a template of a properties file that is valid for
      * injection into the provided set of classes.  The lifecycle of
      * the writer is expected to be managed by the caller.  This method
      * will append to the writer so it is expected that the writer is
-     * in the appropriate initial state.
+     * in the appropriate initial state.  The content is buffered and
+     * written to the writer in large blocks.
      * 
      * @param writer A writer to which the properties file content is
      * appended.
@@ -81,18 +123,28 @@ public class ConflexPropertiesFileGenerator {
      * @throws IOException 
      */
     public void generate(Writer writer) throws IOException {
-        for (ConflexProperty property : Conflex.getAnnotatedProperties(classes)) {
-            boolean includeProperty = !(ignoreEmptyDefaults && 
-                    property.defaultValue().isEmpty());
+        GeneratorOutput out = new GeneratorOutput(writer);
+        generate(out);
+        out.finish();
+    }
 
-            if (includeProperty) {
-                // write a comment with the description if it is not empty
-                if (!property.description().isEmpty()) {
-                    writer.append("# ").append(property.description()).append('\n');
-                }
-                writer.append(property.key()).append("=")
-                .append(property.defaultValue()).append("\n\n");
-            }
+    /**
+     * Generates a template of a properties file into the file, replacing
+     * its content.  The file is written through a channel in large blocks
+     * and, since every character outside of ASCII is escaped, is ASCII.
+     *
+     * @param file The file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void generate(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            GeneratorOutput out = new GeneratorOutput(channel, StandardCharsets.ISO_8859_1);
+            generate(out);
+            out.finish();
+        } finally {
+            channel.close();
         }
     }
 
@@ -101,8 +153,27 @@ public class ConflexPropertiesFileGenerator {
         try {
             generate(writer);
         } catch (IOException e) {
-            // suppressed
+            // a StringWriter does not throw
+            throw new AssertionError(e);
         }
         return writer.toString();
     }
+
+    private void generate(GeneratorOutput out) throws IOException {
+        for (PropertyDescriptor property : properties()) {
+            // write a comment with the description if it is not empty
+            if (!property.getDescription().isEmpty()) {
+                out.appendComment(property.getDescription());
+            }
+            out.appendProperty(property.getKey(), true).append('=');
+            out.appendProperty(property.getDefaultValue(), false).append('\n').append('\n');
+        }
+    }
+
+    private List<PropertyDescriptor> properties() {
+        if (descriptors != null) {
+            return PropertyCollector.order(descriptors, ignoreEmptyDefaults);
+        }
+        return PropertyCollector.collect(classes, ignoreEmptyDefaults, pool);
+    }
 }
@@ -0,0 +1,170 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex.tools;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * The keys declared by a set of properties, sorted and without duplicates,
+ * indexed by a hash for exact lookups.  The sorted keys also serve as a
+ * trie for finding the closest key to a misspelled one: the keys sharing a
+ * prefix form a range, and the children of the range are the runs of keys
+ * with the same next character, which are found by binary search.  So the
+ * trie costs nothing to build.
+ *
+ * The closest key is found by walking the trie while computing the optimal
+ * string alignment distance, i.e. the edit distance that also counts the
+ * transposition of adjacent characters as one edit, one row per trie node.
+ * Keys sharing a prefix share the rows of the prefix, and a subtree is not
+ * entered once no key below it can be within the bound, so a search visits
+ * a small part of the trie rather than comparing against every key.
+ *
+ * @author jonathan.wonders
+ */
+final class DeclaredKeys {
+
+    private final String[] keys;
+    private final Map<String, Integer> positions;
+
+    DeclaredKeys(Collection<String> declared) {
+        this.keys = new LinkedHashSet<String>(declared).toArray(new String[0]);
+        Arrays.sort(keys);
+        this.positions = new HashMap<String, Integer>(keys.length * 2);
+        for (int i = 0; i < keys.length; ++i) {
+            positions.put(keys[i], i);
+        }
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    String get(int position) {
+        return keys[position];
+    }
+
+    /**
+     * Returns the position of the key among the sorted keys, or -1 if the key
+     * is not declared.
+     */
+    int indexOf(String key) {
+        Integer position = positions.get(key);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Returns the declared key closest to the given one, or null if none is
+     * within the distance.  Of equally close keys, the first in sorted order
+     * is returned.
+     */
+    String closest(String key, int maxDistance) {
+        if (maxDistance <= 0 || keys.length == 0) {
+            return null;
+        }
+        Search search = new Search(key, maxDistance);
+        int[] row = new int[key.length() + 1];
+        for (int j = 0; j < row.length; ++j) {
+            row[j] = j;
+        }
+        search.children(0, keys.length, 0, (char) 0, row, 0, null);
+        return search.best < 0 ? null : keys[search.best];
+    }
+
+    /**
+     * Returns the end of the run of keys, starting at from, whose character
+     * at the depth is the label.
+     */
+    private int runEnd(int from, int to, int depth, char label) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].charAt(depth) <= label) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private final class Search {
+        private final String target;
+        private int bound;
+        private int best = -1;
+
+        Search(String target, int maxDistance) {
+            this.target = target;
+            this.bound = maxDistance;
+        }
+
+        /**
+         * Visits the children of the node formed by the keys in the range,
+         * which share a prefix of the depth.  The first key of the range is
+         * the prefix itself, if it is declared.
+         */
+        void children(int from, int to, int depth, char c, int[] row, int rowMin, int[] parent) {
+            int i = from;
+            if (keys[i].length() == depth) {
+                ++i;
+            }
+            while (i < to) {
+                char label = keys[i].charAt(depth);
+                int end = runEnd(i + 1, to, depth, label);
+                visit(i, end, depth + 1, label, c, row, rowMin, parent);
+                if (bound < 0) {
+                    return;
+                }
+                i = end;
+            }
+        }
+
+        /**
+         * Visits the node reached by the character, given the rows of its
+         * parent and grandparent.  The recursion is as deep as the longest key.
+         */
+        private void visit(int from, int to, int depth, char c, char previous, int[] parent, int parentMin,
+                int[] grandparent) {
+            int m = target.length();
+            int[] row = new int[m + 1];
+            row[0] = parent[0] + 1;
+            int min = row[0];
+            for (int j = 1; j <= m; ++j) {
+                char t = target.charAt(j - 1);
+                int value = Math.min(Math.min(row[j - 1], parent[j]) + 1, parent[j - 1] + (t == c ? 0 : 1));
+                if (grandparent != null && j > 1 && c == target.charAt(j - 2) && previous == t) {
+                    value = Math.min(value, grandparent[j - 2] + 1);
+                }
+                row[j] = value;
+                min = Math.min(min, value);
+            }
+
+            if (keys[from].length() == depth && row[m] <= bound) {
+                // keys visited later sort after this one, so they must be closer
+                best = from;
+                bound = row[m] - 1;
+            }
+            // rows below can only undercut this one through a transposition
+            // that reaches back to the parent row
+            if (Math.min(min, parentMin + 1) > bound) {
+                return;
+            }
+            children(from, to, depth, c, row, min, parent);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * The buffer through which the generators write.  Text is escaped as it is
+ * copied into the buffer, one character at a time, so escaping allocates
+ * nothing, and the buffer is written to the underlying writer or encoded
+ * into the channel only when it is full or finished.
+ *
+ * @author jonathan.wonders
+ */
+final class GeneratorOutput {
+
+    /** The number of characters buffered before they are written. */
+    static final int SIZE = 1 << 16;
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Writer writer;
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+    private final char[] chars = new char[SIZE];
+    private int length;
+
+    /**
+     * Creates an output that writes to the writer, whose lifecycle is
+     * managed by the caller.
+     */
+    GeneratorOutput(Writer writer) {
+        this.writer = writer;
+        this.channel = null;
+        this.encoder = null;
+        this.bytes = null;
+    }
+
+    /**
+     * Creates an output that encodes to the channel, whose lifecycle is
+     * managed by the caller.  Characters that the charset cannot encode are
+     * replaced.
+     */
+    GeneratorOutput(WritableByteChannel channel, Charset charset) {
+        this.writer = null;
+        this.channel = channel;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocateDirect(SIZE);
+    }
+
+    GeneratorOutput append(char c) throws IOException {
+        if (length == SIZE) {
+            drain(false);
+        }
+        chars[length++] = c;
+        return this;
+    }
+
+    GeneratorOutput append(String text) throws IOException {
+        int offset = 0;
+        int remaining = text.length();
+        while (remaining > 0) {
+            if (length == SIZE) {
+                drain(false);
+            }
+            int n = Math.min(remaining, SIZE - length);
+            text.getChars(offset, offset + n, chars, length);
+            length += n;
+            offset += n;
+            remaining -= n;
+        }
+        return this;
+    }
+
+    /**
+     * Appends the text escaped for XML character data or attribute values.
+     */
+    GeneratorOutput appendXml(String text) throws IOException {
+        for (int i = 0, n = text.length(); i < n; ++i) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '&':
+                append("&amp;");
+                break;
+            case '<':
+                append("&lt;");
+                break;
+            case '>':
+                append("&gt;");
+                break;
+            case '"':
+                append("&quot;");
+                break;
+            case '\'':
+                append("&apos;");
+                break;
+            default:
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends the text escaped the way {@link java.util.Properties#store}
+     * does, so that the output is ASCII and reads back the same text.
+     * Spaces are escaped throughout keys but only at the start of values.
+     */
+    GeneratorOutput appendProperty(String text, boolean key) throws IOException {
+        for (int i = 0, n = text.length(); i < n; ++i) {
+            char c = text.charAt(i);
+            switch (c) {
+            case ' ':
+                if (key || i == 0) {
+                    append('\\');
+                }
+                append(' ');
+                break;
+            case '\t':
+                append('\\').append('t');
+                break;
+            case '\n':
+                append('\\').append('n');
+                break;
+            case '\r':
+                append('\\').append('r');
+                break;
+            case '\f':
+                append('\\').append('f');
+                break;
+            case '=':
+            case ':':
+            case '#':
+            case '!':
+            case '\\':
+                append('\\').append(c);
+                break;
+            default:
+                if (c < 0x20 || c > 0x7e) {
+                    appendUnicode(c);
+                } else {
+                    append(c);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends each line of the text as a properties comment, with characters
+     * outside of ASCII escaped.
+     */
+    GeneratorOutput appendComment(String text) throws IOException {
+        append('#').append(' ');
+        for (int i = 0, n = text.length(); i < n; ++i) {
+            char c = text.charAt(i);
+            if (c == '\r' || c == '\n') {
+                if (c == '\r' && i + 1 < n && text.charAt(i + 1) == '\n') {
+                    ++i;
+                }
+                append('\n').append('#').append(' ');
+            } else if (c > 0x7e) {
+                appendUnicode(c);
+            } else {
+                append(c);
+            }
+        }
+        return append('\n');
+    }
+
+    private void appendUnicode(char c) throws IOException {
+        append('\\').append('u');
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            append(HEX[(c >> shift) & 0xf]);
+        }
+    }
+
+    /**
+     * Writes whatever is buffered, and for a channel, the end of the encoding.
+     */
+    void finish() throws IOException {
+        drain(true);
+    }
+
+    private void drain(boolean end) throws IOException {
+        if (writer != null) {
+            writer.write(chars, 0, length);
+            length = 0;
+            return;
+        }
+        CharBuffer in = CharBuffer.wrap(chars, 0, length);
+        while (true) {
+            CoderResult result = encoder.encode(in, bytes, end);
+            if (result.isOverflow()) {
+                write();
+            } else {
+                break;
+            }
+        }
+        if (end) {
+            while (encoder.flush(bytes).isOverflow()) {
+                write();
+            }
+            encoder.reset();
+        }
+        write();
+        // an incomplete surrogate pair is kept for the next drain
+        int left = in.remaining();
+        System.arraycopy(chars, in.position(), chars, 0, left);
+        length = left;
+    }
+
+    private void write() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
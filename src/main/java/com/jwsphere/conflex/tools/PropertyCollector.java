@@ -0,0 +1,167 @@
+// Copyright 2013 Jonathan Wonders
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.jwsphere.conflex.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.jwsphere.conflex.PropertyDescriptor;
+
+/**
+ * Collects the properties that the tools operate on, in a deterministic
+ * order: classes in the order they were given and the properties of each
+ * class sorted by key, since the order of a class' declared members is not
+ * specified.  Given a fork-join pool, reflecting on the classes is split
+ * into ranges of {@link #THRESHOLD} classes that run in parallel; the order
+ * of the result does not depend on it.  Properties that were read from
+ * class files by {@link ClassMetadata} are put in the same order, grouped by
+ * the class that declares them.
+ *
+ * @author jonathan.wonders
+ */
+final class PropertyCollector extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of classes below which a range is not split further. */
+    static final int THRESHOLD = 64;
+
+    private static final Comparator<PropertyDescriptor> BY_KEY = new Comparator<PropertyDescriptor>() {
+        @Override
+        public int compare(PropertyDescriptor a, PropertyDescriptor b) {
+            return a.getKey().compareTo(b.getKey());
+        }
+    };
+
+    private final Class<?>[] classes;
+    private final PropertyDescriptor[][] results;
+    private final boolean ignoreEmptyDefaults;
+    private final int from;
+    private final int to;
+
+    private PropertyCollector(Class<?>[] classes, PropertyDescriptor[][] results,
+            boolean ignoreEmptyDefaults, int from, int to) {
+        this.classes = classes;
+        this.results = results;
+        this.ignoreEmptyDefaults = ignoreEmptyDefaults;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Collects the properties of the classes.
+     *
+     * @param classes The classes, of which duplicates are collected once.
+     * @param ignoreEmptyDefaults Whether to leave out properties with an empty default.
+     * @param pool The pool in which to collect in parallel, or null to collect
+     * in the calling thread.
+     * @return The properties in the order in which they are written.
+     */
+    static List<PropertyDescriptor> collect(Collection<Class<?>> classes, boolean ignoreEmptyDefaults,
+            ForkJoinPool pool) {
+        Class<?>[] unique = new LinkedHashSet<Class<?>>(classes).toArray(new Class<?>[0]);
+        PropertyDescriptor[][] results = new PropertyDescriptor[unique.length][];
+        if (pool == null) {
+            // compute() may fork, which only a worker of a pool can do
+            for (int i = 0; i < unique.length; ++i) {
+                results[i] = collect(unique[i], ignoreEmptyDefaults);
+            }
+        } else {
+            pool.invoke(new PropertyCollector(unique, results, ignoreEmptyDefaults, 0, unique.length));
+        }
+
+        List<List<PropertyDescriptor>> lists = new ArrayList<List<PropertyDescriptor>>(results.length);
+        for (PropertyDescriptor[] result : results) {
+            lists.add(Arrays.asList(result));
+        }
+        return concat(lists);
+    }
+
+    /**
+     * Puts the properties in the order in which they are written.
+     *
+     * @param properties The properties, e.g. as read from class files.
+     * @param ignoreEmptyDefaults Whether to leave out properties with an empty default.
+     * @return The properties grouped by class and sorted by key.
+     */
+    static List<PropertyDescriptor> order(Collection<PropertyDescriptor> properties, boolean ignoreEmptyDefaults) {
+        Map<String, List<PropertyDescriptor>> owners = new LinkedHashMap<String, List<PropertyDescriptor>>();
+        for (PropertyDescriptor property : properties) {
+            if (ignoreEmptyDefaults && property.getDefaultValue().isEmpty()) {
+                continue;
+            }
+            List<PropertyDescriptor> owned = owners.get(property.getOwner());
+            if (owned == null) {
+                owned = new ArrayList<PropertyDescriptor>();
+                owners.put(property.getOwner(), owned);
+            }
+            owned.add(property);
+        }
+        for (List<PropertyDescriptor> owned : owners.values()) {
+            Collections.sort(owned, BY_KEY);
+        }
+        return concat(owners.values());
+    }
+
+    /**
+     * Returns the properties of the class, sorted by key.
+     */
+    private static PropertyDescriptor[] collect(Class<?> clazz, boolean ignoreEmptyDefaults) {
+        List<PropertyDescriptor> properties = PropertyDescriptor.of(clazz);
+        if (ignoreEmptyDefaults) {
+            for (Iterator<PropertyDescriptor> i = properties.iterator(); i.hasNext();) {
+                if (i.next().getDefaultValue().isEmpty()) {
+                    i.remove();
+                }
+            }
+        }
+        Collections.sort(properties, BY_KEY);
+        return properties.toArray(new PropertyDescriptor[properties.size()]);
+    }
+
+    private static List<PropertyDescriptor> concat(Collection<List<PropertyDescriptor>> results) {
+        int size = 0;
+        for (List<PropertyDescriptor> result : results) {
+            size += result.size();
+        }
+        List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>(size);
+        for (List<PropertyDescriptor> result : results) {
+            properties.addAll(result);
+        }
+        return properties;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from > THRESHOLD) {
+            int mid = (from + to) >>> 1;
+            invokeAll(new PropertyCollector(classes, results, ignoreEmptyDefaults, from, mid),
+                    new PropertyCollector(classes, results, ignoreEmptyDefaults, mid, to));
+            return;
+        }
+        for (int i = from; i < to; ++i) {
+            results[i] = collect(classes[i], ignoreEmptyDefaults);
+        }
+    }
+}
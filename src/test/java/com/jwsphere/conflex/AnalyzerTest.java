@@ -0,0 +1,193 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.tools.ConflexAnalyzer;
+
+public class AnalyzerTest {
+
+    @Test
+    public void missingExtraAndSuggestions() {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("strin_key", "misspelled");
+        conf.put("lnog_key", "transposed");
+        conf.put("int_key", "100");
+        conf.put("float_key", "4.5");
+        conf.put("double_key", "9.5");
+        conf.put("Double_key", "9.5");
+        conf.put("custom_key", "custom_value");
+        conf.put("enum_key", "TYPE1");
+        conf.put("unrelated.setting", "x");
+
+        ConflexAnalyzer.Analysis analysis = new ConflexAnalyzer(Foo.class).analyze(conf);
+        assertEquals(Arrays.asList("long_key", "string_key"), analysis.getMissing());
+        assertEquals(Arrays.asList("lnog_key", "strin_key", "unrelated.setting"), analysis.getExtra());
+        assertEquals("string_key", analysis.getSuggestions().get("strin_key"));
+        assertEquals("long_key", analysis.getSuggestions().get("lnog_key"));
+        assertFalse(analysis.getSuggestions().containsKey("unrelated.setting"));
+        assertFalse(analysis.isComplete());
+        assertTrue(analysis.toString().contains("extra: strin_key (did you mean string_key?)"));
+    }
+
+    @Test
+    public void prefix() {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("app.string_key", "value");
+        conf.put("app.lnog_key", "10");
+        conf.put("other.long_key", "10");
+
+        ConflexAnalyzer analyzer = new ConflexAnalyzer(Foo.class).prefix("app.");
+        ConflexAnalyzer.Analysis analysis = analyzer.analyze(conf);
+        assertTrue(analysis.getMissing().contains("app.long_key"));
+        assertFalse(analysis.getMissing().contains("app.string_key"));
+        assertEquals(Arrays.asList("app.lnog_key"), analysis.getExtra());
+        assertEquals("app.long_key", analysis.getSuggestions().get("app.lnog_key"));
+        assertEquals("app.string_key", analyzer.suggest("app.string_ky"));
+        assertNull(analyzer.suggest("other.string_ky"));
+    }
+
+    @Test
+    public void boundedSuggestions() {
+        ConflexAnalyzer analyzer = ConflexAnalyzer.forProperties(Arrays.asList(
+                descriptor("server.port"), descriptor("server.host"), descriptor("a"), descriptor("ab")));
+        assertEquals("server.port", analyzer.suggest("server.prot"));
+        assertEquals("server.port", analyzer.suggest("server.pot"));
+        assertEquals("server.host", analyzer.suggest("server.hosts"));
+        assertNull(analyzer.suggest("server.address"));
+        // too short to be a misspelling of anything in particular
+        assertNull(analyzer.suggest("b"));
+        assertEquals("a", analyzer.suggest("ac"));
+        assertNull(analyzer.suggestWithin(0).suggest("server.prot"));
+        assertEquals("server.port", analyzer.suggest("server.port"));
+    }
+
+    @Test
+    public void suggestionsMatchExhaustiveSearch() {
+        Random random = new Random(42);
+        List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>();
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 2000; ++i) {
+            String key = randomKey(random);
+            keys.add(key);
+            properties.add(descriptor(key));
+        }
+        Collections.sort(keys);
+        ConflexAnalyzer analyzer = ConflexAnalyzer.forProperties(properties).suggestWithin(3);
+        for (int i = 0; i < 500; ++i) {
+            String key = mutate(keys.get(random.nextInt(keys.size())), random);
+            int bound = Math.min(3, key.length() / 2);
+            String expected = null;
+            int best = bound + 1;
+            for (String candidate : keys) {
+                int distance = distance(key, candidate);
+                if (distance < best) {
+                    best = distance;
+                    expected = candidate;
+                }
+            }
+            assertEquals(key, expected, analyzer.suggest(key));
+        }
+    }
+
+    @Test
+    public void benchmark() {
+        Random random = new Random(7);
+        List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>();
+        Map<String, String> conf = new HashMap<String, String>();
+        for (int i = 0; i < 100000; ++i) {
+            String key = "component" + (i / 100) + ".setting." + randomKey(random) + i;
+            properties.add(descriptor(key));
+            conf.put(i % 1000 == 0 ? mutate(key, random) : key, "value");
+        }
+        for (int i = 0; i < 100; ++i) {
+            conf.put("unknown." + randomKey(random), "value");
+        }
+
+        for (int run = 0; run < 3; ++run) {
+            long start = System.nanoTime();
+            ConflexAnalyzer analyzer = ConflexAnalyzer.forProperties(properties);
+            analyzer.suggest("");
+            long built = System.nanoTime();
+            ConflexAnalyzer.Analysis analysis = analyzer.analyze(conf);
+            long end = System.nanoTime();
+            assertTrue(analysis.getSuggestions().size() >= 90);
+            System.out.println((built - start) / 1000000 + "ms to index " + properties.size() + " properties, "
+                    + (end - built) / 1000000 + "ms to analyze " + conf.size() + " keys, "
+                    + analysis.getMissing().size() + " missing, "
+                    + analysis.getExtra().size() + " extra, " + analysis.getSuggestions().size() + " suggested");
+        }
+    }
+
+    private static PropertyDescriptor descriptor(String key) {
+        return new PropertyDescriptor(key, "", "", "Owner", "field", "java.lang.String", false);
+    }
+
+    private static String randomKey(Random random) {
+        StringBuilder key = new StringBuilder();
+        int length = 3 + random.nextInt(10);
+        for (int i = 0; i < length; ++i) {
+            key.append((char) ('a' + random.nextInt(6)));
+        }
+        return key.toString();
+    }
+
+    private static String mutate(String key, Random random) {
+        StringBuilder mutated = new StringBuilder(key);
+        int edits = 1 + random.nextInt(2);
+        for (int e = 0; e < edits && mutated.length() > 1; ++e) {
+            int i = random.nextInt(mutated.length() - 1);
+            switch (random.nextInt(4)) {
+            case 0:
+                mutated.deleteCharAt(i);
+                break;
+            case 1:
+                mutated.insert(i, (char) ('a' + random.nextInt(6)));
+                break;
+            case 2:
+                mutated.setCharAt(i, (char) ('a' + random.nextInt(6)));
+                break;
+            default:
+                char c = mutated.charAt(i);
+                mutated.setCharAt(i, mutated.charAt(i + 1));
+                mutated.setCharAt(i + 1, c);
+            }
+        }
+        return mutated.toString();
+    }
+
+    /**
+     * The optimal string alignment distance, computed directly.
+     */
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); ++i) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); ++j) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); ++i) {
+            for (int j = 1; j <= b.length(); ++j) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}
@@ -23,12 +23,7 @@ import java.util.Map;
  */
 public final class Bar {
 
-    private static final ThreadLocal<Conflex> conflex = new ThreadLocal<Conflex>() {
-        @Override
-        protected Conflex initialValue() {
-            return Conflex.create(Bar.class);
-        }
-    };
+    private static final Conflex conflex = Conflex.create(Bar.class);
     
     public static final String FOO_KEY = "foo";
 
@@ -41,7 +36,7 @@ public final class Bar {
     public Bar(Map<?, ?> conf, String prefix) { 
         this.dynamicStorage = new HashMap<String, String>();
         try {
-            conflex.get().prefix(prefix).inject(this, conf);
+            conflex.inject(this, conf, prefix);
         } catch (InjectionException e) {
             throw new RuntimeException(e);
         }
@@ -3,10 +3,15 @@ package com.jwsphere.conflex;
 import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
@@ -61,6 +66,80 @@ public class BarTest {
         service.awaitTermination(1, TimeUnit.SECONDS);
     }
     
+    @Test
+    public void injectMultithreadedPerformance() throws Exception {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final int iterations = 200000;
+        final Conflex conflex = Conflex.create(Bar.class);
+        final Map<String, String> conf = new HashMap<String, String>();
+        conf.put("prefix.foo", "value");
+
+        // warm up both paths before timing them
+        runConcurrently(threads, iterations, new Injection(conflex, conf, false));
+        runConcurrently(threads, iterations, new Injection(conflex, conf, true));
+
+        double ms = runConcurrently(threads, iterations, new Injection(conflex, conf, true));
+        System.out.println(ms + "ms for " + threads + " threads to inject " + iterations
+                + " Bar instances each while synchronizing on a shared instance");
+
+        ms = runConcurrently(threads, iterations, new Injection(conflex, conf, false));
+        System.out.println(ms + "ms for " + threads + " threads to inject " + iterations
+                + " Bar instances each without locking");
+    }
+
+    private static double runConcurrently(int threads, final int iterations, final Injection injection) 
+            throws Exception {
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+        long nanos = System.nanoTime();
+        for (int i = 0; i < threads; ++i) {
+            futures.add(service.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int j = 0; j < iterations; ++j) {
+                        injection.run();
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double duration = System.nanoTime() - nanos;
+        service.shutdown();
+        return duration / (1e6);
+    }
+
+    /**
+     * Injects a single Bar, optionally synchronizing on the conflex instance
+     * the way every inject call did before injection became lock-free.
+     */
+    private static class Injection implements Runnable {
+        private final Conflex conflex;
+        private final Map<String, String> conf;
+        private final boolean synchronize;
+
+        Injection(Conflex conflex, Map<String, String> conf, boolean synchronize) {
+            this.conflex = conflex;
+            this.conf = conf;
+            this.synchronize = synchronize;
+        }
+
+        @Override
+        public void run() {
+            Bar bar = new Bar(Collections.emptyMap());
+            if (synchronize) {
+                synchronized (conflex) {
+                    conflex.inject(bar, conf, "prefix.");
+                }
+            } else {
+                conflex.inject(bar, conf, "prefix.");
+            }
+            assertEquals("value", bar.getFoo());
+        }
+    }
+
     private static class Client implements Runnable {
         @Override
         public void run() {
@@ -0,0 +1,210 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.tools.ClassMetadata;
+import com.jwsphere.conflex.tools.ConflexAnalyzer;
+import com.jwsphere.conflex.tools.ConflexClasspathScanner;
+import com.jwsphere.conflex.tools.ConflexPropertiesFileGenerator;
+
+public class ClassMetadataTest {
+
+    static boolean explodingInitialized;
+
+    @Test
+    public void propertiesMatchReflection() throws Exception {
+        for (Class<?> clazz : Arrays.<Class<?>>asList(Foo.class, Bar.class, Module.class, Members.class)) {
+            ClassMetadata metadata = read(clazz.getName());
+            assertEquals(clazz.getName(), metadata.getName());
+            assertEquals(reflect(clazz), new HashSet<PropertyDescriptor>(metadata.getProperties()));
+        }
+    }
+
+    @Test
+    public void fieldsPrecedeMethods() throws Exception {
+        ClassMetadata metadata = read(Members.class.getName());
+        assertEquals(6, metadata.getProperties().size());
+        assertFalse(metadata.getProperties().get(0).isMethod());
+        assertTrue(metadata.getProperties().get(5).isMethod());
+    }
+
+    @Test
+    public void memberTypes() throws Exception {
+        Map<String, String> types = new HashMap<String, String>();
+        for (PropertyDescriptor property : read(Members.class.getName()).getProperties()) {
+            types.put(property.getKey(), property.getType());
+        }
+        assertEquals("[Ljava.lang.String;", types.get("array"));
+        assertEquals("[[I", types.get("matrix"));
+        assertEquals("com.jwsphere.conflex.ClassMetadataTest$Members", types.get("nested"));
+        assertEquals("long", types.get("setter"));
+        assertEquals("", types.get("noargs"));
+    }
+
+    @Test
+    public void module() throws Exception {
+        ClassMetadata metadata = read(Module.class.getName());
+        assertTrue(metadata.isModule());
+        assertEquals("", metadata.getModuleDescription());
+        assertEquals(Arrays.asList(Foo.class.getName(), Bar.class.getName()), metadata.getModuleRefs());
+        assertFalse(read(Foo.class.getName()).isModule());
+    }
+
+    @Test
+    public void readsStopAtTheLength() throws Exception {
+        // a reused buffer holds the rest of a larger class file past the length
+        byte[] bytes = bytes(Foo.class.getName());
+        for (int length = 10; length < bytes.length; length += 7) {
+            try {
+                ClassMetadata.read(bytes, length);
+                fail("read " + length + " of " + bytes.length + " bytes");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertEquals(Foo.class.getName(), ClassMetadata.read(bytes, bytes.length).getName());
+    }
+
+    @Test
+    public void toolsRunWithoutInitializingClasses() throws Exception {
+        ClassMetadata metadata = read(ClassMetadataTest.class.getName() + "$Exploding");
+        assertEquals(1, metadata.getProperties().size());
+        assertEquals("été 😀", metadata.getProperties().get(0).getDefaultValue());
+
+        String template = ConflexPropertiesFileGenerator.forProperties(metadata.getProperties()).generate();
+        assertTrue(template.contains("exploding.key="));
+
+        ConflexAnalyzer analyzer = ConflexAnalyzer.forProperties(metadata.getProperties());
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("other.key", "1");
+        assertEquals(Arrays.asList("exploding.key"), analyzer.findMissingProperties(conf));
+        assertEquals(new HashSet<String>(Arrays.asList("other.key")),
+                new HashSet<String>(analyzer.findExtraProperties(conf)));
+
+        ConflexClasspathScanner.Result result = ConflexClasspathScanner.ofClassPath().scan();
+        assertTrue(result.getProperties().containsAll(metadata.getProperties()));
+        assertFalse(explodingInitialized);
+    }
+
+    @Test
+    public void scannedPropertiesGenerateTheSameTemplate() throws Exception {
+        ConflexClasspathScanner.Result result = new ConflexClasspathScanner(
+                Paths.get(Foo.class.getProtectionDomain().getCodeSource().getLocation().toURI())).scan();
+        assertTrue(result.getMetadata().size() >= result.getPropertyClasses().size());
+        String scanned = ConflexPropertiesFileGenerator.forProperties(result.getProperties()).generate();
+        assertTrue(scanned.contains(new ConflexPropertiesFileGenerator(Foo.class).generate()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notAClassFile() {
+        ClassMetadata.read(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedClassFile() throws Exception {
+        byte[] bytes = bytes(Foo.class.getName());
+        ClassMetadata.read(bytes, bytes.length / 2);
+    }
+
+    private static Set<PropertyDescriptor> reflect(Class<?> clazz) {
+        Set<PropertyDescriptor> properties = new HashSet<PropertyDescriptor>();
+        for (Field field : clazz.getDeclaredFields()) {
+            if (field.isAnnotationPresent(ConflexProperty.class)) {
+                properties.add(PropertyDescriptor.of(field, field.getAnnotation(ConflexProperty.class)));
+            }
+        }
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(ConflexProperty.class)) {
+                properties.add(PropertyDescriptor.of(method, method.getAnnotation(ConflexProperty.class)));
+            }
+        }
+        return properties;
+    }
+
+    private static ClassMetadata read(String className) throws IOException {
+        return ClassMetadata.read(bytes(className));
+    }
+
+    private static byte[] bytes(String className) throws IOException {
+        InputStream in = ClassMetadataTest.class.getClassLoader()
+                .getResourceAsStream(className.replace('.', '/') + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface Tagged {
+        String name();
+        int[] values() default {};
+        Class<?> type() default Object.class;
+        TimeUnit unit() default TimeUnit.SECONDS;
+    }
+
+    @Tagged(name = "members", values = { 1, 2 }, type = String[].class)
+    static class Members {
+        @ConflexProperty(key = "array", description = "an array")
+        String[] array;
+
+        @Tagged(name = "matrix", unit = TimeUnit.DAYS)
+        @ConflexProperty(key = "matrix", defaultValue = "{}")
+        int[][] matrix;
+
+        @ConflexProperty(key = "nested")
+        Members nested;
+
+        String unannotated;
+
+        @ConflexProperty(key = "setter", defaultValue = "1")
+        void setValue(long value) {
+        }
+
+        @ConflexProperty(key = "noargs")
+        void reset() {
+        }
+
+        @ConflexProperty(key = "pair")
+        void setPair(String first, int second) {
+        }
+    }
+
+    static class Exploding {
+        static final int VALUE = explode();
+
+        @ConflexProperty(key = "exploding.key", defaultValue = "été 😀")
+        String value;
+
+        private static int explode() {
+            explodingInitialized = true;
+            throw new IllegalStateException();
+        }
+    }
+}
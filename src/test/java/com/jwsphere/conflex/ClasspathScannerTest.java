@@ -0,0 +1,110 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.tools.ConflexClasspathScanner;
+
+public class ClasspathScannerTest {
+
+    @Test
+    public void scanDirectory() throws Exception {
+        ConflexClasspathScanner.Result result = new ConflexClasspathScanner(testClasses()).scan();
+        assertTrue(result.getPropertyClasses().contains(Foo.class.getName()));
+        assertTrue(result.getPropertyClasses().contains(Bar.class.getName()));
+        assertTrue(result.getPropertyClasses().contains(Annotated.class.getName()));
+        assertTrue(result.getModuleClasses().contains(Module.class.getName()));
+        assertFalse(result.getClassNames().contains(ClasspathScannerTest.class.getName()));
+        assertFalse(result.getClassNames().contains(NotAnnotated.class.getName()));
+        assertEquals(1, result.getRootCount());
+        assertTrue(result.getClassFileCount() > result.getClassNames().size());
+
+        List<Class<?>> classes = result.loadClasses(getClass().getClassLoader());
+        assertTrue(classes.contains(Foo.class));
+    }
+
+    @Test
+    public void scanJarsLikeDirectories() throws Exception {
+        Path jar = Files.createTempFile("conflex", ".jar");
+        jar.toFile().deleteOnExit();
+        writeJar(testClasses(), jar);
+
+        ConflexClasspathScanner.Result directory = new ConflexClasspathScanner(testClasses()).scan();
+        ConflexClasspathScanner.Result archive = new ConflexClasspathScanner(jar, Paths.get("missing.jar")).scan();
+        assertEquals(directory.getPropertyClasses(), archive.getPropertyClasses());
+        assertEquals(directory.getModuleClasses(), archive.getModuleClasses());
+        assertEquals(directory.getClassFileCount(), archive.getClassFileCount());
+        assertEquals(1, archive.getRootCount());
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        Path dir = Files.createTempDirectory("conflex");
+        List<Path> jars = new ArrayList<Path>();
+        for (int i = 0; i < 100; ++i) {
+            Path jar = dir.resolve("lib" + i + ".jar");
+            writeJar(testClasses(), jar);
+            jar.toFile().deleteOnExit();
+            jars.add(jar);
+        }
+        dir.toFile().deleteOnExit();
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            for (int run = 0; run < 3; ++run) {
+                ConflexClasspathScanner.Result result = new ConflexClasspathScanner(jars).parallel(pool).scan();
+                System.out.println(result);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Path testClasses() throws Exception {
+        return Paths.get(Foo.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    private static void writeJar(final Path root, Path jar) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar));
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    String name = root.relativize(file).toString().replace('\\', '/');
+                    out.putNextEntry(new ZipEntry(name));
+                    out.write(Files.readAllBytes(file));
+                    out.closeEntry();
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            out.close();
+        }
+    }
+
+    static class Annotated {
+        @ConflexProperty(key = "scanned")
+        void setScanned(String value) {
+        }
+    }
+
+    static class NotAnnotated {
+        String field;
+    }
+}
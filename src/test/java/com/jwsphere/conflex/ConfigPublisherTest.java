@@ -0,0 +1,175 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.ConfigPublisher.Binding;
+
+public class ConfigPublisherTest {
+
+    @Test
+    public void snapshotsAreVersioned() {
+        ConfigPublisher publisher = new ConfigPublisher();
+        Binding<Pool> pool = publisher.bind(Pool.class, "pool.");
+        Binding<Client> client = publisher.bind(Client.class, "client.");
+        assertNull(publisher.current());
+        assertEquals(0, publisher.getEpoch());
+
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("pool.size", "4");
+        conf.put("client.size", "4");
+        conf.put("unrelated", "x");
+        ConfigSnapshot first = publisher.publish(ConfigSources.of(conf));
+        assertEquals(1, first.getEpoch());
+        assertEquals(4, first.get(pool).size);
+        assertEquals(4, first.get(client).size);
+        assertEquals("4", first.get("pool.size"));
+        assertNull(first.get("unrelated"));
+
+        conf.put("pool.size", "8");
+        ConfigSnapshot second = publisher.publish(ConfigSources.of(conf));
+        assertEquals(2, publisher.getEpoch());
+        assertSame(second, publisher.current());
+        assertEquals(8, second.get(pool).size);
+        assertNotSame(first.get(client), second.get(client));
+        // the previous snapshot is unchanged
+        assertEquals(4, first.get(pool).size);
+        assertEquals(2, publisher.getPublishCount());
+        assertTrue(publisher.getMaxPublishLatency(TimeUnit.NANOSECONDS) > 0);
+    }
+
+    @Test
+    public void failedPublishKeepsCurrentSnapshot() {
+        ConfigPublisher publisher = new ConfigPublisher();
+        Binding<Pool> pool = publisher.bind(Pool.class, "");
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("size", "4");
+        ConfigSnapshot snapshot = publisher.publish(ConfigSources.of(conf));
+
+        conf.put("size", "four");
+        try {
+            publisher.publish(ConfigSources.of(conf));
+            fail();
+        } catch (InjectionException e) {
+            // expected
+        }
+        assertSame(snapshot, publisher.current());
+        assertEquals(4, publisher.current().get(pool).size);
+    }
+
+    @Test
+    public void foreignBindingsAreRejected() {
+        ConfigPublisher publisher = new ConfigPublisher();
+        publisher.bind(Pool.class, "pool.");
+        ConfigSnapshot snapshot = publisher.publish(ConfigSources.of(new HashMap<String, String>()));
+
+        ConfigPublisher other = new ConfigPublisher();
+        Binding<Pool> foreign = other.bind(Pool.class, "pool.");
+        try {
+            snapshot.get(foreign);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("another publisher"));
+        }
+
+        Binding<Client> late = publisher.bind(Client.class, "client.");
+        try {
+            snapshot.get(late);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("after epoch 1"));
+        }
+        publisher.current().get(late);
+    }
+
+    @Test
+    public void lateBindingsArePublished() {
+        ConfigPublisher publisher = new ConfigPublisher();
+        publisher.bind(Pool.class, "pool.");
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("client.size", "16");
+        publisher.publish(ConfigSources.of(conf));
+
+        Binding<Client> client = publisher.bind(Client.class, "client.");
+        assertEquals(2, publisher.getEpoch());
+        assertEquals(16, publisher.current().get(client).size);
+    }
+
+    @Test
+    public void readersNeverSeeMixedEpochs() throws InterruptedException {
+        final ConfigPublisher publisher = new ConfigPublisher();
+        final Binding<Pool> pool = publisher.bind(Pool.class, "");
+        final Binding<Client> client = publisher.bind(Client.class, "");
+        publisher.publish(ConfigSources.of(Collections.singletonMap("size", "0")));
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicLong mismatches = new AtomicLong();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    ConfigSnapshot snapshot = publisher.current();
+                    if (snapshot.get(pool).size != snapshot.get(client).size
+                            || snapshot.get(pool).size != snapshot.getEpoch() - 1) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int i = 1; i <= 10000; ++i) {
+            publisher.publish(ConfigSources.of(Collections.singletonMap("size", Integer.toString(i))));
+        }
+        done.set(true);
+        reader.join();
+        assertEquals(0, mismatches.get());
+        System.out.println(publisher.getMaxPublishLatency(TimeUnit.MICROSECONDS)
+                + "us maximum latency of 10000 publishes");
+    }
+
+    @Test
+    public void reloaderPublishesChanges() throws Exception {
+        Path file = Files.createTempDirectory("conflex").resolve("pool.properties");
+        Files.write(file, Arrays.asList("size=1"), Charset.forName("ISO-8859-1"));
+        ConflexReloader reloader = new ConflexReloader(file);
+        ConfigPublisher publisher = new ConfigPublisher();
+        Binding<Pool> pool = publisher.bind(Pool.class, "");
+        reloader.publishTo(publisher);
+        assertEquals(1, publisher.current().get(pool).size);
+
+        Files.write(file, Arrays.asList("size=2"), Charset.forName("ISO-8859-1"));
+        reloader.reload();
+        assertEquals(2, publisher.getEpoch());
+        assertEquals(2, publisher.current().get(pool).size);
+
+        reloader.reload();
+        assertEquals(2, publisher.getEpoch());
+    }
+
+    static final class Pool {
+        @ConflexProperty(key = "size", defaultValue = "1")
+        int size;
+    }
+
+    static final class Client {
+        @ConflexProperty(key = "size", defaultValue = "1")
+        int size;
+    }
+}
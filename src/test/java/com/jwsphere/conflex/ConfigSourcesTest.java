@@ -0,0 +1,101 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+public class ConfigSourcesTest {
+
+    private static final Conflex conflex = Conflex.create(Endpoint.class);
+
+    @Test
+    public void mapValuesAreConverted() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("host", "example.com");
+        map.put("port", 8080);
+        ConfigSource source = ConfigSources.of(map);
+        assertEquals("example.com", source.get("host"));
+        assertEquals("8080", source.get("port"));
+        assertNull(source.get("missing"));
+    }
+
+    @Test
+    public void propertiesDefaultsAreHonored() {
+        Properties defaults = new Properties();
+        defaults.setProperty("host", "defaults.example.com");
+        defaults.setProperty("port", "8080");
+        Properties properties = new Properties(defaults);
+        properties.setProperty("host", "example.com");
+
+        Endpoint endpoint = new Endpoint();
+        conflex.inject(endpoint, ConfigSources.of(properties));
+        assertEquals("example.com", endpoint.host);
+        assertEquals(8080, endpoint.port);
+
+        // also when the properties are passed as a map
+        endpoint = new Endpoint();
+        conflex.inject(endpoint, properties);
+        assertEquals(8080, endpoint.port);
+    }
+
+    @Test
+    public void systemProperties() {
+        System.setProperty("conflex.test.port", "9090");
+        try {
+            Endpoint endpoint = new Endpoint();
+            conflex.inject(endpoint, ConfigSources.systemProperties(), "conflex.test.");
+            assertEquals("localhost", endpoint.host);
+            assertEquals(9090, endpoint.port);
+        } finally {
+            System.clearProperty("conflex.test.port");
+        }
+    }
+
+    @Test
+    public void environment() {
+        for (Map.Entry<String, String> entry : System.getenv().entrySet()) {
+            assertEquals(entry.getValue(), ConfigSources.environment().get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void firstSourceWins() {
+        Map<String, String> overrides = new HashMap<String, String>();
+        overrides.put("port", "9090");
+        Map<String, String> file = new HashMap<String, String>();
+        file.put("host", "example.com");
+        file.put("port", "8080");
+
+        Endpoint endpoint = new Endpoint();
+        conflex.inject(endpoint, ConfigSources.firstOf(ConfigSources.of(overrides), ConfigSources.of(file)));
+        assertEquals("example.com", endpoint.host);
+        assertEquals(9090, endpoint.port);
+    }
+
+    @Test
+    public void customSource() {
+        ConfigSource source = new ConfigSource() {
+            @Override
+            public String get(String key) {
+                return key.equals("port") ? "7070" : null;
+            }
+        };
+        Endpoint endpoint = new Endpoint();
+        conflex.inject(endpoint, source);
+        assertEquals("localhost", endpoint.host);
+        assertEquals(7070, endpoint.port);
+    }
+
+    static final class Endpoint {
+        @ConflexProperty(key = "host", defaultValue = "localhost")
+        String host;
+
+        @ConflexProperty(key = "port", defaultValue = "80")
+        int port;
+    }
+}
@@ -0,0 +1,158 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.Foo.CustomInjector;
+import com.jwsphere.conflex.Foo.CustomType;
+
+public class ConflexBatchTest {
+
+    private static final Conflex conflex =
+            Conflex.create(Partition.class).register(CustomType.class, new CustomInjector());
+
+    private static final ConflexPrefixFunction<Partition> BY_ID = new ConflexPrefixFunction<Partition>() {
+        @Override
+        public String prefixOf(Partition target) {
+            return "partition" + target.id + ".";
+        }
+    };
+
+    @Test
+    public void injectAllWithSharedPrefix() {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("host", "example.com");
+        conf.put("rate", "0.25");
+        conf.put("custom", "value");
+
+        List<Partition> partitions = partitions(10);
+        conflex.injectAll(partitions, conf);
+        for (Partition partition : partitions) {
+            assertEquals("example.com", partition.host);
+            assertEquals(80, partition.port);
+            assertEquals(new BigDecimal("0.25"), partition.rate);
+            assertEquals("value", partition.custom.value);
+        }
+        // parsed once and shared, while the custom injector runs per target
+        assertSame(partitions.get(0).rate, partitions.get(9).rate);
+        assertNotSame(partitions.get(0).custom, partitions.get(9).custom);
+    }
+
+    @Test
+    public void injectAllWithPrefixFunction() {
+        Map<String, String> conf = new HashMap<String, String>();
+        for (int i = 0; i < 10; ++i) {
+            conf.put("partition" + i + ".port", Integer.toString(9000 + i));
+            conf.put("partition" + i + ".rate", i < 5 ? "1.5" : "2.5");
+        }
+
+        List<Partition> partitions = partitions(10);
+        conflex.injectAll(partitions, conf, BY_ID);
+        for (int i = 0; i < 10; ++i) {
+            Partition partition = partitions.get(i);
+            assertEquals("localhost", partition.host);
+            assertEquals(9000 + i, partition.port);
+            assertEquals(new BigDecimal(i < 5 ? "1.5" : "2.5"), partition.rate);
+        }
+    }
+
+    @Test
+    public void injectAllInParallel() {
+        Map<String, String> conf = new HashMap<String, String>();
+        int count = ConflexBatch.THRESHOLD * 4 + 3;
+        for (int i = 0; i < count; ++i) {
+            conf.put("partition" + i + ".port", Integer.toString(i));
+        }
+
+        List<Partition> partitions = partitions(count);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            conflex.injectAll(partitions, conf, BY_ID, pool);
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < count; ++i) {
+            assertEquals(i, partitions.get(i).port);
+        }
+    }
+
+    @Test
+    public void injectAllReportsFailures() {
+        Map<String, String> conf = new HashMap<String, String>();
+        int count = ConflexBatch.THRESHOLD * 2;
+        conf.put("partition" + (count - 1) + ".port", "not a port");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            conflex.injectAll(partitions(count), conf, BY_ID, pool);
+            fail();
+        } catch (InjectionException e) {
+            assertEquals(NumberFormatException.class, e.getCause().getClass());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void injectAllPerformance() {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("host", "example.com");
+        conf.put("port", "8080");
+        conf.put("rate", "12345.6789");
+        conf.put("custom", "value");
+        List<Partition> partitions = partitions(100000);
+
+        for (int run = 0; run < 3; ++run) {
+            long nanos = System.nanoTime();
+            for (Partition partition : partitions) {
+                conflex.inject(partition, conf);
+            }
+            double ms = (System.nanoTime() - nanos) / (1e6);
+            System.out.println(ms + "ms to inject 100000 partitions individually");
+
+            nanos = System.nanoTime();
+            conflex.injectAll(partitions, conf);
+            ms = (System.nanoTime() - nanos) / (1e6);
+            System.out.println(ms + "ms to inject 100000 partitions as a batch");
+        }
+    }
+
+    private static List<Partition> partitions(int count) {
+        List<Partition> partitions = new ArrayList<Partition>(count);
+        for (int i = 0; i < count; ++i) {
+            partitions.add(new Partition(i));
+        }
+        return partitions;
+    }
+
+    static final class Partition {
+        final int id;
+
+        @ConflexProperty(key = "host", defaultValue = "localhost")
+        String host;
+
+        @ConflexProperty(key = "port", defaultValue = "80")
+        int port;
+
+        @ConflexProperty(key = "rate", defaultValue = "1")
+        BigDecimal rate;
+
+        @ConflexProperty(key = "custom", defaultValue = "custom_default")
+        CustomType custom;
+
+        Partition(int id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ConflexIndexTest {
+
+    @Test
+    public void processorIndexesCompiledClasses() {
+        ConflexIndex index = ConflexIndex.forClassLoader(getClass().getClassLoader());
+        assertFalse(index.isEmpty());
+        for (Class<?> clazz : Arrays.<Class<?>>asList(Foo.class, Bar.class, Indexed.class)) {
+            assertTrue(index.contains(clazz.getName()));
+            List<PropertyDescriptor> properties = index.getProperties(clazz.getName());
+            assertEquals(reflect(clazz), new HashSet<PropertyDescriptor>(properties));
+            for (int i = 1; i < properties.size(); ++i) {
+                assertFalse(properties.get(i - 1).isMethod() && !properties.get(i).isMethod());
+            }
+        }
+        assertFalse(index.contains(ConflexIndexTest.class.getName()));
+        assertTrue(index.getProperties(ConflexIndexTest.class.getName()).isEmpty());
+    }
+
+    @Test
+    public void modules() {
+        ConflexIndex index = ConflexIndex.forClassLoader(getClass().getClassLoader());
+        assertTrue(index.isModule(Module.class.getName()));
+        assertEquals("", index.getModuleDescription(Module.class.getName()));
+        assertEquals(Arrays.asList(Foo.class.getName(), Bar.class.getName()),
+                index.getModuleRefs(Module.class.getName()));
+
+        String indexed = Indexed.class.getName();
+        assertTrue(index.isModule(indexed));
+        assertEquals("an\tindexed\nmodule", index.getModuleDescription(indexed));
+        assertEquals(Arrays.asList(Module.class.getName(), Indexed.Nested.class.getName()),
+                index.getModuleRefs(indexed));
+
+        assertFalse(index.isModule(Foo.class.getName()));
+        assertNull(index.getModuleDescription(Foo.class.getName()));
+        assertTrue(index.getModuleRefs(Foo.class.getName()).isEmpty());
+    }
+
+    @Test
+    public void propertiesByKey() {
+        ConflexIndex index = ConflexIndex.forClassLoader(getClass().getClassLoader());
+        Set<String> owners = new HashSet<String>();
+        for (PropertyDescriptor property : index.getPropertiesByKey("indexed.shared")) {
+            assertEquals("indexed.shared", property.getKey());
+            owners.add(property.getOwner());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList(Indexed.class.getName(), Indexed.Nested.class.getName())),
+                owners);
+        assertTrue(index.getPropertiesByKey("indexed.missing").isEmpty());
+
+        List<PropertyDescriptor> all = index.getProperties();
+        for (int i = 1; i < all.size(); ++i) {
+            assertTrue(all.get(i - 1).getKey().compareTo(all.get(i).getKey()) <= 0);
+        }
+    }
+
+    @Test
+    public void indexedPropertiesEqualAnnotations() throws Exception {
+        ConflexIndex index = ConflexIndex.forClassLoader(getClass().getClassLoader());
+        for (PropertyDescriptor descriptor : index.getProperties(Indexed.class.getName())) {
+            ConflexProperty annotation = descriptor.isMethod()
+                    ? Indexed.class.getDeclaredMethod(descriptor.getMember(), String.class)
+                            .getAnnotation(ConflexProperty.class)
+                    : Indexed.class.getDeclaredField(descriptor.getMember()).getAnnotation(ConflexProperty.class);
+            ConflexProperty indexed = new IndexedProperty(descriptor);
+            assertEquals(annotation, indexed);
+            assertEquals(indexed, annotation);
+            assertEquals(annotation.hashCode(), indexed.hashCode());
+        }
+    }
+
+    @Test
+    public void referencedPropertiesMatchReflection() {
+        Set<ConflexProperty> expected = new HashSet<ConflexProperty>();
+        for (Class<?> clazz : Arrays.<Class<?>>asList(Indexed.class, Indexed.Nested.class, Module.class,
+                Foo.class, Bar.class)) {
+            expected.addAll(reflectAnnotations(clazz));
+        }
+        assertEquals(expected, Conflex.getReferencedProperties(Indexed.class));
+        assertEquals(reflectAnnotations(Foo.class),
+                new HashSet<ConflexProperty>(Conflex.getAnnotatedProperties(Foo.class)));
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        ConflexIndex index = ConflexIndex.builder()
+                .add(new PropertyDescriptor("b.key", "tab\tand\nnewline", "back\\slash", "x.B", "b", "int", false))
+                .add(new PropertyDescriptor("a.key", "", "", "x.B", "setA", "java.lang.String", true))
+                .add(new PropertyDescriptor("a.key", "été", "", "x.A", "a", "java.lang.String", false))
+                .addModule("x.M", "", Arrays.asList("x.A", "x.B"))
+                .build();
+        StringWriter writer = new StringWriter();
+        index.write(writer);
+        ConflexIndex read = ConflexIndex.read(
+                new ByteArrayInputStream(writer.toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(index.getProperties(), read.getProperties());
+        assertEquals(Arrays.asList("x.A", "x.B", "x.M"), read.getClasses());
+        assertEquals("b.key", read.getProperties("x.B").get(0).getKey());
+        assertEquals("tab\tand\nnewline", read.getProperties("x.B").get(0).getDescription());
+        assertEquals("back\\slash", read.getProperties("x.B").get(0).getDefaultValue());
+        assertEquals(2, read.getPropertiesByKey("a.key").size());
+        assertEquals("x.A", read.getPropertiesByKey("a.key").get(0).getOwner());
+        assertEquals(Arrays.asList("x.A", "x.B"), read.getModuleRefs("x.M"));
+        assertTrue(read.getProperties("x.M").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notAnIndex() throws Exception {
+        ConflexIndex.read(new ByteArrayInputStream("key=value\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        ConflexIndex.Builder builder = ConflexIndex.builder();
+        for (int i = 0; i < 100000; ++i) {
+            builder.add(new PropertyDescriptor("key." + i, "description " + i, Integer.toString(i),
+                    "com.example.Owner" + (i / 10), "field" + (i % 10), "int", false));
+        }
+        StringWriter writer = new StringWriter();
+        builder.build().write(writer);
+        byte[] content = writer.toString().getBytes(StandardCharsets.UTF_8);
+
+        for (int run = 0; run < 3; ++run) {
+            long start = System.nanoTime();
+            ConflexIndex index = ConflexIndex.read(new ByteArrayInputStream(content));
+            long read = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < 100000; ++i) {
+                found += index.getPropertiesByKey("key." + i).size();
+                found += index.getProperties("com.example.Owner" + (i / 10)).isEmpty() ? 0 : 1;
+            }
+            long end = System.nanoTime();
+            assertEquals(200000, found);
+            System.out.println("read " + content.length + " bytes in " + (read - start) / 1000000
+                    + "ms, 200000 lookups in " + (end - read) / 1000000 + "ms");
+        }
+    }
+
+    private static Set<PropertyDescriptor> reflect(Class<?> clazz) {
+        Set<PropertyDescriptor> properties = new HashSet<PropertyDescriptor>();
+        for (Field field : clazz.getDeclaredFields()) {
+            if (field.isAnnotationPresent(ConflexProperty.class)) {
+                properties.add(PropertyDescriptor.of(field, field.getAnnotation(ConflexProperty.class)));
+            }
+        }
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(ConflexProperty.class)) {
+                properties.add(PropertyDescriptor.of(method, method.getAnnotation(ConflexProperty.class)));
+            }
+        }
+        return properties;
+    }
+
+    private static Set<ConflexProperty> reflectAnnotations(Class<?> clazz) {
+        Set<ConflexProperty> annotations = new HashSet<ConflexProperty>();
+        for (Field field : clazz.getDeclaredFields()) {
+            if (field.isAnnotationPresent(ConflexProperty.class)) {
+                annotations.add(field.getAnnotation(ConflexProperty.class));
+            }
+        }
+        for (Method method : clazz.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(ConflexProperty.class)) {
+                annotations.add(method.getAnnotation(ConflexProperty.class));
+            }
+        }
+        return annotations;
+    }
+
+    @ConflexModule(description = "an\tindexed\nmodule", refs = { Module.class, Indexed.Nested.class })
+    static class Indexed {
+        @ConflexProperty(key = "indexed.shared", description = "shared", defaultValue = "1")
+        int shared;
+
+        @ConflexProperty(key = "indexed.name", defaultValue = "a\\b")
+        void setName(String name) {
+        }
+
+        static class Nested {
+            @ConflexProperty(key = "indexed.shared")
+            String shared;
+        }
+    }
+}
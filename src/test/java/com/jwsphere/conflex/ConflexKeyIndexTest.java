@@ -0,0 +1,88 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ConflexKeyIndexTest {
+
+    private static final Conflex conflex = Conflex.create(Shard.class);
+
+    @Test
+    public void changedKeysAreInjectedIntoDependents() {
+        ConflexKeyIndex index = new ConflexKeyIndex();
+        Shard a = new Shard();
+        Shard b = new Shard();
+        index.register(conflex, a, "a.");
+        index.register(conflex, b, "b.");
+        assertEquals(4, index.getKeyCount());
+        assertEquals(2, index.getTargetCount());
+        assertEquals(4, index.getDependentCount());
+        assertTrue(index.getEstimatedFootprint() > 0);
+
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("b.size", "42");
+        assertEquals(1, index.inject(Arrays.asList("b.size", "c.size"), ConfigSources.of(conf)));
+        assertEquals(0, a.size);
+        assertEquals(42, b.size);
+        assertEquals(null, b.name);
+
+        assertTrue(index.unregister(b));
+        assertFalse(index.unregister(b));
+        assertFalse(index.isConsumed("b.size"));
+        assertTrue(index.isConsumed("a.size"));
+        assertEquals(2, index.getKeyCount());
+    }
+
+    @Test
+    public void sharedKeysAreInjectedIntoEveryTarget() {
+        ConflexKeyIndex index = new ConflexKeyIndex();
+        List<Shard> shards = new ArrayList<Shard>();
+        for (int i = 0; i < 100; ++i) {
+            Shard shard = new Shard();
+            index.register(conflex, shard, "");
+            shards.add(shard);
+        }
+        assertEquals(2, index.getKeyCount());
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("name", "shared");
+        assertEquals(100, index.inject(Collections.singleton("name"), ConfigSources.of(conf)));
+        for (Shard shard : shards) {
+            assertEquals("shared", shard.name);
+        }
+    }
+
+    @Test
+    public void collectedTargetsAreRemoved() throws InterruptedException {
+        ConflexKeyIndex index = new ConflexKeyIndex();
+        Shard kept = new Shard();
+        index.register(conflex, kept, "kept.");
+        for (int i = 0; i < 1000; ++i) {
+            index.register(conflex, new Shard(), "shard" + i + ".");
+        }
+        for (int attempt = 0; attempt < 50 && index.getTargetCount() > 1; ++attempt) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, index.getTargetCount());
+        assertEquals(2, index.getKeyCount());
+        assertTrue(index.isConsumed("kept.size"));
+    }
+
+    static final class Shard {
+        @ConflexProperty(key = "name")
+        String name;
+
+        @ConflexProperty(key = "size", defaultValue = "0")
+        int size;
+    }
+}
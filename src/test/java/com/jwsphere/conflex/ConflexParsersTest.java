@@ -0,0 +1,159 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ConflexParsersTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void integersFollowLongDecode() {
+        String[] values = { "0", "7", "-7", "+7", "42", "0x2A", "0X2a", "#2a", "-0x2A", "052", "-052", "00",
+                "9223372036854775807", "-9223372036854775808", "0x7fffffffffffffff", "-0x8000000000000000",
+                "0777777777777777777777" };
+        for (String value : values) {
+            assertEquals(value, Long.decode(value).longValue(), ConflexParsers.parseLong(value));
+        }
+        assertEquals(Integer.MAX_VALUE, ConflexParsers.parseInt("2147483647"));
+        assertEquals(Integer.MIN_VALUE, ConflexParsers.parseInt("-2147483648"));
+        assertEquals(Integer.MIN_VALUE, ConflexParsers.parseInt("-0x80000000"));
+    }
+
+    @Test
+    public void whitespaceAndUnderscoresAreAccepted() {
+        assertEquals(1000000, ConflexParsers.parseInt("  1_000_000\t"));
+        assertEquals(0xCAFEBABEL, ConflexParsers.parseLong("0xCAFE_BABE"));
+        assertEquals(-15, ConflexParsers.parseInt(" -017 "));
+        assertEquals(1000.5, ConflexParsers.parseDouble(" 1_000.5 "), 0.0);
+        assertEquals(2.5f, ConflexParsers.parseFloat("\n2.5\n"), 0.0f);
+    }
+
+    @Test
+    public void invalidIntegersAreRejected() {
+        String[] values = { "", " ", "-", "+", "0x", "#", "1__0", "_1", "1_", "1.0", "12a", "08", "0x1g",
+                "- 1", "2147483648", "-2147483649", "1e3" };
+        for (String value : values) {
+            try {
+                ConflexParsers.parseInt(value);
+                fail(value);
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+        try {
+            ConflexParsers.parseLong("9223372036854775808");
+            fail();
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rangesOfBytesAndCharacters() {
+        String line = "port=8080;ratio=0.75";
+        byte[] bytes = line.getBytes(ASCII);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertEquals(8080, ConflexParsers.parseInt(line, 5, 9));
+        assertEquals(8080, ConflexParsers.parseInt(bytes, 5, 9));
+        assertEquals(8080L, ConflexParsers.parseLong(buffer, 5, 9));
+        assertEquals(0.75, ConflexParsers.parseDouble(bytes, 16, 20), 0.0);
+        assertEquals(0.75, ConflexParsers.parseDouble(buffer, 16, 20), 0.0);
+        assertEquals(0.75f, ConflexParsers.parseFloat(new StringBuilder(line), 16, 20), 0.0f);
+    }
+
+    @Test
+    public void doublesMatchDoubleParseDouble() {
+        String[] values = { "0", "-0", "0.0", "-0.0", "1", "1.5", "-1.5", ".5", "5.", "1e10", "1E-5", "1.25e+3",
+                "0.001", "123456.789", "3.141592653589793", "1e22", "1e23", "1e-22", "1e-23", "1e400", "1e-400",
+                "123456789012345678", "0.1", "0.3", "NaN", "-Infinity", "0x1p3", "1.5d", "1e08" };
+        for (String value : values) {
+            assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)),
+                    Double.doubleToLongBits(ConflexParsers.parseDouble(value)));
+            assertEquals(value, Float.floatToIntBits(Float.parseFloat(value)),
+                    Float.floatToIntBits(ConflexParsers.parseFloat(value)));
+        }
+
+        Random random = new Random(17);
+        for (int i = 0; i < 100000; ++i) {
+            String value = i % 2 == 0 ? Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20))
+                    : (random.nextInt(2000000) - 1000000) + "." + random.nextInt(1000);
+            assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)),
+                    Double.doubleToLongBits(ConflexParsers.parseDouble(value)));
+            assertEquals(value, Float.floatToIntBits(Float.parseFloat(value)),
+                    Float.floatToIntBits(ConflexParsers.parseFloat(value)));
+        }
+    }
+
+    @Test
+    public void parsePerformance() {
+        String[] ints = new String[1024];
+        String[] doubles = new String[1024];
+        Random random = new Random(17);
+        for (int i = 0; i < ints.length; ++i) {
+            ints[i] = Integer.toString(random.nextInt());
+            doubles[i] = random.nextInt(100000) + "." + random.nextInt(1000);
+        }
+        byte[][] intBytes = new byte[ints.length][];
+        for (int i = 0; i < ints.length; ++i) {
+            intBytes[i] = ints[i].getBytes(ASCII);
+        }
+
+        for (int run = 0; run < 3; ++run) {
+            long sum = 0;
+            long nanos = System.nanoTime();
+            for (int i = 0; i < 10000000; ++i) {
+                sum += Integer.parseInt(ints[i & 1023]);
+            }
+            report("Integer.parseInt", nanos, sum);
+
+            sum = 0;
+            nanos = System.nanoTime();
+            for (int i = 0; i < 10000000; ++i) {
+                sum += ConflexParsers.parseInt(ints[i & 1023]);
+            }
+            report("ConflexParsers.parseInt", nanos, sum);
+
+            sum = 0;
+            nanos = System.nanoTime();
+            for (int i = 0; i < 10000000; ++i) {
+                byte[] bytes = intBytes[i & 1023];
+                sum += Integer.parseInt(new String(bytes, ASCII));
+            }
+            report("Integer.parseInt of decoded bytes", nanos, sum);
+
+            sum = 0;
+            nanos = System.nanoTime();
+            for (int i = 0; i < 10000000; ++i) {
+                byte[] bytes = intBytes[i & 1023];
+                sum += ConflexParsers.parseInt(bytes, 0, bytes.length);
+            }
+            report("ConflexParsers.parseInt of bytes", nanos, sum);
+
+            double total = 0;
+            nanos = System.nanoTime();
+            for (int i = 0; i < 10000000; ++i) {
+                total += Double.parseDouble(doubles[i & 1023]);
+            }
+            report("Double.parseDouble", nanos, (long) total);
+
+            total = 0;
+            nanos = System.nanoTime();
+            for (int i = 0; i < 10000000; ++i) {
+                total += ConflexParsers.parseDouble(doubles[i & 1023]);
+            }
+            report("ConflexParsers.parseDouble", nanos, (long) total);
+        }
+    }
+
+    private static void report(String what, long nanos, long sum) {
+        double ms = (System.nanoTime() - nanos) / (1e6);
+        System.out.println(ms + "ms for 10000000 calls of " + what + " (" + sum + ")");
+    }
+}
@@ -0,0 +1,342 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.Foo.CustomInjector;
+import com.jwsphere.conflex.Foo.CustomType;
+
+public class ConflexPlanTest {
+
+    @Test
+    public void plansAreSharedForEqualRegistries() {
+        Map<Class<?>, ConflexInjector> injectors = new HashMap<Class<?>, ConflexInjector>();
+        CustomInjector injector = new CustomInjector();
+        injectors.put(CustomType.class, injector);
+
+        ConflexPlan first = ConflexPlan.get(Foo.class, injectors);
+        ConflexPlan second = ConflexPlan.get(Foo.class, new HashMap<Class<?>, ConflexInjector>(injectors));
+        assertSame(first, second);
+        assertEquals(1, first.getProperties().size());
+    }
+
+    @Test
+    public void plansAreDistinctForDifferentRegistries() {
+        Map<Class<?>, ConflexInjector> injectors = new HashMap<Class<?>, ConflexInjector>();
+        ConflexPlan empty = ConflexPlan.get(Foo.class, injectors);
+        injectors = new HashMap<Class<?>, ConflexInjector>();
+        injectors.put(CustomType.class, new CustomInjector());
+        ConflexPlan custom = ConflexPlan.get(Foo.class, injectors);
+        assertNotSame(empty, custom);
+        assertEquals(0, empty.getProperties().size());
+    }
+
+    @Test
+    public void plansAreBoundedForNewInjectorInstances() {
+        Map<Class<?>, ConflexInjector> first = registry();
+        ConflexPlan evicted = ConflexPlan.get(Foo.class, first);
+        Map<Class<?>, ConflexInjector> last = null;
+        for (int i = 0; i < 10 * ConflexPlan.MAX_PLANS; ++i) {
+            last = registry();
+            ConflexPlan.get(Foo.class, last);
+            assertTrue(ConflexPlan.getCachedPlanCount(Foo.class) <= ConflexPlan.MAX_PLANS);
+        }
+        assertSame(ConflexPlan.get(Foo.class, last),
+                ConflexPlan.get(Foo.class, new HashMap<Class<?>, ConflexInjector>(last)));
+        ConflexPlan resolved = ConflexPlan.get(Foo.class, first);
+        assertNotSame(evicted, resolved);
+        assertEquals(evicted.getProperties().size(), resolved.getProperties().size());
+    }
+
+    @Test
+    public void injectPrimitiveSetter() {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("port", "8080");
+        conf.put("enabled", "true");
+
+        Client client = new Client();
+        Conflex.create(Client.class).inject(client, conf);
+        assertEquals(8080, client.port);
+        assertEquals(true, client.enabled);
+    }
+
+    @Test
+    public void injectPrimitiveSetterReflectively() throws Exception {
+        Client client = new Client();
+        new StandardInjectors.PrimitiveInteger().inject(client,
+                Client.class.getDeclaredMethod("setPort", int.class), "8080");
+        new StandardInjectors.PrimitiveBoolean().inject(client,
+                Client.class.getDeclaredMethod("setEnabled", boolean.class), "true");
+        assertEquals(8080, client.port);
+        assertEquals(true, client.enabled);
+    }
+
+    @Test
+    public void leadingZerosAreDecimal() throws Exception {
+        Map<String, String> conf = new HashMap<String, String>();
+        Client client = new Client();
+        for (String value : new String[] { "010", "08" }) {
+            conf.put("port", value);
+            Conflex.create(Client.class).inject(client, conf);
+            assertEquals(Integer.parseInt(value), client.port);
+
+            new StandardInjectors.PrimitiveInteger().inject(client,
+                    Client.class.getDeclaredMethod("setPort", int.class), value);
+            assertEquals(Integer.parseInt(value), client.port);
+        }
+    }
+
+    @Test
+    public void subclassesOfStandardInjectorsAreInvoked() {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("port", "8k");
+        Client client = new Client();
+        Conflex.create(Client.class).register(int.class, new KiloInjector()).inject(client, conf);
+        assertEquals(8000, client.port);
+
+        Limits limits = new Limits();
+        conf.put("max", "2k");
+        Conflex.create(Limits.class).register(int.class, new KiloInjector()).inject(limits, conf);
+        assertEquals(2000, limits.max);
+    }
+
+    @Test(expected = InjectionException.class)
+    public void injectUnparseableValue() {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("port", "eighty");
+        Conflex.create(Client.class).inject(new Client(), conf);
+    }
+
+    @Test
+    public void defaultsAreParsedOnce() {
+        Conflex conflex = Conflex.create(Limits.class);
+        Limits first = new Limits();
+        Limits second = new Limits();
+        conflex.inject(first, new HashMap<String, String>());
+        conflex.inject(second, new HashMap<String, String>());
+        assertEquals(new BigDecimal("0.75"), first.ratio);
+        assertSame(first.ratio, second.ratio);
+        assertEquals(100, first.max);
+    }
+
+    @Test(expected = InjectionException.class)
+    public void invalidDefaultsAreReportedOnFirstInjection() {
+        Conflex conflex = Conflex.create(InvalidDefault.class);
+        conflex.inject(new InvalidDefault(), new HashMap<String, String>());
+    }
+
+    @Test
+    public void defaultsAreParsedByInjectorsRegisteredAfterCreate() {
+        Conflex conflex = Conflex.create(InvalidDefault.class).register(int.class, new KiloInjector());
+        InvalidDefault target = new InvalidDefault();
+        conflex.inject(target, new HashMap<String, String>());
+        assertEquals(100000, target.max);
+    }
+
+    @Test
+    public void compiledAndReflectivePlansAgree() {
+        Map<Class<?>, ConflexInjector> injectors = new HashMap<Class<?>, ConflexInjector>();
+        injectors.put(String.class, new StandardInjectors.StringInjector());
+        injectors.put(int.class, new StandardInjectors.PrimitiveInteger());
+        String[] values = { "localhost", "8080" };
+
+        ConflexPlan compiled = ConflexPlan.resolve(Server.class, injectors, true);
+        ConflexPlan reflective = ConflexPlan.resolve(Server.class, injectors, false);
+        assertTrue(compiled.isCompiled());
+        assertFalse(reflective.isCompiled());
+
+        Server first = new Server();
+        Server second = new Server();
+        compiled.inject(first, values);
+        reflective.inject(second, values);
+        assertEquals(first.host, second.host);
+        assertEquals(first.port, second.port);
+    }
+
+    @Test
+    public void compiledPerformance() {
+        Map<Class<?>, ConflexInjector> injectors = new HashMap<Class<?>, ConflexInjector>();
+        injectors.put(String.class, new StandardInjectors.StringInjector());
+        injectors.put(int.class, new StandardInjectors.PrimitiveInteger());
+        String[] values = { "localhost", "8080" };
+
+        ConflexPlan[] plans = {
+            ConflexPlan.resolve(Server.class, injectors, false),
+            ConflexPlan.resolve(Server.class, injectors, true)
+        };
+        for (ConflexPlan plan : plans) {
+            for (int i = 0; i < 100000; ++i) {
+                plan.inject(new Server(), values);
+            }
+            long nanos = System.nanoTime();
+            for (int i = 0; i < 1000000; ++i) {
+                plan.inject(new Server(), values);
+            }
+            double duration = System.nanoTime() - nanos;
+            double ms = duration / (1e6);
+            System.out.println(ms + "ms to inject Server 1000000 times with "
+                    + (plan.isCompiled() ? "a compiled" : "a per-property") + " plan");
+        }
+    }
+
+    @Test
+    public void createPerformance() {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("host", "localhost");
+        conf.put("port", "8080");
+
+        long nanos = System.nanoTime();
+        for (int i = 0; i < 100000; ++i) {
+            Conflex.create(Server.class).inject(new Server(), conf);
+        }
+        double duration = System.nanoTime() - nanos;
+        double ms = duration / (1e6);
+        System.out.println(ms + "ms to create 100000 Conflex instances and inject Server");
+
+        Conflex conflex = Conflex.create(Server.class);
+        nanos = System.nanoTime();
+        for (int i = 0; i < 100000; ++i) {
+            conflex.inject(new Server(), conf);
+        }
+        duration = System.nanoTime() - nanos;
+        ms = duration / (1e6);
+        System.out.println(ms + "ms to inject Server 100000 times with a single Conflex instance");
+    }
+
+    @Test
+    public void prefixedKeysAreCached() {
+        ConflexPlan plan = serverPlan();
+        String[] keys = plan.getKeys("tenant.");
+        assertEquals("tenant.host", keys[0]);
+        assertEquals("tenant.port", keys[1]);
+        assertSame(keys, plan.getKeys("tenant."));
+        assertSame(keys, plan.getKeys(new String("tenant.")));
+        assertSame(plan.getKeys(""), plan.getKeys(null));
+        assertEquals("host", plan.getKeys("")[0]);
+    }
+
+    @Test
+    public void prefixedKeysAreBounded() {
+        ConflexPlan plan = serverPlan();
+        String[] first = plan.getKeys("tenant0.");
+        for (int i = 1; i <= ConflexPlan.MAX_PREFIXES; ++i) {
+            plan.getKeys("tenant" + i + ".");
+        }
+        // some prefix was evicted, but the keys are rebuilt when needed
+        String[] again = plan.getKeys("tenant0.");
+        assertEquals(first[0], again[0]);
+    }
+
+    @Test
+    public void injectWithPrefixPerformance() {
+        Map<String, String> conf = new HashMap<String, String>();
+        for (int i = 0; i < 16; ++i) {
+            conf.put("tenant" + i + ".host", "host" + i);
+            conf.put("tenant" + i + ".port", Integer.toString(8000 + i));
+        }
+        String[] prefixes = new String[16];
+        for (int i = 0; i < prefixes.length; ++i) {
+            prefixes[i] = "tenant" + i + ".";
+        }
+
+        Conflex conflex = Conflex.create(Server.class);
+        Server server = new Server();
+        conflex.inject(server, conf, prefixes[3]);
+        assertEquals("host3", server.host);
+        assertEquals(8003, server.port);
+
+        long nanos = System.nanoTime();
+        for (int i = 0; i < 1000000; ++i) {
+            conflex.inject(server, conf, prefixes[i & 15]);
+        }
+        double duration = System.nanoTime() - nanos;
+        double ms = duration / (1e6);
+        System.out.println(ms + "ms to inject Server 1000000 times with 16 rotating prefixes");
+    }
+
+    /**
+     * Accepts a "k" suffix by overriding how values are injected rather than
+     * the parser it inherits.
+     */
+    static final class KiloInjector extends StandardInjectors.PrimitiveInteger {
+        @Override
+        protected void parseAndInject(Object target, Field field, String value) throws IllegalAccessException {
+            field.setInt(target, parse(value));
+        }
+
+        @Override
+        protected void parseAndInject(Object target, Method method, String value)
+                throws ReflectiveOperationException {
+            method.invoke(target, parse(value));
+        }
+
+        private static int parse(String value) {
+            return value.endsWith("k") ? 1000 * Integer.parseInt(value.substring(0, value.length() - 1))
+                    : Integer.parseInt(value);
+        }
+    }
+
+    private static Map<Class<?>, ConflexInjector> registry() {
+        Map<Class<?>, ConflexInjector> injectors = new HashMap<Class<?>, ConflexInjector>();
+        injectors.put(CustomType.class, new CustomInjector());
+        return injectors;
+    }
+
+    private static ConflexPlan serverPlan() {
+        Map<Class<?>, ConflexInjector> injectors = new HashMap<Class<?>, ConflexInjector>();
+        injectors.put(String.class, new StandardInjectors.StringInjector());
+        injectors.put(int.class, new StandardInjectors.PrimitiveInteger());
+        return ConflexPlan.get(Server.class, injectors);
+    }
+
+    private static final class Client {
+        private int port;
+        private boolean enabled;
+
+        @ConflexProperty(key = "port", defaultValue = "80")
+        private void setPort(int port) {
+            this.port = port;
+        }
+
+        @ConflexProperty(key = "enabled", defaultValue = "false")
+        private Client setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+    }
+
+    private static final class Limits {
+        @ConflexProperty(key = "ratio", defaultValue = "0.75")
+        BigDecimal ratio;
+
+        @ConflexProperty(key = "max", defaultValue = "100")
+        int max;
+    }
+
+    /**
+     * Has a default that only a {@link KiloInjector} can parse.
+     */
+    private static final class InvalidDefault {
+        @ConflexProperty(key = "max", defaultValue = "100k")
+        int max;
+    }
+
+    private static final class Server {
+        @ConflexProperty(key = "host", defaultValue = "0.0.0.0")
+        String host;
+
+        @ConflexProperty(key = "port", defaultValue = "80")
+        int port;
+    }
+}
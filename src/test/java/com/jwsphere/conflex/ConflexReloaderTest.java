@@ -0,0 +1,140 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConflexReloaderTest {
+
+    private static final Conflex conflex = Conflex.create(Service.class);
+
+    @Test
+    public void onlyChangedPropertiesAreReinjected() throws Exception {
+        Path file = write(null, "host=example.com", "port=8080");
+        ConflexReloader reloader = new ConflexReloader(file);
+        Service service = new Service();
+        reloader.register(conflex, service);
+        assertEquals("example.com", service.host);
+        assertEquals(8080, service.port);
+        assertEquals(1, service.hostInjections);
+        assertEquals(1, service.portInjections);
+
+        write(file, "host=example.com", "port=9090");
+        assertEquals(new HashSet<String>(Arrays.asList("port")), reloader.reload());
+        assertEquals(9090, service.port);
+        assertEquals(1, service.hostInjections);
+        assertEquals(2, service.portInjections);
+
+        // a removed key injects the default
+        write(file, "port=9090");
+        reloader.reload();
+        assertEquals("localhost", service.host);
+        assertEquals(2, service.hostInjections);
+        assertEquals(2, service.portInjections);
+    }
+
+    @Test
+    public void prefixedTargets() throws Exception {
+        Path file = write(null, "a.port=1", "b.port=2");
+        ConflexReloader reloader = new ConflexReloader(file);
+        Service a = new Service();
+        Service b = new Service();
+        reloader.register(conflex, a, "a.");
+        reloader.register(conflex, b, "b.");
+
+        write(file, "a.port=1", "b.port=3");
+        reloader.reload();
+        assertEquals(1, a.port);
+        assertEquals(3, b.port);
+        assertEquals(1, a.portInjections);
+        assertEquals(2, b.portInjections);
+
+        assertTrue(reloader.unregister(b));
+        write(file, "a.port=1", "b.port=4");
+        reloader.reload();
+        assertEquals(3, b.port);
+    }
+
+    @Test
+    public void editsAreDebouncedAndApplied() throws Exception {
+        Path file = write(null, "port=1");
+        ConflexReloader reloader = new ConflexReloader(file, 50, TimeUnit.MILLISECONDS);
+        Service service = new Service();
+        reloader.register(conflex, service);
+        reloader.start();
+        try {
+            for (int i = 2; i <= 5; ++i) {
+                write(file, "port=" + i);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (service.port != 5 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(5, service.port);
+        } finally {
+            reloader.close();
+        }
+    }
+
+    @Test
+    public void watchingSurvivesMalformedFiles() throws Exception {
+        Path file = write(null, "port=1");
+        ConflexReloader reloader = new ConflexReloader(file, 50, TimeUnit.MILLISECONDS);
+        Service service = new Service();
+        reloader.register(conflex, service);
+        reloader.start();
+        try {
+            write(file, "port=\\u00zz");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (reloader.getLastFailure() == null && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(reloader.getLastFailure() instanceof IllegalArgumentException);
+            assertEquals(1, service.port);
+
+            write(file, "port=2");
+            while (service.port != 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, service.port);
+        } finally {
+            reloader.close();
+        }
+    }
+
+    private static Path write(Path file, String... lines) throws IOException {
+        if (file == null) {
+            file = Files.createTempDirectory("conflex").resolve("service.properties");
+        }
+        Files.write(file, Arrays.asList(lines), Charset.forName("ISO-8859-1"));
+        return file;
+    }
+
+    static final class Service {
+        volatile String host;
+        volatile int port;
+        int hostInjections;
+        int portInjections;
+
+        @ConflexProperty(key = "host", defaultValue = "localhost")
+        void setHost(String host) {
+            this.host = host;
+            ++hostInjections;
+        }
+
+        @ConflexProperty(key = "port", defaultValue = "80")
+        void setPort(int port) {
+            this.port = port;
+            ++portInjections;
+        }
+    }
+}
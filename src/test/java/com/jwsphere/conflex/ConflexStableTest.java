@@ -0,0 +1,150 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.invoke.MethodHandle;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ConflexStableTest {
+
+    private static final Conflex conflex = Conflex.create(Flags.class);
+
+    private static final ConflexStableInt STABLE = new ConflexStableInt(1);
+    private static final MethodHandle STABLE_GETTER = STABLE.getter();
+
+    @Test
+    public void stableValuesAreUpdatedInPlace() {
+        Map<String, String> conf = new HashMap<String, String>();
+        Flags flags = new Flags();
+        ConflexStableBoolean enabled = flags.enabled;
+        conflex.inject(flags, conf);
+        assertSame(enabled, flags.enabled);
+        assertFalse(flags.enabled.get());
+        assertEquals(8, flags.batch.get());
+        assertEquals(TimeUnit.SECONDS, flags.unit.get());
+
+        conf.put("enabled", "true");
+        conf.put("batch", "16");
+        conf.put("unit", "MINUTES");
+        conflex.inject(flags, conf);
+        assertSame(enabled, flags.enabled);
+        assertTrue(flags.enabled.get());
+        assertTrue((boolean) invoke(flags.enabled.getter()));
+        assertEquals(16, flags.batch.get());
+        assertEquals(TimeUnit.MINUTES, flags.unit.get());
+        assertEquals(TimeUnit.MINUTES, invoke(flags.unit.getter()));
+    }
+
+    @Test
+    public void concurrentSettersLeaveTheGetterConsistent() throws Throwable {
+        final ConflexStableInt stable = new ConflexStableInt(0);
+        final ConflexStable<Integer> boxed = new ConflexStable<Integer>(0);
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; ++i) {
+                        stable.set(i * threads.length + offset);
+                        boxed.set(i * threads.length + offset);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(stable.get(), (int) stable.getter().invokeExact());
+        assertEquals(boxed.get(), invoke(boxed.getter()));
+    }
+
+    @Test
+    public void readPerformance() throws Throwable {
+        Flags flags = new Flags();
+        conflex.inject(flags, new HashMap<String, String>());
+        Reads reads = new Reads();
+        ConflexInt live = new ConflexInt(1);
+
+        for (int run = 0; run < 3; ++run) {
+            long sum = 0;
+            long nanos = System.nanoTime();
+            for (int i = 0; i < 100000000; ++i) {
+                sum += reads.plain;
+            }
+            report("a plain field", nanos, sum);
+
+            sum = 0;
+            nanos = System.nanoTime();
+            for (int i = 0; i < 100000000; ++i) {
+                sum += reads.volatileValue;
+            }
+            report("a volatile field", nanos, sum);
+
+            sum = 0;
+            nanos = System.nanoTime();
+            for (int i = 0; i < 100000000; ++i) {
+                sum += live.get();
+            }
+            report("a ConflexInt", nanos, sum);
+
+            sum = 0;
+            nanos = System.nanoTime();
+            for (int i = 0; i < 100000000; ++i) {
+                sum += (int) STABLE_GETTER.invokeExact();
+            }
+            report("a ConflexStableInt getter", nanos, sum);
+
+            sum = 0;
+            nanos = System.nanoTime();
+            for (int i = 0; i < 100000000; ++i) {
+                sum += STABLE.get();
+            }
+            report("ConflexStableInt.get", nanos, sum);
+        }
+
+        // changing the value invalidates the folded constant
+        STABLE.set(2);
+        assertEquals(2, (int) STABLE_GETTER.invokeExact());
+        STABLE.set(1);
+    }
+
+    private static void report(String what, long nanos, long sum) {
+        double ms = (System.nanoTime() - nanos) / (1e6);
+        System.out.println(ms + "ms to read " + what + " 100000000 times (" + sum + ")");
+    }
+
+    private static Object invoke(MethodHandle getter) {
+        try {
+            return getter.invoke();
+        } catch (Throwable e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static final class Reads {
+        int plain = 1;
+        volatile int volatileValue = 1;
+    }
+
+    static final class Flags {
+        @ConflexProperty(key = "enabled", defaultValue = "false")
+        final ConflexStableBoolean enabled = new ConflexStableBoolean();
+
+        @ConflexProperty(key = "batch", defaultValue = "8")
+        ConflexStableInt batch;
+
+        @ConflexProperty(key = "unit", defaultValue = "SECONDS")
+        ConflexStable<TimeUnit> unit;
+    }
+}
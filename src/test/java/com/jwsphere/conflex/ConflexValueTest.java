@@ -0,0 +1,127 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.ConflexPlan.ResolvedProperty;
+import com.jwsphere.conflex.Foo.CustomInjector;
+import com.jwsphere.conflex.Foo.CustomType;
+
+public class ConflexValueTest {
+
+    private static final Conflex conflex = Conflex.create(Limits.class);
+
+    @Test
+    public void handlesAreBoundOnceAndUpdated() {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("connections", "10");
+        conf.put("timeout", "5000");
+        conf.put("ratio", "0.5");
+        conf.put("endpoint", "http://example.com");
+
+        Limits limits = new Limits();
+        ConflexValue<String> name = limits.name;
+        conflex.inject(limits, conf);
+        ConflexInt connections = limits.connections;
+        ConflexValue<URI> endpoint = limits.endpoint;
+        assertEquals(10, connections.get());
+        assertEquals(5000L, limits.timeout.get());
+        assertEquals(0.5, limits.ratio.get(), 0.0);
+        assertEquals(URI.create("http://example.com"), endpoint.get());
+        assertEquals("unnamed", limits.name.get());
+        assertSame(name, limits.name);
+
+        conf.put("connections", "20");
+        conf.put("endpoint", "http://example.org");
+        conflex.inject(limits, conf);
+        assertSame(connections, limits.connections);
+        assertSame(endpoint, limits.endpoint);
+        assertEquals(20, connections.get());
+        assertEquals(URI.create("http://example.org"), endpoint.get());
+    }
+
+    @Test
+    public void defaultsAreHeld() {
+        Limits limits = new Limits();
+        conflex.inject(limits, new HashMap<String, String>());
+        assertEquals(100, limits.connections.get());
+        assertEquals(30000L, limits.timeout.get());
+        assertEquals(1.0, limits.ratio.get(), 0.0);
+        assertEquals(URI.create(""), limits.endpoint.get());
+    }
+
+    @Test
+    public void handlesAreBoundToSetters() {
+        List<ResolvedProperty> properties = conflex.resolve().getProperties();
+        assertEquals(5, properties.size());
+        for (ResolvedProperty rp : properties) {
+            assertNotNull(rp.setter);
+        }
+    }
+
+    @Test
+    public void unresolvableTypeArgumentsAreSkipped() {
+        assertEquals(0, Conflex.create(Opaque.class).resolve().getProperties().size());
+    }
+
+    @Test
+    public void liveHandlesRequireAParser() {
+        Conflex custom = Conflex.create(Custom.class).register(CustomType.class, new CustomInjector());
+        try {
+            custom.inject(new Custom(), new HashMap<String, String>());
+            fail();
+        } catch (InjectionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void liveReadPerformance() {
+        Limits limits = new Limits();
+        conflex.inject(limits, new HashMap<String, String>());
+        ConflexInt connections = limits.connections;
+        long sum = 0;
+        long nanos = System.nanoTime();
+        for (int i = 0; i < 100000000; ++i) {
+            sum += connections.get();
+        }
+        double ms = (System.nanoTime() - nanos) / (1e6);
+        System.out.println(ms + "ms to read a ConflexInt 100000000 times (" + sum + ")");
+    }
+
+    static final class Limits {
+        @ConflexProperty(key = "connections", defaultValue = "100")
+        ConflexInt connections;
+
+        @ConflexProperty(key = "timeout", defaultValue = "30000")
+        ConflexLong timeout;
+
+        @ConflexProperty(key = "ratio", defaultValue = "1.0")
+        ConflexDouble ratio;
+
+        @ConflexProperty(key = "endpoint")
+        ConflexValue<URI> endpoint;
+
+        @ConflexProperty(key = "name", defaultValue = "unnamed")
+        final ConflexValue<String> name = new ConflexValue<String>();
+    }
+
+    static final class Opaque<T> {
+        @ConflexProperty(key = "value")
+        ConflexValue<T> value;
+    }
+
+    static final class Custom {
+        @ConflexProperty(key = "custom")
+        ConflexValue<CustomType> custom;
+    }
+}
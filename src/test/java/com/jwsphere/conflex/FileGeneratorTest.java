@@ -0,0 +1,126 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.tools.ConflexHadoopConfigurationFileGenerator;
+import com.jwsphere.conflex.tools.ConflexPropertiesFileGenerator;
+
+public class FileGeneratorTest {
+
+    private static final String TEN = "<&>\"'€éabc";
+    private static final String HUNDRED = TEN + TEN + TEN + TEN + TEN + TEN + TEN + TEN + TEN + TEN;
+    private static final String THOUSAND = HUNDRED + HUNDRED + HUNDRED + HUNDRED + HUNDRED
+            + HUNDRED + HUNDRED + HUNDRED + HUNDRED + HUNDRED;
+    private static final String LONG = THOUSAND + THOUSAND + THOUSAND + THOUSAND + THOUSAND
+            + THOUSAND + THOUSAND + THOUSAND + THOUSAND + THOUSAND;
+
+    @Test
+    public void outputIsOrderedByClassAndKey() {
+        String properties = new ConflexPropertiesFileGenerator(Unordered.class, Escaped.class).generate();
+        assertTrue(properties.indexOf("a=") < properties.indexOf("b="));
+        assertTrue(properties.indexOf("b=") < properties.indexOf("c="));
+        assertTrue(properties.indexOf("c=") < properties.indexOf("xml"));
+        assertTrue(properties.startsWith("a=1\n\n"));
+    }
+
+    @Test
+    public void parallelOutputIsTheSame() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Class<?>[] classes = { Foo.class, Bar.class, Module.class, Unordered.class, Escaped.class, Foo.class };
+            assertEquals(new ConflexPropertiesFileGenerator(classes).generate(),
+                    new ConflexPropertiesFileGenerator(classes).parallel(pool).generate());
+            assertEquals(new ConflexHadoopConfigurationFileGenerator(classes).generate(),
+                    new ConflexHadoopConfigurationFileGenerator(classes).parallel(pool).generate());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void manyClassesWithAndWithoutPool() throws Exception {
+        Path root = Paths.get(Foo.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (Path file : Files.newDirectoryStream(root.resolve("com/jwsphere/conflex"), "*.class")) {
+            String name = root.relativize(file).toString().replace('/', '.');
+            classes.add(Class.forName(name.substring(0, name.length() - ".class".length()), false,
+                    getClass().getClassLoader()));
+        }
+        // more than the threshold at which collecting is split
+        assertTrue(classes.size() > 64);
+
+        String sequential = new ConflexPropertiesFileGenerator(classes).generate();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(sequential, new ConflexPropertiesFileGenerator(classes).parallel(pool).generate());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void xmlIsEscaped() throws Exception {
+        String xml = new ConflexHadoopConfigurationFileGenerator(Escaped.class).generate();
+        assertTrue(xml.contains("<name>xml&lt;&amp;&gt;&quot;&apos;</name>"));
+        HadoopConfigurationSource source = HadoopConfigurationSource.builder()
+                .add(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+                .build();
+        assertEquals("a < b && c > \"d\"", source.get("xml<&>\"'"));
+        assertEquals(LONG, source.getDescription("xml<&>\"'"));
+    }
+
+    @Test
+    public void generateToFile() throws Exception {
+        Path xmlFile = Files.createTempFile("conflex", ".xml");
+        xmlFile.toFile().deleteOnExit();
+        new ConflexHadoopConfigurationFileGenerator(Unordered.class, Escaped.class).generate(xmlFile);
+        assertEquals(new ConflexHadoopConfigurationFileGenerator(Unordered.class, Escaped.class).generate(),
+                new String(Files.readAllBytes(xmlFile), StandardCharsets.UTF_8));
+        InputStream in = Files.newInputStream(xmlFile);
+        try {
+            HadoopConfigurationSource source = HadoopConfigurationSource.builder().add(in).build();
+            assertEquals(LONG, source.getDescription("xml<&>\"'"));
+        } finally {
+            in.close();
+        }
+
+        Path propertiesFile = Files.createTempFile("conflex", ".properties");
+        propertiesFile.toFile().deleteOnExit();
+        new ConflexPropertiesFileGenerator(Unordered.class, Escaped.class).generate(propertiesFile);
+        assertEquals(new ConflexPropertiesFileGenerator(Unordered.class, Escaped.class).generate(),
+                new String(Files.readAllBytes(propertiesFile), StandardCharsets.US_ASCII));
+        MappedProperties mapped = new MappedProperties(propertiesFile);
+        assertEquals("a < b && c > \"d\"", mapped.get("xml<&>\"'"));
+        assertEquals("2", mapped.get("b"));
+    }
+
+    static class Unordered {
+        @ConflexProperty(key = "c", defaultValue = "3")
+        String c;
+
+        @ConflexProperty(key = "a", defaultValue = "1")
+        String a;
+
+        @ConflexProperty(key = "b", defaultValue = "2")
+        void setB(String b) {
+        }
+    }
+
+    static class Escaped {
+        @ConflexProperty(key = "xml<&>\"'", defaultValue = "a < b && c > \"d\"", description = LONG)
+        String xml;
+    }
+}
@@ -25,28 +25,11 @@ import com.jwsphere.conflex.ConflexProperty;
 public final class Foo {
 
     /**
-     * Static instances of conflex are synchronized for use in multi-threaded
-     * environments but if different prefixes need to be set in different threads
-     * for the same configuration class, external synchronization is required.  In
-     * this case it is advised to use thread-local instances.
+     * Conflex instances are safe to share between threads, so a single static
+     * instance is all that is needed even when many threads construct Foo.
      */
-    // private static final Conflex conflex = 
-    // Conflex.create(Foo.class).register(CustomType.class, new CustomInjector());
-    
-    /**
-     * Using thread-local conflex instances achieves much higher performance of
-     * injection compared to instantiating a conflex instance for each injection
-     * and is safe to use in multi-threaded environments.
-     * 
-     * Performance is only noticible when constructing MANY instances of configuration
-     * classes.  This is rarely the case and if it is, you should re-consider the design.
-     */
-    private static final ThreadLocal<Conflex> conflex = new ThreadLocal<Conflex>() {
-        @Override
-        protected Conflex initialValue() {
-            return Conflex.create(Foo.class).register(CustomType.class, new CustomInjector());
-        }
-    };
+    private static final Conflex conflex = 
+            Conflex.create(Foo.class).register(CustomType.class, new CustomInjector());
 
     public static final String STRING_KEY = "string_key";
 
@@ -75,11 +58,11 @@ public final class Foo {
     private CustomEnum customEnum;
 
     public Foo(Properties properties) {
-        conflex.get().inject(this, properties);
+        conflex.inject(this, properties);
     }
 
     public Foo(Map<?, ?> conf) {
-        conflex.get().inject(this, conf);
+        conflex.inject(this, conf);
     }
 
     public String getStringValue() {
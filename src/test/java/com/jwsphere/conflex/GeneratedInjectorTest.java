@@ -0,0 +1,111 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.ConflexPlan.ResolvedProperty;
+
+/**
+ * Settings is compiled with the conflex annotation processor, which
+ * generates GeneratedInjectorTest_SettingsConflexInjector.
+ */
+public class GeneratedInjectorTest {
+
+    @Test
+    public void generatedInjectorIsPresent() throws Exception {
+        Class<?> generated = Class.forName("com.jwsphere.conflex.GeneratedInjectorTest_SettingsConflexInjector");
+        ConflexGeneratedInjector injector = (ConflexGeneratedInjector) generated.getDeclaredConstructor().newInstance();
+        assertEquals(5, injector.getProperties().length);
+        assertEquals("host", injector.getProperties()[0].getKey());
+        assertEquals("java.util.concurrent.TimeUnit", injector.getProperties()[2].getType());
+    }
+
+    @Test
+    public void accessibleMembersAreInjectedDirectly() {
+        Map<Class<?>, ConflexInjector> injectors = new HashMap<Class<?>, ConflexInjector>();
+        injectors.put(String.class, new StandardInjectors.StringInjector());
+        injectors.put(int.class, new StandardInjectors.PrimitiveInteger());
+        injectors.put(File.class, new StandardInjectors.FileInjector());
+        injectors.put(Enum.class, new StandardInjectors.EnumInjector());
+        ConflexPlan plan = ConflexPlan.get(Settings.class, injectors);
+        assertEquals(5, plan.getProperties().size());
+        for (ResolvedProperty rp : plan.getProperties()) {
+            if (rp.p.getMember().equals("secret")) {
+                assertNotNull(rp.field);
+            } else {
+                assertNull(rp.field);
+                assertNull(rp.method);
+            }
+        }
+    }
+
+    @Test
+    public void injectSettings() {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("host", "example.com");
+        conf.put("port", "8080");
+        conf.put("unit", "SECONDS");
+        conf.put("secret", "hunter2");
+        conf.put("dir", "/tmp");
+
+        Settings settings = new Settings();
+        Conflex.create(Settings.class).inject(settings, conf);
+        assertEquals("example.com", settings.host);
+        assertEquals(8080, settings.port);
+        assertEquals(TimeUnit.SECONDS, settings.unit);
+        assertEquals("hunter2", settings.secret);
+        assertEquals(new File("/tmp"), settings.dir);
+    }
+
+    @Test
+    public void generatedInjectorsParseLikeTheStandardInjectors() {
+        Map<String, String> conf = new HashMap<String, String>();
+        Settings settings = new Settings();
+        conf.put("port", "010");
+        Conflex.create(Settings.class).inject(settings, conf);
+        assertEquals(10, settings.port);
+        conf.put("port", "08");
+        Conflex.create(Settings.class).inject(settings, conf);
+        assertEquals(8, settings.port);
+    }
+
+    @Test
+    public void injectDefaults() {
+        Settings settings = new Settings();
+        Conflex.create(Settings.class).inject(settings, new HashMap<String, String>());
+        assertEquals("localhost", settings.host);
+        assertEquals(80, settings.port);
+        assertEquals(TimeUnit.MILLISECONDS, settings.unit);
+        assertEquals("", settings.secret);
+        assertEquals(new File("."), settings.dir);
+    }
+
+    static class Settings {
+        @ConflexProperty(key = "host", defaultValue = "localhost")
+        String host;
+
+        @ConflexProperty(key = "port", defaultValue = "80")
+        int port;
+
+        @ConflexProperty(key = "unit", defaultValue = "MILLISECONDS")
+        TimeUnit unit;
+
+        @ConflexProperty(key = "secret")
+        private String secret;
+
+        File dir;
+
+        @ConflexProperty(key = "dir", defaultValue = ".")
+        void setDir(File dir) {
+            this.dir = dir;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.tools.ConflexHadoopConfigurationFileGenerator;
+
+public class HadoopConfigurationSourceTest {
+
+    private static final String SITE = "<?xml version=\"1.0\"?>\n"
+            + "<configuration>\n"
+            + "  <property>\n"
+            + "    <name> host </name>\n"
+            + "    <value> example.com </value>\n"
+            + "    <description>The host &amp; port.</description>\n"
+            + "    <source>core-site.xml</source>\n"
+            + "  </property>\n"
+            + "  <property>\n"
+            + "    <value>8080</value>\n"
+            + "    <name>port</name>\n"
+            + "    <final>true</final>\n"
+            + "  </property>\n"
+            + "  <property name=\"timeout\" value=\"30\" final=\"true\"/>\n"
+            + "  <property><name>empty</name><value></value></property>\n"
+            + "  <property><name>novalue</name></property>\n"
+            + "</configuration>\n";
+
+    private static final String OVERRIDE = "<configuration>\n"
+            + "  <property><name>host</name><value>override.com</value></property>\n"
+            + "  <property><name>port</name><value>9090</value></property>\n"
+            + "  <property><name>extra</name><value><![CDATA[a<b]]></value></property>\n"
+            + "</configuration>\n";
+
+    @Test
+    public void readsProperties() throws Exception {
+        HadoopConfigurationSource source = HadoopConfigurationSource.builder().add(stream(SITE)).build();
+        assertEquals(4, source.size());
+        assertEquals(" example.com ", source.get("host"));
+        assertEquals("The host & port.", source.getDescription("host"));
+        assertFalse(source.isFinal("host"));
+        assertEquals("8080", source.get("port"));
+        assertTrue(source.isFinal("port"));
+        assertEquals("30", source.get("timeout"));
+        assertTrue(source.isFinal("timeout"));
+        assertEquals("", source.get("empty"));
+        assertNull(source.get("novalue"));
+        assertNull(source.getDescription("port"));
+    }
+
+    @Test
+    public void finalPropertiesAreNotOverridden() throws Exception {
+        HadoopConfigurationSource source = HadoopConfigurationSource.builder()
+                .add(stream(SITE))
+                .add(stream(OVERRIDE))
+                .build();
+        assertEquals("override.com", source.get("host"));
+        assertEquals("8080", source.get("port"));
+        assertEquals("a<b", source.get("extra"));
+    }
+
+    @Test
+    public void onlyRetainedKeysAreKept() throws Exception {
+        HadoopConfigurationSource source = HadoopConfigurationSource.builder()
+                .retain(Arrays.asList("port", "timeout"))
+                .add(stream(SITE))
+                .build();
+        assertEquals(2, source.size());
+        assertNull(source.get("host"));
+        assertEquals("8080", source.get("port"));
+    }
+
+    @Test
+    public void retainsKeysOfPlan() throws Exception {
+        Conflex conflex = Conflex.create(Server.class).prefix("server.");
+        String xml = "<configuration>"
+                + "<property><name>server.host</name><value>example.com</value></property>"
+                + "<property><name>server.port</name><value>8080</value></property>"
+                + "<property><name>client.host</name><value>other.com</value></property>"
+                + "</configuration>";
+        HadoopConfigurationSource source = HadoopConfigurationSource.builder()
+                .retain(conflex)
+                .add(stream(xml))
+                .build();
+        assertEquals(2, source.size());
+
+        Server server = new Server();
+        conflex.inject(server, source);
+        assertEquals("example.com", server.host);
+        assertEquals(8080, server.port);
+    }
+
+    @Test
+    public void roundTripsGeneratedFile() throws Exception {
+        String xml = new ConflexHadoopConfigurationFileGenerator(Server.class).generate();
+        HadoopConfigurationSource source = HadoopConfigurationSource.builder().add(stream(xml)).build();
+        assertEquals("localhost", source.get("host"));
+        assertEquals("80", source.get("port"));
+        assertEquals("The port to listen on.", source.getDescription("port"));
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedXml() throws Exception {
+        HadoopConfigurationSource.builder().add(stream("<configuration><property>"));
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        StringBuilder xml = new StringBuilder("<configuration>\n");
+        for (int i = 0; i < 100000; ++i) {
+            xml.append("  <property>\n    <name>com.example.property").append(i).append("</name>\n")
+                    .append("    <value>").append(i * 31L).append("</value>\n")
+                    .append("    <description>The description of property ").append(i)
+                    .append(".</description>\n  </property>\n");
+        }
+        xml.append("</configuration>\n");
+        byte[] bytes = xml.toString().getBytes(StandardCharsets.UTF_8);
+        for (int run = 0; run < 3; ++run) {
+            long nanos = System.nanoTime();
+            HadoopConfigurationSource all = HadoopConfigurationSource.builder()
+                    .add(new ByteArrayInputStream(bytes))
+                    .build();
+            print("all keys", bytes.length, nanos, all.size());
+
+            nanos = System.nanoTime();
+            HadoopConfigurationSource retained = HadoopConfigurationSource.builder()
+                    .retain(Arrays.asList("com.example.property7", "com.example.property99999"))
+                    .add(new ByteArrayInputStream(bytes))
+                    .build();
+            print("retained keys", bytes.length, nanos, retained.size());
+        }
+    }
+
+    private static void print(String what, int length, long nanos, int size) {
+        double ms = (System.nanoTime() - nanos) / (1e6);
+        System.out.println(ms + "ms to read " + length + " bytes keeping " + what + " (" + size + ")");
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static class Server {
+        @ConflexProperty(key = "host", defaultValue = "localhost")
+        String host;
+
+        @ConflexProperty(key = "port", defaultValue = "80", description = "The port to listen on.")
+        int port;
+    }
+}
@@ -0,0 +1,237 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.StandardInjectors.InetAddressInjector;
+
+public class InetAddressInjectorTest {
+
+    @Test
+    public void resolvedAddressesAreCached() {
+        LocalResolver resolver = new LocalResolver();
+        Clock clock = new Clock(resolver, null);
+
+        Object first = clock.parse("db");
+        assertSame(first, clock.parse("db"));
+        assertEquals(1, resolver.lookups);
+        assertEquals(1, clock.getMissCount());
+        assertEquals(1, clock.getHitCount());
+        assertEquals(1, clock.getLookupCount());
+    }
+
+    @Test
+    public void expiredAddressesAreResolvedAgain() {
+        LocalResolver resolver = new LocalResolver();
+        Clock clock = new Clock(resolver, null);
+
+        clock.parse("db");
+        clock.now += TimeUnit.SECONDS.toNanos(59);
+        clock.parse("db");
+        assertEquals(1, resolver.lookups);
+        clock.now += TimeUnit.SECONDS.toNanos(1);
+        clock.parse("db");
+        assertEquals(2, resolver.lookups);
+        assertEquals(2, clock.getMissCount());
+    }
+
+    @Test
+    public void failedLookupsAreCached() {
+        LocalResolver resolver = new LocalResolver();
+        Clock clock = new Clock(resolver, null);
+
+        for (int i = 0; i < 3; ++i) {
+            try {
+                clock.parse("unknown");
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertEquals(UnknownHostException.class, e.getCause().getClass());
+            }
+        }
+        assertEquals(1, resolver.lookups);
+        assertEquals(1, clock.getFailureCount());
+
+        clock.now += TimeUnit.SECONDS.toNanos(5);
+        resolver.hosts.put("unknown", address(9));
+        assertEquals(address(9), clock.parse("unknown"));
+        assertEquals(2, resolver.lookups);
+    }
+
+    @Test
+    public void expiredAddressesAreRefreshedInBackground() {
+        LocalResolver resolver = new LocalResolver();
+        QueueExecutor executor = new QueueExecutor();
+        Clock clock = new Clock(resolver, executor);
+
+        assertEquals(address(1), clock.parse("db"));
+        resolver.hosts.put("db", address(2));
+        clock.now += TimeUnit.SECONDS.toNanos(60);
+
+        // the last known address is served while the refresh is pending
+        assertEquals(address(1), clock.parse("db"));
+        assertEquals(address(1), clock.parse("db"));
+        assertEquals(1, executor.tasks.size());
+        assertEquals(1, clock.getRefreshCount());
+
+        executor.runAll();
+        assertEquals(address(2), clock.parse("db"));
+        assertEquals(2, resolver.lookups);
+        assertEquals(1, clock.getMissCount());
+    }
+
+    @Test
+    public void failedRefreshKeepsLastKnownAddress() {
+        LocalResolver resolver = new LocalResolver();
+        QueueExecutor executor = new QueueExecutor();
+        Clock clock = new Clock(resolver, executor);
+
+        clock.parse("db");
+        resolver.hosts.remove("db");
+        clock.now += TimeUnit.SECONDS.toNanos(60);
+        clock.parse("db");
+        executor.runAll();
+
+        assertEquals(address(1), clock.parse("db"));
+        assertEquals(1, clock.getFailureCount());
+    }
+
+    @Test
+    public void cachedHostsAreBounded() {
+        LocalResolver resolver = new LocalResolver();
+        Clock clock = new Clock(resolver, null);
+        for (int i = 0; i < InetAddressInjector.MAX_HOSTS; ++i) {
+            resolver.hosts.put("host" + i, address(i));
+            clock.parse("host" + i);
+        }
+        assertEquals(InetAddressInjector.MAX_HOSTS, clock.getCachedHostCount());
+
+        // a full cache evicts an arbitrary host while none has expired
+        clock.parse("db");
+        assertEquals(InetAddressInjector.MAX_HOSTS, clock.getCachedHostCount());
+        int lookups = resolver.lookups;
+        assertEquals(address(1), clock.parse("db"));
+        assertEquals(lookups, resolver.lookups);
+
+        // and all expired hosts once they have
+        clock.now += TimeUnit.SECONDS.toNanos(60);
+        resolver.hosts.put("new", address(2));
+        clock.parse("new");
+        assertEquals(1, clock.getCachedHostCount());
+    }
+
+    @Test
+    public void ttlsFollowTheSecurityProperties() {
+        assertEquals(30, InetAddressInjector.ttl("conflex.test.ttl", "conflex.test.system.ttl", 30));
+        System.setProperty("conflex.test.system.ttl", "5");
+        try {
+            assertEquals(5, InetAddressInjector.ttl("conflex.test.ttl", "conflex.test.system.ttl", 30));
+            Security.setProperty("conflex.test.ttl", "120");
+            assertEquals(120, InetAddressInjector.ttl("conflex.test.ttl", "conflex.test.system.ttl", 30));
+            Security.setProperty("conflex.test.ttl", "-1");
+            assertEquals(Long.MAX_VALUE, InetAddressInjector.ttl("conflex.test.ttl", "conflex.test.system.ttl", 30));
+            Security.setProperty("conflex.test.ttl", "forever");
+            assertEquals(30, InetAddressInjector.ttl("conflex.test.ttl", "conflex.test.system.ttl", 30));
+        } finally {
+            System.clearProperty("conflex.test.system.ttl");
+        }
+    }
+
+    @Test
+    public void injectCachedAddress() {
+        LocalResolver resolver = new LocalResolver();
+        InetAddressInjector injector = new InetAddressInjector(resolver, 1, 1, TimeUnit.MINUTES, null);
+        Conflex conflex = Conflex.create(Target.class).register(InetAddress.class, injector);
+
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put("address", "db");
+        for (int i = 0; i < 10; ++i) {
+            Target target = new Target();
+            conflex.inject(target, conf);
+            assertEquals(address(1), target.address);
+            assertEquals(address(1), target.fallback);
+        }
+        assertEquals(2, resolver.lookups);
+        assertEquals(18, injector.getHitCount());
+    }
+
+    static InetAddress address(int last) {
+        try {
+            return InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte) last });
+        } catch (UnknownHostException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static class Target {
+        @ConflexProperty(key = "address")
+        InetAddress address;
+
+        @ConflexProperty(key = "fallback", defaultValue = "replica")
+        InetAddress fallback;
+    }
+
+    /**
+     * Resolves hosts from a map instead of the name service.
+     */
+    static class LocalResolver implements InetAddressInjector.Resolver {
+        final Map<String, InetAddress> hosts = new HashMap<String, InetAddress>();
+        int lookups;
+
+        LocalResolver() {
+            hosts.put("db", address(1));
+            hosts.put("replica", address(1));
+        }
+
+        @Override
+        public InetAddress resolve(String host) throws UnknownHostException {
+            ++lookups;
+            InetAddress address = hosts.get(host);
+            if (address == null) {
+                throw new UnknownHostException(host);
+            }
+            return address;
+        }
+    }
+
+    static class Clock extends InetAddressInjector {
+        long now;
+
+        Clock(Resolver resolver, Executor executor) {
+            super(resolver, 60, 5, TimeUnit.SECONDS, executor);
+        }
+
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+    }
+
+    static class QueueExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+        }
+    }
+}
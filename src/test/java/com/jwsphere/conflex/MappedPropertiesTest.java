@@ -0,0 +1,196 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.tools.ConflexPropertiesFileGenerator;
+
+public class MappedPropertiesTest {
+
+    @Test
+    public void readsWhatPropertiesReads() throws Exception {
+        String content = "# comment\n"
+                + "! another = comment\n"
+                + "\n"
+                + "   indented = value  \n"
+                + "colon:value\n"
+                + "space value with  spaces\n"
+                + "tab\t\tvalue\n"
+                + "empty=\n"
+                + "keyonly\n"
+                + "twice = first\n"
+                + "escaped\\ key\\=\\:=\\ leading and \\\\ backslash\n"
+                + "unicode=\\u00e9t\\u00E9 \\t\\n\\r\\f\\q\n"
+                + "continued = one, \\\n"
+                + "      two, \\\r\n"
+                + "\tthree\r\n"
+                + "con\\\n  tinued\\\n  key = x\n"
+                + "separator = = value\n"
+                + "separator2 := value\n"
+                + "  # not a comment after a key = is still a key\n"
+                + "twice = second\r"
+                + "latin1=caf\u00e9\n"
+                + "last=no newline\\";
+        Path file = write(content.getBytes(StandardCharsets.ISO_8859_1));
+        Properties expected = load(file);
+        MappedProperties mapped = new MappedProperties(file);
+
+        assertEquals(expected.size(), mapped.size());
+        assertEquals(expected.stringPropertyNames(), new HashSet<String>(mapped.getKeys()));
+        for (String key : expected.stringPropertyNames()) {
+            assertEquals(key, expected.getProperty(key), mapped.get(key));
+            assertTrue(mapped.containsKey(key));
+        }
+        assertEquals("second", mapped.get("twice"));
+        assertEquals("one, two, three", mapped.get("continued"));
+        assertEquals("x", mapped.get("continuedkey"));
+        assertNull(mapped.get("missing"));
+        assertFalse(mapped.containsKey("escaped"));
+    }
+
+    @Test
+    public void emptyFile() throws Exception {
+        MappedProperties mapped = new MappedProperties(write(new byte[0]));
+        assertEquals(0, mapped.size());
+        assertNull(mapped.get(""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedUnicodeEscape() throws Exception {
+        new MappedProperties(write("key=\\u00zz\n".getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    public void typedGettersParseTheMappedBytes() throws Exception {
+        MappedProperties mapped = new MappedProperties(write(("port = 8_080 \n"
+                + "mask=0xff\r\n"
+                + "big=-9223372036854775808\n"
+                + "ratio=0.75\n"
+                + "escaped=\\u0031\\\n"
+                + "  2.5\n"
+                + "text=eighty\n").getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(8080, mapped.getInt("port", 0));
+        assertEquals(255, mapped.getInt("mask", 0));
+        assertEquals(Long.MIN_VALUE, mapped.getLong("big", 0));
+        assertEquals(0.75f, mapped.getFloat("ratio", 0), 0.0f);
+        assertEquals(12.5, mapped.getDouble("escaped", 0), 0.0);
+        assertEquals(-1, mapped.getInt("missing", -1));
+        try {
+            mapped.getInt("text", 0);
+            fail();
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void roundTripsGeneratedFile() throws Exception {
+        Path file = Files.createTempFile("conflex", ".properties");
+        Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        try {
+            new ConflexPropertiesFileGenerator(Awkward.class).generate(writer);
+        } finally {
+            writer.close();
+        }
+        MappedProperties mapped = new MappedProperties(file);
+        assertEquals(5, mapped.size());
+        assertEquals(" leading\ttab and trailing ", mapped.get("spaced key"));
+        assertEquals("a=b:c#d!e\\f", mapped.get("separators=:#!\\"));
+        assertEquals("caf\u00e9 \u20ac", mapped.get("unicode.\u00e9"));
+        assertEquals("", mapped.get("empty"));
+        assertEquals("line\nbreak", mapped.get("multiline"));
+
+        Awkward awkward = new Awkward();
+        Conflex.create(Awkward.class).inject(awkward, mapped);
+        assertEquals(" leading\ttab and trailing ", awkward.spaced);
+        assertEquals("line\nbreak", awkward.multiline);
+
+        Properties expected = load(file);
+        for (String key : expected.stringPropertyNames()) {
+            assertEquals(expected.getProperty(key), mapped.get(key));
+        }
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200000; ++i) {
+            content.append("# the description of property ").append(i).append('\n');
+            content.append("com.example.service").append(i % 100).append(".property").append(i)
+                    .append('=').append(i * 31L).append("\n\n");
+        }
+        Path file = write(content.toString().getBytes(StandardCharsets.ISO_8859_1));
+        for (int run = 0; run < 3; ++run) {
+            long nanos = System.nanoTime();
+            Properties properties = load(file);
+            long sum = Long.parseLong(properties.getProperty("com.example.service7.property1007"));
+            print("Properties.load", nanos, sum);
+
+            nanos = System.nanoTime();
+            MappedProperties mapped = new MappedProperties(file);
+            sum = Long.parseLong(mapped.get("com.example.service7.property1007"));
+            print("MappedProperties", nanos, sum);
+        }
+    }
+
+    private static void print(String what, long nanos, long sum) {
+        double ms = (System.nanoTime() - nanos) / (1e6);
+        System.out.println(ms + "ms to read 200000 properties with " + what + " (" + sum + ")");
+    }
+
+    private static Path write(byte[] content) throws IOException {
+        Path file = Files.createTempFile("conflex", ".properties");
+        file.toFile().deleteOnExit();
+        OutputStream out = Files.newOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static Properties load(Path file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = Files.newInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    static class Awkward {
+        @ConflexProperty(key = "spaced key", defaultValue = " leading\ttab and trailing ",
+                description = "a description\r\nover two lines")
+        String spaced;
+
+        @ConflexProperty(key = "separators=:#!\\", defaultValue = "a=b:c#d!e\\f")
+        String separators;
+
+        @ConflexProperty(key = "unicode.\u00e9", defaultValue = "caf\u00e9 \u20ac")
+        String unicode;
+
+        @ConflexProperty(key = "empty")
+        String empty;
+
+        @ConflexProperty(key = "multiline", defaultValue = "line\nbreak", description = "# \u00e9")
+        String multiline;
+    }
+}
@@ -0,0 +1,193 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import org.junit.Test;
+
+public class ModuleGraphTest {
+
+    @Test
+    public void cyclicRefs() {
+        Set<String> module = keys(Conflex.getReferencedProperties(Module.class));
+        Set<String> keys = keys(Conflex.getReferencedProperties(CycleA.class));
+        Set<String> expected = new HashSet<String>(module);
+        expected.addAll(Arrays.asList("cycle.a", "cycle.b", "cycle.c"));
+        assertEquals(expected, keys);
+        assertEquals(keys, keys(Conflex.getReferencedProperties(CycleB.class)));
+        expected = new HashSet<String>(module);
+        expected.add("cycle.c");
+        assertEquals(expected, keys(Conflex.getReferencedProperties(CycleC.class)));
+    }
+
+    @Test
+    public void resultsAreIndependentOfTheCache() {
+        Set<ConflexProperty> first = Conflex.getReferencedProperties(CycleA.class);
+        int size = first.size();
+        first.clear();
+        assertEquals(size, Conflex.getReferencedProperties(CycleA.class).size());
+    }
+
+    @Test
+    public void deepChain() {
+        TestNode[] chain = chain("chain", 100000);
+        Set<ConflexProperty> closure = ConflexModuleGraph.closure(chain[0]);
+        assertEquals(chain.length, closure.size());
+        assertEquals(chain.length / 2, ConflexModuleGraph.closure(chain[chain.length / 2]).size());
+    }
+
+    @Test
+    public void deepCycle() {
+        TestNode[] chain = chain("chain", 100000);
+        chain[chain.length - 1].refs = new TestNode[] { chain[0] };
+        Set<ConflexProperty> closure = ConflexModuleGraph.closure(chain[chain.length / 2]);
+        assertEquals(chain.length, closure.size());
+        assertSame(closure, ConflexModuleGraph.closure(chain[0]));
+    }
+
+    @Test
+    public void groupingModulesShareClosures() {
+        TestNode leaf = new TestNode("leaf");
+        TestNode group = new TestNode(null, leaf);
+        assertSame(ConflexModuleGraph.closure(leaf), ConflexModuleGraph.closure(group));
+    }
+
+    @Test
+    public void benchmark() {
+        for (int run = 0; run < 3; ++run) {
+            List<TestNode> roots = new ArrayList<TestNode>();
+            for (int i = 0; i < 64; ++i) {
+                roots.add(chain("chain" + i, 5000)[0]);
+            }
+            long start = System.nanoTime();
+            for (TestNode root : roots) {
+                ConflexModuleGraph.closure(root);
+            }
+            long computed = System.nanoTime();
+            Set<ConflexProperty> all = new HashSet<ConflexProperty>();
+            for (TestNode root : roots) {
+                all.addAll(ConflexModuleGraph.closure(root));
+            }
+            long cached = System.nanoTime();
+            assertEquals(64 * 5000, all.size());
+            System.out.println((computed - start) / 1000000 + "ms to compute 64 closures of 5000 modules, "
+                    + (cached - computed) / 1000000 + "ms to combine them from the cache");
+        }
+    }
+
+    @Test
+    public void parallel() {
+        TestNode[] serial = graph();
+        TestNode[] parallel = graph();
+        assertTrue(parallel.length > ConflexModuleGraph.THRESHOLD);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Set<String> expected = keys(ConflexModuleGraph.getReferencedProperties(serial, null));
+            assertEquals(64 * 100, expected.size());
+            assertEquals(expected, keys(ConflexModuleGraph.getReferencedProperties(parallel, pool)));
+        } finally {
+            pool.shutdown();
+        }
+        boolean forked = false;
+        for (TestNode node : parallel) {
+            forked |= node.visitor instanceof ForkJoinWorkerThread;
+        }
+        assertTrue(forked);
+
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (int i = 0; i < 100; ++i) {
+            classes.addAll(Arrays.<Class<?>>asList(CycleA.class, CycleB.class, CycleC.class, Module.class, Foo.class));
+        }
+        pool = new ForkJoinPool();
+        try {
+            assertEquals(Conflex.getReferencedProperties(classes),
+                    Conflex.getReferencedProperties(classes, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the roots of 64 chains, each of which refers to the next chain
+     * halfway along and, for every eighth chain, back to the previous one.
+     */
+    private static TestNode[] graph() {
+        TestNode[][] chains = new TestNode[64][];
+        for (int i = 0; i < chains.length; ++i) {
+            chains[i] = chain("graph" + i, 100);
+        }
+        TestNode[] roots = new TestNode[chains.length];
+        for (int i = 0; i < chains.length; ++i) {
+            TestNode middle = chains[i][50];
+            List<TestNode> refs = new ArrayList<TestNode>(Arrays.asList(middle.refs));
+            refs.add(chains[(i + 1) % chains.length][50]);
+            if (i % 8 == 0) {
+                refs.add(chains[(i + chains.length - 1) % chains.length][0]);
+            }
+            middle.refs = refs.toArray(new TestNode[refs.size()]);
+            roots[i] = chains[i][0];
+        }
+        return roots;
+    }
+
+    private static TestNode[] chain(String prefix, int length) {
+        TestNode[] chain = new TestNode[length];
+        chain[length - 1] = new TestNode(prefix + "." + (length - 1));
+        for (int i = length - 2; i >= 0; --i) {
+            chain[i] = new TestNode(prefix + "." + i, chain[i + 1]);
+        }
+        return chain;
+    }
+
+    private static Set<String> keys(Set<ConflexProperty> properties) {
+        Set<String> keys = new HashSet<String>();
+        for (ConflexProperty property : properties) {
+            keys.add(property.key());
+        }
+        return keys;
+    }
+
+    private static final class TestNode extends ConflexModuleGraph.Node {
+        TestNode[] refs;
+        volatile Thread visitor;
+
+        TestNode(String key, TestNode... refs) {
+            super(key == null ? new ConflexProperty[0] : new ConflexProperty[] {
+                new IndexedProperty(new PropertyDescriptor(key, "", "", "Owner", key, "int", false)) });
+            this.refs = refs;
+        }
+
+        @Override
+        ConflexModuleGraph.Node[] successors() {
+            visitor = Thread.currentThread();
+            return refs;
+        }
+    }
+
+    @ConflexModule(refs = CycleB.class)
+    static class CycleA {
+        @ConflexProperty(key = "cycle.a")
+        String a;
+    }
+
+    @ConflexModule(refs = { CycleA.class, CycleC.class })
+    static class CycleB {
+        @ConflexProperty(key = "cycle.b")
+        String b;
+    }
+
+    @ConflexModule(refs = Module.class)
+    static class CycleC {
+        @ConflexProperty(key = "cycle.c")
+        String c;
+    }
+}
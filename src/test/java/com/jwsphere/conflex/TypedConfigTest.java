@@ -0,0 +1,179 @@
+package com.jwsphere.conflex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.jwsphere.conflex.Foo.CustomInjector;
+import com.jwsphere.conflex.Foo.CustomType;
+
+public class TypedConfigTest {
+
+    private static final Conflex conflex =
+            Conflex.create(Typed.class).register(CustomType.class, new CustomInjector());
+
+    @Test
+    public void nativeValuesAreAssigned() {
+        BigDecimal amount = new BigDecimal("12.50");
+        TypedConfig config = TypedConfig.builder()
+                .put("count", 42)
+                .put("total", 1L << 40)
+                .put("ratio", 0.25)
+                .put("scale", 3)
+                .put("precise", 1.5f)
+                .put("enabled", true)
+                .put("boxed", 7)
+                .put("amount", amount)
+                .put("unit", TimeUnit.HOURS)
+                .put("name", "typed")
+                .put("custom", "value")
+                .build();
+
+        Typed typed = new Typed();
+        conflex.inject(typed, config);
+        assertEquals(42, typed.count);
+        assertEquals(1L << 40, typed.total);
+        assertEquals(0.25, typed.ratio, 0.0);
+        assertEquals(3.0, typed.scale, 0.0);
+        assertEquals(1.5f, typed.precise, 0.0f);
+        assertTrue(typed.enabled);
+        assertEquals(Integer.valueOf(7), typed.boxed);
+        assertSame(amount, typed.amount);
+        assertEquals(TimeUnit.HOURS, typed.unit);
+        assertEquals("typed", typed.name);
+        assertEquals("value", typed.custom.value);
+    }
+
+    @Test
+    public void floatsAreWidenedByTheirDecimalForm() {
+        TypedConfig config = TypedConfig.builder().put("ratio", 0.1f).put("precise", 0.1f).build();
+        Typed typed = new Typed();
+        conflex.inject(typed, config);
+        assertEquals(0.1, typed.ratio, 0.0);
+        assertEquals(0.1f, typed.precise, 0.0f);
+        assertEquals("0.1", config.get("ratio"));
+    }
+
+    @Test
+    public void idsAreCachedForEveryKeyArray() {
+        TypedConfig config = TypedConfig.builder().put("a", 1).put("b", 2).build();
+        for (int i = 0; i < 1000; ++i) {
+            String[] keys = { "a", "b", "c" + i };
+            int[] ids = config.ids(keys);
+            assertEquals(-1, ids[2]);
+            assertSame(ids, config.ids(keys));
+        }
+    }
+
+    @Test
+    public void otherValuesAreParsedFromStrings() {
+        TypedConfig config = TypedConfig.builder()
+                .put("count", "42")
+                .put("amount", 12)
+                .put("unit", "MINUTES")
+                .put("name", 5)
+                .build();
+
+        Typed typed = new Typed();
+        conflex.inject(typed, config);
+        assertEquals(42, typed.count);
+        assertEquals(new BigDecimal("12"), typed.amount);
+        assertEquals(TimeUnit.MINUTES, typed.unit);
+        assertEquals("5", typed.name);
+        // absent keys inject defaults
+        assertEquals(2.0, typed.ratio, 0.0);
+    }
+
+    @Test
+    public void outOfRangeValuesAreRejected() {
+        TypedConfig config = TypedConfig.builder().put("count", 1L << 40).build();
+        try {
+            conflex.inject(new Typed(), config);
+            fail();
+        } catch (InjectionException e) {
+            assertEquals(NumberFormatException.class, e.getCause().getClass());
+        }
+    }
+
+    @Test
+    public void typedConfigIsAConfigSource() {
+        TypedConfig config = TypedConfig.builder().put("count", 42).put("enabled", false).put("ratio", 0.5).build();
+        assertEquals("42", config.get("count"));
+        assertEquals("false", config.get("enabled"));
+        assertEquals("0.5", config.get("ratio"));
+        assertEquals(null, config.get("missing"));
+        assertEquals(3, config.size());
+    }
+
+    @Test
+    public void typedInjectPerformance() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("count", 42);
+        values.put("total", 1L << 40);
+        values.put("ratio", 0.25);
+        values.put("scale", 3);
+        values.put("enabled", true);
+        values.put("boxed", 7);
+        TypedConfig config = TypedConfig.builder().putAll(values).build();
+        Typed typed = new Typed();
+
+        for (int run = 0; run < 3; ++run) {
+            long nanos = System.nanoTime();
+            for (int i = 0; i < 1000000; ++i) {
+                conflex.inject(typed, values);
+            }
+            double ms = (System.nanoTime() - nanos) / (1e6);
+            System.out.println(ms + "ms to inject boxed values 1000000 times through strings");
+
+            nanos = System.nanoTime();
+            for (int i = 0; i < 1000000; ++i) {
+                conflex.inject(typed, config);
+            }
+            ms = (System.nanoTime() - nanos) / (1e6);
+            System.out.println(ms + "ms to inject a TypedConfig 1000000 times");
+        }
+    }
+
+    static final class Typed {
+        @ConflexProperty(key = "count", defaultValue = "1")
+        int count;
+
+        @ConflexProperty(key = "total", defaultValue = "1")
+        long total;
+
+        @ConflexProperty(key = "ratio", defaultValue = "2.0")
+        double ratio;
+
+        @ConflexProperty(key = "scale", defaultValue = "1.0")
+        double scale;
+
+        @ConflexProperty(key = "precise", defaultValue = "1.0")
+        float precise;
+
+        @ConflexProperty(key = "enabled", defaultValue = "false")
+        boolean enabled;
+
+        @ConflexProperty(key = "boxed", defaultValue = "0")
+        Integer boxed;
+
+        @ConflexProperty(key = "amount", defaultValue = "0")
+        BigDecimal amount;
+
+        @ConflexProperty(key = "unit", defaultValue = "SECONDS")
+        TimeUnit unit;
+
+        @ConflexProperty(key = "name", defaultValue = "")
+        String name;
+
+        @ConflexProperty(key = "custom", defaultValue = "custom_default")
+        CustomType custom;
+    }
+}